@@ -0,0 +1,124 @@
+package com.ev.common_lib.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Cache 2 tầng: Caffeine (local, TTL ngắn) đứng trước Redis.
+ * - get: thử local trước, hụt thì hỏi Redis rồi nạp lại vào local.
+ * - put/evict/clear: ghi xuống cả 2 tầng.
+ * Số lần hit/miss/evict được đếm qua Micrometer (xem /actuator/metrics/cache.near.*).
+ *
+ * Lưu ý độ trễ giữa các instance: evict/put chỉ xóa tầng local của instance đang chạy
+ * (và Redis); bản local ở instance khác vẫn được dùng tới khi hết TTL local
+ * (app.cache.near.ttl-seconds). Vì vậy TTL local chính là độ cũ tối đa có thể đọc được
+ * sau một thay đổi -- chỉ dùng cho dữ liệu chấp nhận được độ trễ đó.
+ */
+public class NearCache implements Cache {
+
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+
+    private final Counter localHits;
+    private final Counter remoteHits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public NearCache(Cache remote, com.github.benmanes.caffeine.cache.Cache<Object, Object> local,
+            MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.local = local;
+
+        String name = remote.getName();
+        this.localHits = Counter.builder("cache.near.gets").tag("cache", name).tag("result", "local_hit")
+                .register(meterRegistry);
+        this.remoteHits = Counter.builder("cache.near.gets").tag("cache", name).tag("result", "remote_hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cache.near.gets").tag("cache", name).tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("cache.near.evictions").tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object cached = local.getIfPresent(key);
+        if (cached != null) {
+            localHits.increment();
+            return new SimpleValueWrapper(cached);
+        }
+
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            remoteHits.increment();
+            local.put(key, wrapper.get());
+            return wrapper;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        try {
+            T value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        if (value != null) {
+            local.put(key, value);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        local.invalidate(key);
+        remote.evict(key);
+        evictions.increment();
+    }
+
+    @Override
+    public void clear() {
+        local.invalidateAll();
+        remote.clear();
+        evictions.increment();
+    }
+}
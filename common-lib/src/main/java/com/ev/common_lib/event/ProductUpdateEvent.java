@@ -6,9 +6,11 @@ import java.math.BigDecimal;
 @Data
 public class ProductUpdateEvent {
     private Long variantId;
+    private Long modelId;
     private String modelName;
     private String versionName;
     private String color;
+    private String skuCode;
     private BigDecimal newPrice;
     private String status;
     private String imageUrl;
@@ -1,9 +1,16 @@
 package com.ev.inventory_service.config;
 
+import com.ev.common_lib.cache.NearCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.support.AbstractCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
@@ -15,12 +22,15 @@ import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * Redis Cache Configuration for Inventory Service
  * - Database: 2 (separate from Gateway DB 0, Vehicle DB 1)
  * - Key Prefix: inventory:
  * - TTL: 5 minutes (300 seconds) - shorter because stock changes frequently
+ * - Near-cache: Caffeine local cache (TTL vài giây) đứng trước Redis
  */
 @Configuration
 @EnableCaching
@@ -53,7 +63,9 @@ public class RedisConfig {
     }
 
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+            @Value("${app.cache.near.ttl-seconds:5}") long nearTtlSeconds,
+            @Value("${app.cache.near.max-size:10000}") long nearMaxSize) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(5)) // TTL = 5 minutes (stock data changes frequently)
                 .serializeKeysWith(
@@ -62,8 +74,29 @@ public class RedisConfig {
                         new GenericJackson2JsonRedisSerializer(redisObjectMapper())))
                 .disableCachingNullValues(); // Don't cache null values
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        // Bọc mỗi Redis cache bằng một near-cache local
+        return new AbstractCacheManager() {
+            @Override
+            protected Collection<? extends Cache> loadCaches() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            protected Cache getMissingCache(String name) {
+                Cache remote = redisCacheManager.getCache(name);
+                if (remote == null) {
+                    return null;
+                }
+                return new NearCache(remote, Caffeine.newBuilder()
+                        .expireAfterWrite(Duration.ofSeconds(nearTtlSeconds))
+                        .maximumSize(nearMaxSize)
+                        .build(), meterRegistry);
+            }
+        };
     }
 }
@@ -7,6 +7,7 @@ import com.ev.common_lib.dto.inventory.DetailedInventoryRequest;
 import com.ev.common_lib.dto.inventory.VinValidationResultDto;
 import com.ev.common_lib.dto.respond.ApiRespond;
 
+import com.ev.inventory_service.dto.request.BulkRestockRequestDto;
 import com.ev.inventory_service.dto.request.TransactionRequestDto;
 import com.ev.inventory_service.dto.request.UpdateReorderLevelRequest;
 import com.ev.inventory_service.dto.response.InventoryStatusDto;
@@ -143,6 +144,20 @@ public class InventoryController {
         return ResponseEntity.ok(ApiRespond.success("Transaction executed successfully", null));
     }
 
+    /**
+     * Nhập kho hàng loạt theo VIN cho nhiều variant trong một lần gọi.
+     */
+    @PostMapping("/transactions/bulk-restock")
+    @PreAuthorize("hasAnyRole('ADMIN','EVM_STAFF')")
+    public ResponseEntity<ApiRespond<Integer>> bulkRestock(
+            @Valid @RequestBody BulkRestockRequestDto request,
+            @RequestHeader("X-User-Email") String email,
+            @RequestHeader("X-User-Role") String role) {
+
+        int restocked = inventoryService.bulkRestock(request, email, role);
+        return ResponseEntity.ok(ApiRespond.success("Bulk restock executed successfully", restocked));
+    }
+
     /**
      * Lấy lịch sử tất cả các giao dịch kho, có phân trang và lọc theo ngày.
      */
@@ -0,0 +1,29 @@
+package com.ev.inventory_service.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Nhập kho hàng loạt (ví dụ: cả một container) cho nhiều variant trong một lần gọi.
+ */
+@Data
+public class BulkRestockRequestDto {
+
+    @NotEmpty
+    private List<@Valid RestockItem> items;
+
+    private String notes;
+    private String referenceId; // Id của phiếu nhập kho / container
+
+    @Data
+    public static class RestockItem {
+        @NotNull
+        private Long variantId;
+
+        @NotEmpty
+        private List<String> vins; // Danh sách VIN nhập kho cho variant này
+    }
+}
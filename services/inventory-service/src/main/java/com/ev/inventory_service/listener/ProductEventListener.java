@@ -0,0 +1,35 @@
+package com.ev.inventory_service.listener;
+
+import com.ev.common_lib.event.ProductUpdateEvent;
+import com.ev.inventory_service.services.Interface.VariantIndexService;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductEventListener {
+
+    private final VariantIndexService variantIndexService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Lắng nghe thay đổi variant từ vehicle-service để cập nhật chỉ mục tìm kiếm cục bộ.
+     */
+    @KafkaListener(topics = "product_events", groupId = "inventory-product-group")
+    public void handleProductUpdate(String message) {
+        try {
+            ProductUpdateEvent event = objectMapper.readerFor(ProductUpdateEvent.class)
+                    .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValue(message);
+            variantIndexService.upsert(event);
+            log.debug("Đã cập nhật variant_index cho variant {}", event.getVariantId());
+        } catch (Exception e) {
+            log.error("Lỗi khi xử lý sự kiện product_events: {}", message, e);
+        }
+    }
+}
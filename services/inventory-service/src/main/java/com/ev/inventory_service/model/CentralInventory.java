@@ -2,9 +2,12 @@ package com.ev.inventory_service.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 import java.time.LocalDateTime;
 
+// DynamicUpdate: UPDATE chỉ ghi các cột thực sự thay đổi, không ghi đè số lượng do StockLedger flush
 @Entity
+@DynamicUpdate
 @Table(name = "central_inventory")
 @Data
 public class CentralInventory {
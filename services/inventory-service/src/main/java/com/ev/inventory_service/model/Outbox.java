@@ -0,0 +1,45 @@
+package com.ev.inventory_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện chờ gửi Kafka (transactional outbox): được ghi cùng transaction với
+ * dữ liệu nghiệp vụ, OutboxProcessor sẽ gửi đi sau khi commit.
+ */
+@Entity
+@Table(name = "inventory_outbox", indexes = {
+        @Index(name = "idx_outbox_status_created", columnList = "status, createdAt")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Outbox {
+
+    @Id
+    @Column(length = 36)
+    private String id; // UUID string
+
+    private String aggregateType;
+    private String aggregateId; // Dùng làm key của message Kafka
+    private String eventType;
+
+    @Column(nullable = false)
+    private String topic;
+
+    private String payloadType; // Tên class của payload (giữ nguyên header __TypeId__ cho consumer)
+
+    @Column(columnDefinition = "LONGTEXT")
+    private String payload;
+
+    private String status; // "NEW", "SENT", "FAILED"
+    private int attempts;
+
+    private LocalDateTime lastAttemptAt;
+    private LocalDateTime nextAttemptAt; // Chưa tới thời điểm này thì chưa gửi lại (backoff)
+    private LocalDateTime createdAt;
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,33 @@
+package com.ev.inventory_service.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Bản sao cục bộ (chỉ các trường cần để tìm kiếm) của variant bên vehicle-service.
+ * Được cập nhật qua Kafka "product_events" và backfill khi khởi động.
+ */
+@Entity
+@Table(name = "variant_index", indexes = {
+        @Index(name = "idx_variant_index_model", columnList = "modelId")
+})
+@Data
+public class VariantIndex {
+
+    @Id
+    private Long variantId; // Trùng với variantId bên vehicle-service
+
+    private Long modelId;
+
+    private String modelName;
+
+    private String versionName;
+
+    private String color;
+
+    private String skuCode;
+
+    @org.hibernate.annotations.UpdateTimestamp
+    private LocalDateTime lastUpdated;
+}
@@ -3,6 +3,9 @@ package com.ev.inventory_service.repository;
 import com.ev.inventory_service.model.CentralInventory;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor; 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -17,4 +20,11 @@ public interface CentralInventoryRepository extends JpaRepository<CentralInvento
      *Tìm tất cả bản ghi tồn kho dựa trên danh sách các variantId.
      */
     List<CentralInventory> findByVariantIdIn(List<Long> variantIds);
+
+    /**
+     * Chỉ cập nhật ngưỡng cảnh báo, không đụng tới các cột số lượng (do StockLedger ghi).
+     */
+    @Modifying
+    @Query("UPDATE CentralInventory c SET c.reorderLevel = :reorderLevel WHERE c.variantId = :variantId")
+    int updateReorderLevel(@Param("variantId") Long variantId, @Param("reorderLevel") Integer reorderLevel);
 }
@@ -2,6 +2,8 @@ package com.ev.inventory_service.repository;
 
 import com.ev.inventory_service.model.InventoryTransaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,8 +13,14 @@ import java.util.List;
 
 @Repository
 public interface InventoryTransactionRepository extends JpaRepository<InventoryTransaction, Long> {
-    // --- PHƯƠNG THỨC MỚI DÀNH CHO XUẤT BÁO CÁO (trả về List) ---
-    List<InventoryTransaction> findAllByTransactionDateBetween(LocalDateTime start, LocalDateTime end);
+    // --- DÀNH CHO XUẤT BÁO CÁO: đọc theo từng lô (keyset theo transactionId) ---
+    @Query("SELECT t FROM InventoryTransaction t " +
+           "WHERE t.transactionDate BETWEEN :start AND :end AND t.transactionId > :afterId " +
+           "ORDER BY t.transactionId ASC")
+    List<InventoryTransaction> findReportChunk(@Param("start") LocalDateTime start,
+                                               @Param("end") LocalDateTime end,
+                                               @Param("afterId") Long afterId,
+                                               Pageable pageable);
 
     // --- GIỮ LẠI PHƯƠNG THỨC CŨ DÀNH CHO API XEM LỊCH SỬ (trả về Page) ---
     Page<InventoryTransaction> findAllByTransactionDateBetween(LocalDateTime start, LocalDateTime end, Pageable pageable);
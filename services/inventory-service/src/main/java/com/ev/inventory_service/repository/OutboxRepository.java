@@ -0,0 +1,38 @@
+package com.ev.inventory_service.repository;
+
+import com.ev.inventory_service.model.Outbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<Outbox, String> {
+
+    /**
+     * Lấy một lô sự kiện NEW cũ nhất đã tới hạn gửi và khóa lại; các instance khác bỏ qua các dòng đã bị khóa.
+     */
+    @Query(value = "SELECT * FROM inventory_outbox WHERE status = 'NEW' "
+            + "AND (next_attempt_at IS NULL OR next_attempt_at <= :now) ORDER BY created_at "
+            + "LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Outbox> claimBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE Outbox o SET o.status = 'SENT', o.sentAt = :now, o.lastAttemptAt = :now, "
+            + "o.attempts = o.attempts + 1 WHERE o.id IN :ids")
+    int markSent(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    long countByStatus(String status);
+
+    Optional<Outbox> findFirstByStatusOrderByCreatedAtAsc(String status);
+
+    @Modifying
+    @Query("DELETE FROM Outbox o WHERE o.status = 'SENT' AND o.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -3,8 +3,11 @@ package com.ev.inventory_service.repository;
 import com.ev.inventory_service.model.PhysicalVehicle;
 import com.ev.inventory_service.model.Enum.VehiclePhysicalStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,4 +23,10 @@ public interface PhysicalVehicleRepository extends JpaRepository<PhysicalVehicle
      * Tìm tất cả các xe vật lý được gán cho một đơn hàng cụ thể.
      */
     List<PhysicalVehicle> findAllByOrderId(UUID orderId);
+
+    /**
+     * Trả về các VIN (trong danh sách đầu vào) đã tồn tại - kiểm tra trùng theo lô bằng 1 query.
+     */
+    @Query("SELECT v.vin FROM PhysicalVehicle v WHERE v.vin IN :vins")
+    List<String> findExistingVins(@Param("vins") Collection<String> vins);
 }
@@ -4,6 +4,7 @@ import com.ev.inventory_service.model.StockAlert;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.Optional;
@@ -21,4 +22,9 @@ public interface StockAlertRepository extends JpaRepository<StockAlert, Long> {
      * Tìm CẢNH BÁO ĐẦU TIÊN (bất kỳ) có trạng thái "NEW" (đang hoạt động).
      */
     Optional<StockAlert> findFirstByVariantIdAndStatus(Long variantId, String status);
+
+    /**
+     * Tìm các cảnh báo theo trạng thái cho nhiều variant (1 query, dùng khi xử lý theo lô).
+     */
+    List<StockAlert> findByVariantIdInAndStatus(Collection<Long> variantIds, String status);
 }
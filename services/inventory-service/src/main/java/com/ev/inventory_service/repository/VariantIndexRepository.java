@@ -0,0 +1,37 @@
+package com.ev.inventory_service.repository;
+
+import com.ev.inventory_service.model.VariantIndex;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface VariantIndexRepository extends JpaRepository<VariantIndex, Long> {
+
+    /**
+     * Variant còn hàng (available > ngưỡng cảnh báo).
+     */
+    @Query("SELECT v.variantId FROM VariantIndex v, CentralInventory c " +
+           "WHERE c.variantId = v.variantId AND c.availableQuantity > COALESCE(c.reorderLevel, 0) " +
+           "ORDER BY v.variantId")
+    List<Long> findInStockVariantIds();
+
+    /**
+     * Variant sắp hết hàng (0 < available <= ngưỡng cảnh báo).
+     */
+    @Query("SELECT v.variantId FROM VariantIndex v, CentralInventory c " +
+           "WHERE c.variantId = v.variantId AND c.availableQuantity > 0 " +
+           "AND c.availableQuantity <= COALESCE(c.reorderLevel, 0) " +
+           "ORDER BY v.variantId")
+    List<Long> findLowStockVariantIds();
+
+    /**
+     * Variant hết hàng (không có bản ghi kho hoặc available <= 0).
+     */
+    @Query("SELECT v.variantId FROM VariantIndex v WHERE NOT EXISTS (" +
+           "SELECT c FROM CentralInventory c WHERE c.variantId = v.variantId AND c.availableQuantity > 0) " +
+           "ORDER BY v.variantId")
+    List<Long> findOutOfStockVariantIds();
+}
@@ -9,8 +9,8 @@ import com.ev.common_lib.dto.inventory.AllocationRequestDto;
 import com.ev.common_lib.dto.inventory.ShipmentRequestDto;
 import com.ev.common_lib.dto.inventory.InventoryComparisonDto;
 import com.ev.common_lib.dto.vehicle.VariantDetailDto;
-import com.ev.common_lib.event.StockAlertEvent;
 
+import com.ev.inventory_service.dto.request.BulkRestockRequestDto;
 import com.ev.inventory_service.dto.request.TransactionRequestDto;
 import com.ev.inventory_service.dto.request.UpdateReorderLevelRequest;
 import com.ev.inventory_service.dto.request.CreateTransferRequestDto;
@@ -27,15 +27,18 @@ import com.ev.inventory_service.model.CentralInventory;
 import com.ev.inventory_service.model.DealerAllocation;
 import com.ev.inventory_service.model.InventoryTransaction;
 import com.ev.inventory_service.model.TransferRequest;
-import com.ev.inventory_service.model.StockAlert;
 import com.ev.inventory_service.model.Enum.TransferRequestStatus;
 import com.ev.inventory_service.repository.CentralInventoryRepository;
 import com.ev.inventory_service.repository.DealerAllocationRepository;
 import com.ev.inventory_service.repository.InventoryTransactionRepository;
 import com.ev.inventory_service.repository.PhysicalVehicleRepository;
-import com.ev.inventory_service.repository.StockAlertRepository;
 import com.ev.inventory_service.repository.TransferRequestRepository;
+import com.ev.inventory_service.repository.VariantIndexRepository;
 import com.ev.inventory_service.services.Interface.InventoryService;
+import com.ev.inventory_service.services.Interface.VariantIndexService;
+import com.ev.inventory_service.services.LowStockAlertPipeline;
+import com.ev.inventory_service.services.OutboxProcessor;
+import com.ev.inventory_service.services.StockLedger;
 import com.ev.inventory_service.specification.InventorySpecification;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.domain.Page;
@@ -53,22 +56,32 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 // Redis for cache
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 // import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.beans.factory.annotation.Value;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 
 import java.io.ByteArrayOutputStream;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.function.Consumer;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.ArrayList;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -101,8 +114,7 @@ import java.awt.Color;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.springframework.kafka.core.KafkaTemplate;
-
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import java.util.UUID;
 import java.text.DecimalFormat;
@@ -115,21 +127,35 @@ public class InventoryServiceImpl implements InventoryService {
     private final DealerAllocationRepository dealerRepo;
     private final InventoryTransactionRepository transactionRepo;
     private final RestTemplate restTemplate;
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final OutboxProcessor outboxProcessor;
     private final PhysicalVehicleRepository physicalVehicleRepo;
     private final TransferRequestRepository transferRequestRepo;
 
-    private final StockAlertRepository stockAlertRepo;
+    private final StockLedger stockLedger;
+    private final LowStockAlertPipeline lowStockAlertPipeline;
+    private final CacheManager cacheManager;
+    private final VariantIndexRepository variantIndexRepo;
+    private final VariantIndexService variantIndexService;
+    private final EntityManager entityManager;
     private static final Logger log = LoggerFactory.getLogger(InventoryServiceImpl.class);
 
     public static final String TOPIC_DEALER_STOCK_UPDATED = "stock_events_dealerEVM";
-    public static final String TOPIC_LOW_STOCK_ALERT = "inventory.alerts.low_stock";
+    public static final String TOPIC_INVENTORY_EVENTS = "inventory_events";
+    public static final String CACHE_INVENTORY_STATUS = "inventory-status";
+
+    // Xuất báo cáo: số dòng đọc mỗi lô / số dòng Excel giữ trong bộ nhớ
+    private static final int REPORT_CHUNK_SIZE = 1000;
+    private static final int REPORT_ROW_WINDOW = 200;
+
+    // Nhập/xuất VIN hàng loạt: khớp với hibernate.jdbc.batch_size, và giới hạn số phần tử mỗi IN (...)
+    private static final int VIN_WRITE_BATCH_SIZE = 100;
+    private static final int VIN_QUERY_CHUNK_SIZE = 1000;
 
     @Value("${app.services.catalog.url}")
     private String vehicleCatalogUrl;
 
     @Override
-    @Cacheable(value = "inventory-status", key = "#variantId")
+    @Cacheable(value = CACHE_INVENTORY_STATUS, key = "#variantId")
     public InventoryStatusDto getInventoryStatusForVariant(Long variantId) {
         // Chỉ lấy dữ liệu từ kho trung tâm
         CentralInventory central = centralRepo.findByVariantId(variantId)
@@ -191,8 +217,11 @@ public class InventoryServiceImpl implements InventoryService {
         List<Specification<CentralInventory>> specs = new ArrayList<>();
 
         // --- LOGIC TÌM KIẾM THEO TÊN XE ---
-        if (search != null && !search.isBlank()) {
-            // Gọi API của vehicle-catalog-service để lấy danh sách variantId
+        if (search != null && !search.isBlank() && variantIndexService.isReady()) {
+            // Tìm trên chỉ mục variant cục bộ (1 subquery SQL, không gọi sang vehicle-service)
+            specs.add(InventorySpecification.matchesVariantKeyword(search));
+        } else if (search != null && !search.isBlank()) {
+            // Chỉ mục chưa sẵn sàng: gọi API của vehicle-catalog-service để lấy danh sách variantId
             String searchUrl = vehicleCatalogUrl + "/vehicle-catalog/variants/search?keyword=" + search; // Cổng của
                                                                                                          // vehicle-catalog-service
 
@@ -234,7 +263,9 @@ public class InventoryServiceImpl implements InventoryService {
         Specification<CentralInventory> finalSpec = specs.stream().reduce(Specification::and).orElse(null);
         Page<CentralInventory> inventoryPage = centralRepo.findAll(finalSpec, pageable);
 
-        return inventoryPage.map(item -> getInventoryStatusForVariant(item.getVariantId()));
+        // Tính DTO trực tiếp từ các entity đã tải (1 query cho cả trang,
+        // không gọi lại findByVariantId hay Redis cho từng dòng)
+        return inventoryPage.map(item -> mapToInventoryStatusDto(item, item.getVariantId()));
     }
 
     @Override
@@ -263,12 +294,47 @@ public class InventoryServiceImpl implements InventoryService {
         transaction.setNotes(request.getNotes());
         InventoryTransaction savedTransaction = transactionRepo.save(transaction);
 
-        // Gửi sự kiện Kafka
-        try {
-            kafkaTemplate.send("inventory_events", savedTransaction);
-        } catch (Exception e) {
-            System.err.println("WARN: Failed to send inventory event to Kafka. " + e.getMessage());
+        // Ghi sự kiện Kafka vào outbox (gửi sau khi commit)
+        publishInventoryEvent(savedTransaction);
+    }
+
+    @Override
+    @Transactional
+    public int bulkRestock(BulkRestockRequestDto request, String staffEmail, String role) {
+
+        // Kiểm tra quyền
+        if (!role.equals("EVM_STAFF") && !role.equals("ADMIN")) {
+            throw new AppException(ErrorCode.FORBIDDEN);
+        }
+
+        // Gom VIN theo variant (một variant có thể xuất hiện ở nhiều item)
+        Map<Long, List<String>> vinsByVariant = new LinkedHashMap<>();
+        for (BulkRestockRequestDto.RestockItem item : request.getItems()) {
+            vinsByVariant.computeIfAbsent(item.getVariantId(), id -> new ArrayList<>()).addAll(item.getVins());
         }
+
+        restockVins(vinsByVariant);
+
+        // Ghi log giao dịch: mỗi variant một dòng RESTOCK
+        List<InventoryTransaction> transactions = new ArrayList<>();
+        for (Map.Entry<Long, List<String>> entry : vinsByVariant.entrySet()) {
+            InventoryTransaction transaction = new InventoryTransaction();
+            transaction.setVariantId(entry.getKey());
+            transaction.setTransactionType(TransactionType.RESTOCK);
+            transaction.setQuantity(entry.getValue().size());
+            transaction.setStaffId(staffEmail);
+            transaction.setReferenceId(request.getReferenceId());
+            transaction.setNotes(request.getNotes());
+            transactions.add(transaction);
+        }
+        List<InventoryTransaction> savedTransactions = transactionRepo.saveAll(transactions);
+
+        // Ghi sự kiện Kafka vào outbox (gửi sau khi commit)
+        savedTransactions.forEach(this::publishInventoryEvent);
+
+        int totalVins = vinsByVariant.values().stream().mapToInt(List::size).sum();
+        log.info("Đã nhập kho hàng loạt {} VIN cho {} variant", totalVins, vinsByVariant.size());
+        return totalVins;
     }
 
     @Override
@@ -278,7 +344,13 @@ public class InventoryServiceImpl implements InventoryService {
         CentralInventory central = centralRepo.findByVariantId(request.getVariantId())
                 .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
 
-        if (central.getAvailableQuantity() < request.getQuantity()) {
+        // Khi bật sổ cái, dòng DB có thể trễ tới 1 chu kỳ flush: đọc số khả dụng từ sổ cái
+        int available = stockLedger.isEnabled()
+                ? stockLedger.snapshot(request.getVariantId())
+                        .map(StockLedger.Counts::available)
+                        .orElse(central.getAvailableQuantity())
+                : central.getAvailableQuantity();
+        if (available < request.getQuantity()) {
             throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
         }
 
@@ -298,14 +370,12 @@ public class InventoryServiceImpl implements InventoryService {
     public void generateInventoryReport(OutputStream outputStream, LocalDate startDate, LocalDate endDate)
             throws IOException {
 
-        // 1. Lấy tất cả các giao dịch trong khoảng thời gian đã chọn
         LocalDateTime startDateTime = startDate.atStartOfDay();
         LocalDateTime endDateTime = endDate.atTime(LocalTime.MAX);
-        List<InventoryTransaction> transactions = transactionRepo.findAllByTransactionDateBetween(startDateTime,
-                endDateTime);
 
-        // 2. Dùng Apache POI để tạo file Excel từ danh sách giao dịch
-        try (Workbook workbook = new XSSFWorkbook()) {
+        // Dùng SXSSFWorkbook: chỉ giữ REPORT_ROW_WINDOW dòng trong bộ nhớ, phần còn lại ghi ra file tạm
+        SXSSFWorkbook workbook = new SXSSFWorkbook(REPORT_ROW_WINDOW);
+        try {
             Sheet sheet = workbook.createSheet("Báo cáo giao dịch kho");
 
             // --- Tạo Header ---
@@ -313,16 +383,19 @@ public class InventoryServiceImpl implements InventoryService {
             CellStyle headerStyle = createHeaderStyle(workbook);
             String[] columns = { "ID Giao Dịch", "Ngày", "Loại Giao Dịch", "ID Sản Phẩm", "Số Lượng", "Từ Kho",
                     "Đến Kho", "Nhân Viên", "Ghi Chú" };
+            // Độ rộng cột cố định (autoSizeColumn không dùng được khi dòng đã bị flush)
+            int[] columnWidths = { 14, 28, 22, 14, 10, 44, 44, 30, 60 };
             for (int i = 0; i < columns.length; i++) {
                 Cell cell = headerRow.createCell(i);
                 cell.setCellValue(columns[i]);
                 cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, columnWidths[i] * 256);
             }
 
-            // --- Đổ dữ liệu ---
-            int rowNum = 1;
-            for (InventoryTransaction tx : transactions) {
-                Row row = sheet.createRow(rowNum++);
+            // --- Đổ dữ liệu theo từng lô ---
+            int[] rowNum = { 1 };
+            forEachTransactionInRange(startDateTime, endDateTime, tx -> {
+                Row row = sheet.createRow(rowNum[0]++);
                 row.createCell(0).setCellValue(tx.getTransactionId());
                 row.createCell(1).setCellValue(tx.getTransactionDate().toString());
                 row.createCell(2).setCellValue(tx.getTransactionType().name());
@@ -334,25 +407,20 @@ public class InventoryServiceImpl implements InventoryService {
                         .setCellValue(tx.getToDealerId() != null ? "Đại lý " + tx.getToDealerId() : "Kho Trung Tâm");
                 row.createCell(7).setCellValue(tx.getStaffId());
                 row.createCell(8).setCellValue(tx.getNotes());
-            }
-
-            // Tự động điều chỉnh độ rộng cột
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
+            });
 
             workbook.write(outputStream);
+        } finally {
+            workbook.dispose(); // Xóa file tạm
+            workbook.close();
         }
     }
 
     @Override
     public void generatePdfReport(OutputStream outputStream, LocalDate startDate, LocalDate endDate)
             throws IOException {
-        // Lấy dữ liệu giao dịch
         LocalDateTime startDateTime = startDate.atStartOfDay();
         LocalDateTime endDateTime = endDate.atTime(LocalTime.MAX);
-        List<InventoryTransaction> transactions = transactionRepo.findAllByTransactionDateBetween(startDateTime,
-                endDateTime);
 
         // Dùng iText để tạo file PDF
         PdfWriter writer = new PdfWriter(outputStream);
@@ -380,8 +448,42 @@ public class InventoryServiceImpl implements InventoryService {
         document.add(new Paragraph("Từ Ngày: " + startDate + " Đến Ngày: " + endDate));
         document.add(new Paragraph(" "));
 
-        if (!transactions.isEmpty()) {
-            byte[] chartImageBytes = createChartImage(transactions);
+        // --- Đổ dữ liệu vào Bảng (large table, flush dần ra PDF) ---
+        // Số liệu cho biểu đồ được đếm ngay trong lượt đọc này
+        Map<TransactionType, Long> typeCounts = new EnumMap<>(TransactionType.class);
+        Table[] tableHolder = { null };
+        int[] rowCount = { 0 };
+
+        forEachTransactionInRange(startDateTime, endDateTime, tx -> {
+            if (tableHolder[0] == null) {
+                tableHolder[0] = createPdfTransactionTable();
+                document.add(tableHolder[0]);
+            }
+            Table table = tableHolder[0];
+
+            table.addCell(String.valueOf(tx.getTransactionId()));
+            table.addCell(tx.getTransactionDate().toLocalDate().toString());
+            table.addCell(getTransactionTypeName(tx.getTransactionType()));
+            table.addCell(String.valueOf(tx.getVariantId()));
+            table.addCell(String.valueOf(tx.getQuantity()));
+            table.addCell(tx.getFromDealerId() != null ? "Đại Lý " + tx.getFromDealerId() : "Kho TT");
+            table.addCell(tx.getToDealerId() != null ? "Đại Lý " + tx.getToDealerId() : "Kho TT");
+            table.addCell(tx.getStaffId());
+            table.addCell(tx.getNotes() != null ? tx.getNotes() : "");
+
+            typeCounts.merge(tx.getTransactionType(), 1L, Long::sum);
+            if (++rowCount[0] % REPORT_CHUNK_SIZE == 0) {
+                table.flush();
+            }
+        });
+
+        if (tableHolder[0] == null) {
+            document.add(new Paragraph("Không có giao dịch nào trong khoảng thời gian đã chọn."));
+        } else {
+            tableHolder[0].complete();
+
+            // Biểu đồ tổng hợp đặt sau bảng (vì số liệu chỉ có sau khi đọc hết)
+            byte[] chartImageBytes = createChartImage(typeCounts);
             if (chartImageBytes != null) {
                 try {
                     // Tạo đối tượng Image của iText từ byte[]
@@ -391,46 +493,14 @@ public class InventoryServiceImpl implements InventoryService {
                     chartImage.setWidth(UnitValue.createPercentValue(80)); // Rộng 80% trang
                     chartImage.setHorizontalAlignment(com.itextpdf.layout.properties.HorizontalAlignment.CENTER);
 
-                    document.add(chartImage); // Thêm biểu đồ vào tài liệu
                     document.add(new Paragraph(" ")); // Thêm khoảng trắng
+                    document.add(chartImage); // Thêm biểu đồ vào tài liệu
                 } catch (Exception e) {
                     log.warn("Không thể chèn biểu đồ vào PDF: {}", e.getMessage());
                 }
             }
         }
 
-        // --- Tạo Bảng ---
-        float[] columnWidths = { 1, 3, 2, 2, 1, 3, 3, 2, 4 };
-        Table table = new Table(UnitValue.createPercentArray(columnWidths));
-        table.setWidth(UnitValue.createPercentValue(100));
-        table.setFontSize(9);
-
-        // --- Thêm Header cho Bảng ---
-        String[] headers = { "ID", "Ngày", "Loại GD", "Variant ID", "SL", "Từ Kho", "Đến Kho", "Nhân Viên", "Ghi Chú" };
-        for (String header : headers) {
-
-            table.addHeaderCell(new Paragraph(header).setBold().setFontSize(13));
-        }
-
-        // --- Đổ dữ liệu vào Bảng ---
-        if (transactions.isEmpty()) {
-            document.add(new Paragraph("Không có giao dịch nào trong khoảng thời gian đã chọn."));
-        } else {
-            for (InventoryTransaction tx : transactions) {
-
-                table.addCell(String.valueOf(tx.getTransactionId()));
-                table.addCell(tx.getTransactionDate().toLocalDate().toString());
-                table.addCell(getTransactionTypeName(tx.getTransactionType()));
-                table.addCell(String.valueOf(tx.getVariantId()));
-                table.addCell(String.valueOf(tx.getQuantity()));
-                table.addCell(tx.getFromDealerId() != null ? "Đại Lý " + tx.getFromDealerId() : "Kho TT");
-                table.addCell(tx.getToDealerId() != null ? "Đại Lý " + tx.getToDealerId() : "Kho TT");
-                table.addCell(tx.getStaffId());
-                table.addCell(tx.getNotes() != null ? tx.getNotes() : "");
-            }
-            document.add(table);
-        }
-
         document.close();
     }
 
@@ -451,16 +521,15 @@ public class InventoryServiceImpl implements InventoryService {
     @Override
     @Transactional
     public void updateCentralReorderLevel(UpdateReorderLevelRequest request, String updatedByEmail) {
-        CentralInventory inventory = centralRepo.findByVariantId(request.getVariantId())
-                .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
-
         // saveCentralInventoryHistory(inventory, EVMAction.UPDATE, updatedByEmail);
 
-        inventory.setReorderLevel(request.getReorderLevel());
-
-        centralRepo.save(inventory);
+        // UPDATE đúng cột reorder_level: không ghi lại số lượng cũ đè lên dữ liệu StockLedger vừa flush
+        if (centralRepo.updateReorderLevel(request.getVariantId(), request.getReorderLevel()) == 0) {
+            throw new AppException(ErrorCode.INVENTORY_NOT_FOUND);
+        }
+        evictInventoryStatusAfterCommit(List.of(request.getVariantId()));
 
-        checkStockThresholdAndNotify(request.getVariantId());
+        lowStockAlertPipeline.submit(request.getVariantId());
     }
 
     @Override
@@ -484,19 +553,28 @@ public class InventoryServiceImpl implements InventoryService {
 
     @Override
     @Transactional
-    @CacheEvict(value = "inventory-status", allEntries = true)
     public void allocateStockForOrder(AllocationRequestDto request, String staffEmail) {
+        // Chỉ xóa cache của các variant bị ảnh hưởng, sau khi commit
+        evictInventoryStatusAfterCommit(request.getItems().stream()
+                .map(AllocationRequestDto.AllocationItem::getVariantId)
+                .collect(Collectors.toSet()));
+
         for (AllocationRequestDto.AllocationItem item : request.getItems()) {
-            CentralInventory central = centralRepo.findByVariantId(item.getVariantId())
-                    .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
+            if (stockLedger.isEnabled()) {
+                // Giữ hàng bằng CAS trên sổ cái, ghi DB theo batch sau commit
+                stockLedger.reserve(item.getVariantId(), item.getQuantity());
+            } else {
+                CentralInventory central = centralRepo.findByVariantId(item.getVariantId())
+                        .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
 
-            if (central.getAvailableQuantity() < item.getQuantity()) {
-                throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
-            }
+                if (central.getAvailableQuantity() < item.getQuantity()) {
+                    throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
+                }
 
-            central.setAvailableQuantity(central.getAvailableQuantity() - item.getQuantity());
-            central.setAllocatedQuantity(central.getAllocatedQuantity() + item.getQuantity());
-            centralRepo.save(central);
+                central.setAvailableQuantity(central.getAvailableQuantity() - item.getQuantity());
+                central.setAllocatedQuantity(central.getAllocatedQuantity() + item.getQuantity());
+                centralRepo.save(central);
+            }
 
             // Ghi log giao dịch "ALLOCATE"
             InventoryTransaction tx = new InventoryTransaction();
@@ -507,111 +585,136 @@ public class InventoryServiceImpl implements InventoryService {
             tx.setReferenceId(request.getOrderId().toString());
             InventoryTransaction savedAllocateTx = transactionRepo.save(tx);
 
-            // Gửi sự kiện Kafka cho ALLOCATE
-            try {
-                kafkaTemplate.send("inventory_events", savedAllocateTx);
-            } catch (Exception e) {
-                System.err.println("WARN: Failed to send ALLOCATE event to Kafka. " + e.getMessage());
-            }
+            // Sự kiện Kafka cho ALLOCATE
+            publishInventoryEvent(savedAllocateTx);
         }
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = "inventory-status", allEntries = true) // Xóa cache khi giao hàng
     public void shipAllocatedStock(ShipmentRequestDto request, String staffEmail) {
         UUID dealerId = request.getDealerId();
         UUID orderId = request.getOrderId();
 
-        for (ShipmentRequestDto.ShipmentItem item : request.getItems()) {
-            Long variantId = item.getVariantId();
-            List<String> vins = item.getVins();
-            int quantity = vins.size();
+        List<ShipmentRequestDto.ShipmentItem> items = request.getItems();
+        List<Long> variantIds = items.stream()
+                .map(ShipmentRequestDto.ShipmentItem::getVariantId)
+                .distinct()
+                .collect(Collectors.toList());
 
-            // Cập nhật bảng SKU (kho trung tâm)
-            CentralInventory central = centralRepo.findByVariantId(variantId)
-                    .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
+        // Xóa cache khi giao hàng (chỉ các variant trong đơn)
+        evictInventoryStatusAfterCommit(variantIds);
 
-            if (central.getAllocatedQuantity() < quantity) {
-                System.err.println("Lỗi phân bổ: Không đủ hàng đã giữ.");
-                throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
+        // Cập nhật bảng VIN (xe vật lý): 1 query cho toàn bộ VIN của đơn
+        Map<String, Long> variantByVin = new HashMap<>();
+        for (ShipmentRequestDto.ShipmentItem item : items) {
+            for (String vin : item.getVins()) {
+                if (variantByVin.put(vin, item.getVariantId()) != null) {
+                    log.warn("VIN {} bị lặp trong yêu cầu giao hàng", vin);
+                    throw new AppException(ErrorCode.BAD_REQUEST);
+                }
             }
-            central.setAllocatedQuantity(central.getAllocatedQuantity() - quantity);
-            central.setTotalQuantity(central.getTotalQuantity() - quantity);
-            centralRepo.save(central);
-
-            checkStockThresholdAndNotify(variantId);
-
-            // Cập nhật bảng SKU (kho đại lý)
-            DealerAllocation allocation = dealerRepo.findByVariantIdAndDealerId(variantId, dealerId)
-                    .orElseGet(() -> {
-                        DealerAllocation newAlloc = new DealerAllocation();
-                        newAlloc.setVariantId(variantId);
-                        newAlloc.setDealerId(dealerId);
-                        newAlloc.setAllocatedQuantity(0);
-                        newAlloc.setAvailableQuantity(0);
-                        return newAlloc; //
-                    });
-
-            allocation.setAvailableQuantity(allocation.getAvailableQuantity() + quantity);
-            DealerAllocation savedAllocation = dealerRepo.save(allocation);
-
-            try {
-                DealerStockUpdatedEvent event = DealerStockUpdatedEvent.builder()
-                        // Lấy từ dữ liệu "làm giàu" (Bước 2)
-                        .variantId(item.getVariantId())
-                        .variantName(item.getVariantName())
-                        .modelId(item.getModelId())
-                        .modelName(item.getModelName())
-
-                        // Lấy từ dữ liệu vừa save
-                        .dealerId(savedAllocation.getDealerId())
-                        .newAvailableQuantity(savedAllocation.getAvailableQuantity())
-                        .newAllocatedQuantity(savedAllocation.getAllocatedQuantity())
-
-                        // Thêm thời gian
-                        .lastUpdatedAt(Timestamp.from(Instant.now()))
-                        .build();
-
-                // Gửi sự kiện lên Topic
-                kafkaTemplate.send(TOPIC_DEALER_STOCK_UPDATED, event);
-
-            } catch (Exception e) {
-                // Chỉ log lỗi, không dừng transaction
-                System.err.println("WARN: Gửi sự kiện Kafka thất bại (dealer stock updated): " + e.getMessage());
+        }
+        List<PhysicalVehicle> vehicles = physicalVehicleRepo.findAllById(variantByVin.keySet());
+        if (vehicles.size() != variantByVin.size()) {
+            log.warn("Đơn {}: {} VIN không tồn tại trong kho", orderId, variantByVin.size() - vehicles.size());
+            throw new AppException(ErrorCode.BAD_REQUEST);
+        }
+        for (PhysicalVehicle vehicle : vehicles) {
+            if (vehicle.getStatus() != VehiclePhysicalStatus.IN_CENTRAL_WAREHOUSE) {
+                System.err.println("Xe " + vehicle.getVin() + " không ở kho trung tâm.");
+                throw new AppException(ErrorCode.BAD_REQUEST);
+            }
+            if (!vehicle.getVariantId().equals(variantByVin.get(vehicle.getVin()))) {
+                log.warn("Xe {} không thuộc variant {}", vehicle.getVin(), variantByVin.get(vehicle.getVin()));
+                throw new AppException(ErrorCode.BAD_REQUEST);
             }
+            vehicle.setStatus(VehiclePhysicalStatus.AT_DEALER); // Cập nhật trạng thái
+            vehicle.setLocationId(dealerId); // Cập nhật vị trí
+            vehicle.setOrderId(orderId);
+        }
+        physicalVehicleRepo.saveAll(vehicles); // UPDATE được gom batch khi flush
 
-            // Cập nhật bảng VIN (xe vật lý)
-            List<PhysicalVehicle> vehicles = physicalVehicleRepo.findAllById(vins);
-            for (PhysicalVehicle vehicle : vehicles) {
-                if (vehicle.getStatus() != VehiclePhysicalStatus.IN_CENTRAL_WAREHOUSE) {
-                    System.err.println("Xe " + vehicle.getVin() + " không ở kho trung tâm.");
-                    throw new AppException(ErrorCode.BAD_REQUEST);
+        // Cập nhật bảng SKU (kho trung tâm)
+        if (stockLedger.isEnabled()) {
+            for (ShipmentRequestDto.ShipmentItem item : items) {
+                stockLedger.ship(item.getVariantId(), item.getVins().size());
+            }
+        } else {
+            Map<Long, CentralInventory> centrals = centralRepo.findByVariantIdIn(variantIds).stream()
+                    .collect(Collectors.toMap(CentralInventory::getVariantId, Function.identity()));
+            for (ShipmentRequestDto.ShipmentItem item : items) {
+                CentralInventory central = centrals.get(item.getVariantId());
+                if (central == null) {
+                    throw new AppException(ErrorCode.INVENTORY_NOT_FOUND);
+                }
+                int quantity = item.getVins().size();
+                if (central.getAllocatedQuantity() < quantity) {
+                    System.err.println("Lỗi phân bổ: Không đủ hàng đã giữ.");
+                    throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
                 }
-                vehicle.setStatus(VehiclePhysicalStatus.AT_DEALER); // Cập nhật trạng thái
-                vehicle.setLocationId(dealerId); // Cập nhật vị trí
-                vehicle.setOrderId(orderId);
+                central.setAllocatedQuantity(central.getAllocatedQuantity() - quantity);
+                central.setTotalQuantity(central.getTotalQuantity() - quantity);
             }
-            physicalVehicleRepo.saveAll(vehicles);
+            centralRepo.saveAll(centrals.values());
+        }
+        variantIds.forEach(lowStockAlertPipeline::submit);
+
+        // Cập nhật bảng SKU (kho đại lý)
+        Map<Long, DealerAllocation> allocations = dealerRepo.findByVariantIdInAndDealerId(variantIds, dealerId).stream()
+                .collect(Collectors.toMap(DealerAllocation::getVariantId, Function.identity()));
+        for (ShipmentRequestDto.ShipmentItem item : items) {
+            DealerAllocation allocation = allocations.computeIfAbsent(item.getVariantId(), variantId -> {
+                DealerAllocation newAlloc = new DealerAllocation();
+                newAlloc.setVariantId(variantId);
+                newAlloc.setDealerId(dealerId);
+                newAlloc.setAllocatedQuantity(0);
+                newAlloc.setAvailableQuantity(0);
+                return newAlloc;
+            });
+            allocation.setAvailableQuantity(allocation.getAvailableQuantity() + item.getVins().size());
+        }
+        dealerRepo.saveAll(allocations.values());
 
-            // Ghi log giao dịch
+        // Ghi log giao dịch
+        List<InventoryTransaction> transactions = new ArrayList<>();
+        for (ShipmentRequestDto.ShipmentItem item : items) {
             InventoryTransaction tx = new InventoryTransaction();
             tx.setTransactionType(TransactionType.TRANSFER_TO_DEALER);
-            tx.setVariantId(variantId);
-            tx.setQuantity(quantity);
+            tx.setVariantId(item.getVariantId());
+            tx.setQuantity(item.getVins().size());
             tx.setToDealerId(dealerId);
             tx.setStaffId(staffEmail);
-            tx.setReferenceId(request.getOrderId().toString());
-            tx.setNotes("Đã giao các VIN: " + String.join(", ", vins));
-            InventoryTransaction savedTransferTx = transactionRepo.save(tx);
-
-            // Gửi sự kiện Kafka cho TRANSFER_TO_DEALER
-            try {
-                kafkaTemplate.send("inventory_events", savedTransferTx);
-            } catch (Exception e) {
-                System.err.println("WARN: Failed to send TRANSFER_TO_DEALER event to Kafka. " + e.getMessage());
-            }
+            tx.setReferenceId(orderId.toString());
+            tx.setNotes("Đã giao các VIN: " + String.join(", ", item.getVins()));
+            transactions.add(tx);
         }
+        List<InventoryTransaction> savedTransferTxs = transactionRepo.saveAll(transactions);
+
+        for (ShipmentRequestDto.ShipmentItem item : items) {
+            DealerAllocation savedAllocation = allocations.get(item.getVariantId());
+            DealerStockUpdatedEvent event = DealerStockUpdatedEvent.builder()
+                    // Lấy từ dữ liệu "làm giàu" (Bước 2)
+                    .variantId(item.getVariantId())
+                    .variantName(item.getVariantName())
+                    .modelId(item.getModelId())
+                    .modelName(item.getModelName())
+
+                    // Lấy từ dữ liệu vừa save
+                    .dealerId(savedAllocation.getDealerId())
+                    .newAvailableQuantity(savedAllocation.getAvailableQuantity())
+                    .newAllocatedQuantity(savedAllocation.getAllocatedQuantity())
+
+                    // Thêm thời gian
+                    .lastUpdatedAt(Timestamp.from(Instant.now()))
+                    .build();
+
+            // Ghi sự kiện vào outbox (gửi lên Topic sau khi commit)
+            outboxProcessor.enqueue(TOPIC_DEALER_STOCK_UPDATED, "DealerAllocation", item.getVariantId(), event);
+        }
+
+        // Sự kiện Kafka cho TRANSFER_TO_DEALER
+        savedTransferTxs.forEach(this::publishInventoryEvent);
     }
 
     /**
@@ -737,7 +840,21 @@ public class InventoryServiceImpl implements InventoryService {
             return Collections.emptyList(); // Trả về rỗng nếu status không hợp lệ
         }
 
-        // Lấy TẤT CẢ ID xe từ Vehicle-Service (Danh sách "Chủ")
+        // Lọc trực tiếp bằng SQL trên chỉ mục variant cục bộ
+        if (variantIndexService.isReady()) {
+            switch (statusEnum) {
+                case IN_STOCK:
+                    return variantIndexRepo.findInStockVariantIds();
+                case LOW_STOCK:
+                    return variantIndexRepo.findLowStockVariantIds();
+                case OUT_OF_STOCK:
+                    return variantIndexRepo.findOutOfStockVariantIds();
+                default:
+                    return Collections.emptyList();
+            }
+        }
+
+        // Chỉ mục chưa sẵn sàng: lấy TẤT CẢ ID xe từ Vehicle-Service (Danh sách "Chủ")
         List<Long> allVariantIds = getAllVariantIdsFromCatalog();
 
         // Lấy TẤT CẢ bản ghi kho (Dữ liệu "Phụ")
@@ -794,7 +911,6 @@ public class InventoryServiceImpl implements InventoryService {
 
     @Override
     @Transactional
-    @CacheEvict(value = "inventory-status", allEntries = true) // Xóa cache khi trả hàng
     public void returnStockForOrder(UUID orderId, String staffEmail) {
 
         // Tìm tất cả các xe (vehicle) đã bị gán cho đơn hàng này
@@ -813,26 +929,32 @@ public class InventoryServiceImpl implements InventoryService {
         Map<Long, Long> variantCounts = vehiclesToReturn.stream()
                 .collect(Collectors.groupingBy(PhysicalVehicle::getVariantId, Collectors.counting()));
 
+        // Xóa cache khi trả hàng (chỉ các variant được trả)
+        evictInventoryStatusAfterCommit(variantCounts.keySet());
+
         // Lặp qua từng nhóm xe để trả về kho
         for (Map.Entry<Long, Long> entry : variantCounts.entrySet()) {
             Long variantId = entry.getKey();
             int quantityToReturn = entry.getValue().intValue();
 
-            // Tìm kho trung tâm của variant này
-            CentralInventory stock = centralRepo.findByVariantId(variantId)
-                    .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
-
             // Cập nhật số lượng kho (Logic ngược của allocate + ship)
             // (shipAllocatedStock đã trừ total-- và allocated--)
             // (allocateStockForOrder đã trừ available-- và cộng allocated++)
             // -> Trả hàng (ngược lại của cả 2) sẽ là: total++ và available++
+            if (stockLedger.isEnabled()) {
+                stockLedger.receive(variantId, quantityToReturn);
+            } else {
+                // Tìm kho trung tâm của variant này
+                CentralInventory stock = centralRepo.findByVariantId(variantId)
+                        .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
 
-            stock.setTotalQuantity(stock.getTotalQuantity() + quantityToReturn);
-            stock.setAvailableQuantity(stock.getAvailableQuantity() + quantityToReturn);
+                stock.setTotalQuantity(stock.getTotalQuantity() + quantityToReturn);
+                stock.setAvailableQuantity(stock.getAvailableQuantity() + quantityToReturn);
 
-            centralRepo.save(stock);
+                centralRepo.save(stock);
+            }
 
-            checkStockThresholdAndNotify(variantId);
+            lowStockAlertPipeline.submit(variantId);
 
             // Ghi lại giao dịch (Transaction)
             InventoryTransaction transaction = new InventoryTransaction();
@@ -861,40 +983,94 @@ public class InventoryServiceImpl implements InventoryService {
             throw new AppException(ErrorCode.FORBIDDEN);
         }
 
-        int quantity = request.getVins().size();
+        restockVins(Map.of(request.getVariantId(), request.getVins()));
+    }
 
-        // Lưu từng chiếc xe vật lý vào bảng VIN
-        List<PhysicalVehicle> newVehicles = new ArrayList<>();
-        for (String vin : request.getVins()) {
-            if (physicalVehicleRepo.existsById(vin)) {
+    /**
+     * Nhập kho theo VIN cho một hoặc nhiều variant:
+     * - Kiểm tra trùng VIN (trong yêu cầu và trong DB) bằng truy vấn theo lô, không gọi existsById từng xe.
+     * - Ghi xe vật lý bằng persist + JDBC batch (hibernate.jdbc.batch_size), flush/clear theo lô
+     * để persistence context không phình to khi nhập hàng nghìn xe.
+     * - Mỗi variant chỉ cập nhật central_inventory một lần.
+     */
+    private void restockVins(Map<Long, List<String>> vinsByVariant) {
+
+        Set<String> allVins = new HashSet<>();
+        for (List<String> vins : vinsByVariant.values()) {
+            for (String vin : vins) {
+                if (!allVins.add(vin)) {
+                    log.warn("VIN {} bị lặp trong yêu cầu nhập kho", vin);
+                    throw new AppException(ErrorCode.DATA_ALREADY_EXISTS);
+                }
+            }
+        }
+
+        List<String> vinList = new ArrayList<>(allVins);
+        for (int from = 0; from < vinList.size(); from += VIN_QUERY_CHUNK_SIZE) {
+            List<String> existing = physicalVehicleRepo.findExistingVins(
+                    vinList.subList(from, Math.min(from + VIN_QUERY_CHUNK_SIZE, vinList.size())));
+            if (!existing.isEmpty()) {
+                log.warn("{} VIN đã tồn tại trong kho, ví dụ: {}", existing.size(), existing.get(0));
                 throw new AppException(ErrorCode.DATA_ALREADY_EXISTS);
             }
+        }
 
-            PhysicalVehicle vehicle = new PhysicalVehicle();
-            vehicle.setVin(vin);
-            vehicle.setVariantId(request.getVariantId());
-            vehicle.setStatus(VehiclePhysicalStatus.IN_CENTRAL_WAREHOUSE);
-            vehicle.setLocationId(null); // null = Kho trung tâm
-            newVehicles.add(vehicle);
+        // Lưu từng chiếc xe vật lý vào bảng VIN
+        int pending = 0;
+        for (Map.Entry<Long, List<String>> entry : vinsByVariant.entrySet()) {
+            for (String vin : entry.getValue()) {
+                PhysicalVehicle vehicle = new PhysicalVehicle();
+                vehicle.setVin(vin);
+                vehicle.setVariantId(entry.getKey());
+                vehicle.setStatus(VehiclePhysicalStatus.IN_CENTRAL_WAREHOUSE);
+                vehicle.setLocationId(null); // null = Kho trung tâm
+                entityManager.persist(vehicle); // VIN là khóa tự gán: persist thay vì save để tránh SELECT trước INSERT
+
+                if (++pending == VIN_WRITE_BATCH_SIZE) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    pending = 0;
+                }
+            }
         }
-        physicalVehicleRepo.saveAll(newVehicles);
+        entityManager.flush();
+        entityManager.clear();
 
         // Cập nhật bảng tóm tắt (CentralInventory)
-        CentralInventory inventory = centralRepo.findByVariantId(request.getVariantId())
-                .orElseGet(() -> {
-                    CentralInventory newInv = new CentralInventory();
-                    newInv.setVariantId(request.getVariantId());
-                    newInv.setTotalQuantity(0);
-                    newInv.setAllocatedQuantity(0);
-                    newInv.setAvailableQuantity(0);
-                    return newInv;
-                });
-
-        inventory.setTotalQuantity(inventory.getTotalQuantity() + quantity);
-        inventory.setAvailableQuantity(inventory.getAvailableQuantity() + quantity);
-        centralRepo.save(inventory);
-
-        checkStockThresholdAndNotify(request.getVariantId());
+        List<Long> variantIds = new ArrayList<>(vinsByVariant.keySet());
+        Map<Long, CentralInventory> inventories = centralRepo.findByVariantIdIn(variantIds).stream()
+                .collect(Collectors.toMap(CentralInventory::getVariantId, Function.identity()));
+        List<CentralInventory> newRows = new ArrayList<>();
+        for (Long variantId : variantIds) {
+            inventories.computeIfAbsent(variantId, id -> {
+                CentralInventory newInv = new CentralInventory();
+                newInv.setVariantId(id);
+                newInv.setTotalQuantity(0);
+                newInv.setAllocatedQuantity(0);
+                newInv.setAvailableQuantity(0);
+                newRows.add(newInv);
+                return newInv;
+            });
+        }
+
+        if (stockLedger.isEnabled()) {
+            // Dòng mới thì lưu với số lượng 0, phần cộng thêm đi qua sổ cái
+            if (!newRows.isEmpty()) {
+                centralRepo.saveAllAndFlush(newRows);
+                newRows.forEach(row -> stockLedger.register(row.getVariantId()));
+            }
+            vinsByVariant.forEach((variantId, vins) -> stockLedger.receive(variantId, vins.size()));
+        } else {
+            vinsByVariant.forEach((variantId, vins) -> {
+                CentralInventory inventory = inventories.get(variantId);
+                inventory.setTotalQuantity(inventory.getTotalQuantity() + vins.size());
+                inventory.setAvailableQuantity(inventory.getAvailableQuantity() + vins.size());
+            });
+            centralRepo.saveAll(inventories.values());
+        }
+
+        variantIds.forEach(lowStockAlertPipeline::submit);
+        evictInventoryStatusAfterCommit(variantIds);
     }
 
     /**
@@ -939,6 +1115,36 @@ public class InventoryServiceImpl implements InventoryService {
         return dtoBuilder.build(); // Trả về DTO đã được build
     }
 
+    /**
+     * Ghi sự kiện giao dịch kho vào outbox (gửi lên inventory_events sau khi commit).
+     */
+    private void publishInventoryEvent(InventoryTransaction transaction) {
+        outboxProcessor.enqueue(TOPIC_INVENTORY_EVENTS, "InventoryTransaction", transaction.getVariantId(), transaction);
+    }
+
+    /**
+     * Xóa cache "inventory-status" của đúng các variant bị thay đổi.
+     * Chạy sau khi transaction commit để request đọc song song không nạp lại dữ liệu cũ.
+     */
+    private void evictInventoryStatusAfterCommit(Collection<Long> variantIds) {
+        Cache cache = cacheManager.getCache(CACHE_INVENTORY_STATUS);
+        if (cache == null || variantIds == null || variantIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = variantIds.stream().distinct().collect(Collectors.toList());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.forEach(cache::evict);
+                }
+            });
+        } else {
+            ids.forEach(cache::evict);
+        }
+    }
+
     private CellStyle createHeaderStyle(Workbook workbook) {
         CellStyle style = workbook.createCellStyle();
         Font font = workbook.createFont();
@@ -947,6 +1153,43 @@ public class InventoryServiceImpl implements InventoryService {
         return style;
     }
 
+    /**
+     * Đọc giao dịch trong khoảng thời gian theo từng lô REPORT_CHUNK_SIZE dòng
+     * (keyset theo transactionId) để bộ nhớ không phụ thuộc số dòng.
+     * Persistence context (open-in-view) sống suốt request, nên sau mỗi lô phải
+     * clear() để các entity đã xử lý được giải phóng.
+     */
+    private void forEachTransactionInRange(LocalDateTime start, LocalDateTime end,
+            Consumer<InventoryTransaction> consumer) {
+        Long lastId = 0L;
+        Pageable chunk = PageRequest.of(0, REPORT_CHUNK_SIZE);
+        while (true) {
+            List<InventoryTransaction> batch = transactionRepo.findReportChunk(start, end, lastId, chunk);
+            if (batch.isEmpty()) {
+                return;
+            }
+            batch.forEach(consumer);
+            lastId = batch.get(batch.size() - 1).getTransactionId();
+            entityManager.clear(); // Chỉ đọc, không có thay đổi chờ flush
+            if (batch.size() < REPORT_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private Table createPdfTransactionTable() {
+        float[] columnWidths = { 1, 3, 2, 2, 1, 3, 3, 2, 4 };
+        Table table = new Table(UnitValue.createPercentArray(columnWidths), true); // large table
+        table.setWidth(UnitValue.createPercentValue(100));
+        table.setFontSize(9);
+
+        String[] headers = { "ID", "Ngày", "Loại GD", "Variant ID", "SL", "Từ Kho", "Đến Kho", "Nhân Viên", "Ghi Chú" };
+        for (String header : headers) {
+            table.addHeaderCell(new Paragraph(header).setBold().setFontSize(13));
+        }
+        return table;
+    }
+
     /**
      * Lấy tồn kho của Đại lý và gộp với thông tin chi tiết từ Vehicle-Service.
      */
@@ -1058,115 +1301,15 @@ public class InventoryServiceImpl implements InventoryService {
         return Collections.emptyList();
     }
 
-    /**
-     * Kiểm tra ngưỡng tồn kho và gửi/giải quyết cảnh báo.
-     * Đây là logic cốt lõi cho yêu cầu "cảnh báo 1 lần".
-     */
-    @Transactional
-    private void checkStockThresholdAndNotify(Long variantId) {
-        try {
-            CentralInventory inventory = centralRepo.findByVariantId(variantId).orElse(null);
-            if (inventory == null)
-                return;
-
-            int currentStock = inventory.getAvailableQuantity();
-            int reorderLevel = (inventory.getReorderLevel() != null) ? inventory.getReorderLevel() : 0;
-            Optional<StockAlert> existingAlert = stockAlertRepo.findFirstByVariantIdAndStatus(variantId, "NEW");
-
-            if (currentStock <= reorderLevel && currentStock > 0) {
-                // ---- TRƯỜNG HỢP 1: DƯỚI NGƯỠNG (LOW_STOCK) ----
-
-                if (existingAlert.isEmpty()) {
-                    // Tạo cảnh báo mới
-                    StockAlert newAlert = new StockAlert();
-                    newAlert.setVariantId(variantId);
-                    newAlert.setAlertType("LOW_STOCK_CENTRAL");
-                    newAlert.setCurrentStock(currentStock);
-                    newAlert.setThreshold(reorderLevel);
-                    newAlert.setStatus("NEW");
-
-                    StockAlert savedAlert = stockAlertRepo.save(newAlert);
-
-                    log.info("Đang làm giàu (enriching) sự kiện low-stock...");
-                    VariantDetailDto details = callCatalogService(variantId);
-
-                    // 3. (THAY ĐỔI) Map Entity sang Event DTO với dữ liệu mới
-                    StockAlertEvent eventPayload = StockAlertEvent.builder()
-                            .alertId(savedAlert.getAlertId())
-                            .variantId(savedAlert.getVariantId())
-                            .alertType(savedAlert.getAlertType())
-                            .currentStock(savedAlert.getCurrentStock())
-                            .threshold(savedAlert.getThreshold())
-                            .alertDate(savedAlert.getAlertDate())
-                            .variantName(details.getVersionName()) // Giả sử bạn dùng VersionName
-                            .skuCode(details.getSkuCode())
-                            .build();
-                    // Gửi sự kiện Kafka
-                    try {
-                        kafkaTemplate.send(TOPIC_LOW_STOCK_ALERT, eventPayload);
-                    } catch (Exception e) {
-                        log.warn("WARN: Gửi sự kiện Kafka (LOW_STOCK_ALERT) thất bại. {}", e.getMessage());
-                    }
-
-                }
-                // Nếu existingAlert.isPresent() -> Đã cảnh báo rồi, không làm gì cả.
-
-            } else {
-                // ---- TRƯỜNG HỢP 2: TRÊN NGƯỠNG (STOCK_OK) ----
-                if (existingAlert.isPresent()) {
-                    StockAlert alertToResolve = existingAlert.get();
-                    alertToResolve.setStatus("RESOLVED");
-                    stockAlertRepo.save(alertToResolve);
-
-                }
-            }
-        } catch (Exception e) {
-            log.error("CRITICAL ERROR: Lỗi trong lúc checkStockThresholdAndNotify: {}", e.getMessage(), e);
-        }
-    }
-
-    /**
-     * Hàm helper gọi sang catalog-service để lấy chi tiết xe
-     */
-    private VariantDetailDto callCatalogService(Long variantId) {
-        String url = vehicleCatalogUrl + "/vehicle-catalog/variants/" + variantId;
-        try {
-            ResponseEntity<ApiRespond<VariantDetailDto>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<ApiRespond<VariantDetailDto>>() {
-                    });
-
-            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
-                    || response.getBody().getData() == null) {
-                log.warn("Không thể lấy chi tiết variant {} từ catalog-service, response: {}", variantId,
-                        response.getStatusCode());
-                throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
-            }
-            return response.getBody().getData();
-
-        } catch (Exception e) {
-            log.error("Lỗi khi gọi catalog-service cho variant {}: {}", variantId, e.getMessage());
-            throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
-        }
-    }
-
     // --- Helped cho báo cáo ---
     /**
-     * Tạo hình ảnh biểu đồ tròn (Pie Chart) từ dữ liệu giao dịch.
+     * Tạo hình ảnh biểu đồ tròn (Pie Chart) từ số giao dịch theo từng loại.
      * 
-     * @param transactions Danh sách giao dịch
+     * @param data Số giao dịch theo loại (đã đếm sẵn khi đọc dữ liệu)
      * @return Mảng byte[] của hình ảnh PNG
      */
-    private byte[] createChartImage(List<InventoryTransaction> transactions) {
+    private byte[] createChartImage(Map<TransactionType, Long> data) {
         try {
-            // Tổng hợp dữ liệu: Đếm số lượng giao dịch theo từng loại
-            Map<TransactionType, Long> data = transactions.stream()
-                    .collect(Collectors.groupingBy(
-                            InventoryTransaction::getTransactionType,
-                            Collectors.counting()));
-
             // Tạo dataset cho biểu đồ tròn
             DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
             for (Map.Entry<TransactionType, Long> entry : data.entrySet()) {
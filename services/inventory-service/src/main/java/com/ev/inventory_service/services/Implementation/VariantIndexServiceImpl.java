@@ -0,0 +1,131 @@
+package com.ev.inventory_service.services.Implementation;
+
+import com.ev.common_lib.dto.respond.ApiRespond;
+import com.ev.common_lib.dto.vehicle.VariantDetailDto;
+import com.ev.common_lib.event.ProductUpdateEvent;
+import com.ev.common_lib.model.enums.VehicleStatus;
+import com.ev.inventory_service.model.VariantIndex;
+import com.ev.inventory_service.repository.VariantIndexRepository;
+import com.ev.inventory_service.services.Interface.VariantIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.client.RestTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VariantIndexServiceImpl implements VariantIndexService {
+
+    // Backfill ghi theo JDBC batch (không merge từng entity)
+    private static final String UPSERT_SQL = "INSERT INTO variant_index "
+            + "(variant_id, model_id, model_name, version_name, color, sku_code, last_updated) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) "
+            // Dòng vừa được sự kiện cập nhật (mới hơn mốc backfill) thì giữ nguyên; last_updated gán sau cùng
+            + "ON DUPLICATE KEY UPDATE "
+            + "model_id = IF(last_updated > VALUES(last_updated), model_id, VALUES(model_id)), "
+            + "model_name = IF(last_updated > VALUES(last_updated), model_name, VALUES(model_name)), "
+            + "version_name = IF(last_updated > VALUES(last_updated), version_name, VALUES(version_name)), "
+            + "color = IF(last_updated > VALUES(last_updated), color, VALUES(color)), "
+            + "sku_code = IF(last_updated > VALUES(last_updated), sku_code, VALUES(sku_code)), "
+            + "last_updated = GREATEST(last_updated, VALUES(last_updated))";
+
+    private static final String DISCONTINUED = VehicleStatus.DISCONTINUED.name();
+
+    private final VariantIndexRepository variantIndexRepo;
+    private final RestTemplate restTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.services.catalog.url}")
+    private String vehicleCatalogUrl;
+
+    private volatile boolean ready;
+
+    @Override
+    @Transactional
+    public void upsert(ProductUpdateEvent event) {
+        if (event == null || event.getVariantId() == null) {
+            return;
+        }
+        // Variant ngừng kinh doanh (xóa mềm bên vehicle-service) không còn trong chỉ mục
+        if (DISCONTINUED.equals(event.getStatus())) {
+            variantIndexRepo.deleteById(event.getVariantId());
+            return;
+        }
+        VariantIndex entry = variantIndexRepo.findById(event.getVariantId()).orElseGet(VariantIndex::new);
+        entry.setVariantId(event.getVariantId());
+        // Sự kiện cũ (trước khi có modelId/skuCode) thì giữ nguyên giá trị đang có
+        if (event.getModelId() != null) {
+            entry.setModelId(event.getModelId());
+        }
+        if (event.getSkuCode() != null) {
+            entry.setSkuCode(event.getSkuCode());
+        }
+        entry.setModelName(event.getModelName());
+        entry.setVersionName(event.getVersionName());
+        entry.setColor(event.getColor());
+        variantIndexRepo.save(entry);
+    }
+
+    /**
+     * Backfill khi khởi động (nếu vehicle-service chưa sẵn sàng thì vẫn dùng dữ liệu đã có).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        try {
+            backfill();
+        } catch (Exception e) {
+            log.warn("Không thể backfill variant_index từ vehicle-service: {}", e.getMessage());
+            ready = variantIndexRepo.count() > 0;
+        }
+    }
+
+    @Override
+    @Transactional
+    public void backfill() {
+        // Mốc lấy trước khi gọi API: dòng nào sự kiện ghi trong lúc chờ phản hồi đều mới hơn mốc này
+        Timestamp startedAt = Timestamp.valueOf(LocalDateTime.now());
+        String url = vehicleCatalogUrl + "/vehicle-catalog/variants/all-for-backfill";
+        ResponseEntity<ApiRespond<List<VariantDetailDto>>> response = restTemplate.exchange(
+                url,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<ApiRespond<List<VariantDetailDto>>>() {
+                });
+
+        if (response.getBody() == null || response.getBody().getData() == null) {
+            throw new IllegalStateException("Empty response from " + url);
+        }
+
+        // Ghi lại toàn bộ với cùng mốc thời gian, rồi xóa các dòng không được ghi
+        // (variant đã ngừng kinh doanh hoặc không còn tồn tại bên vehicle-service).
+        List<Object[]> batchArgs = response.getBody().getData().stream()
+                .filter(dto -> dto.getStatus() != VehicleStatus.DISCONTINUED)
+                .map(dto -> new Object[] { dto.getVariantId(), dto.getModelId(), dto.getModelName(),
+                        dto.getVersionName(), dto.getColor(), dto.getSkuCode(), startedAt })
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+        int removed = jdbcTemplate.update("DELETE FROM variant_index WHERE last_updated < ?", startedAt);
+
+        ready = true;
+        log.info("Đã backfill {} variant vào variant_index, xóa {} variant cũ", batchArgs.size(), removed);
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+}
@@ -5,6 +5,7 @@ import com.ev.common_lib.dto.inventory.ShipmentRequestDto;
 import com.ev.common_lib.dto.inventory.InventoryComparisonDto;
 import com.ev.common_lib.dto.inventory.VinValidationResultDto;
 
+import com.ev.inventory_service.dto.request.BulkRestockRequestDto;
 import com.ev.inventory_service.dto.request.TransactionRequestDto;
 import com.ev.inventory_service.dto.request.UpdateReorderLevelRequest;
 import com.ev.inventory_service.dto.request.CreateTransferRequestDto;
@@ -35,6 +36,13 @@ public interface InventoryService {
     // Thực hiện một giao dịch kho (nhập kho)
     void executeTransaction(TransactionRequestDto request, String staffEmail, String role, String profileId);
 
+    /**
+     * Nhập kho hàng loạt theo VIN cho nhiều variant (ví dụ: nhận cả một container).
+     *
+     * @return Tổng số VIN đã nhập kho
+     */
+    int bulkRestock(BulkRestockRequestDto request, String staffEmail, String role);
+
     // Tạo điều phối
     void createTransferRequest(CreateTransferRequestDto request);
     
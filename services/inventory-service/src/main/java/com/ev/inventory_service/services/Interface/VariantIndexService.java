@@ -0,0 +1,15 @@
+package com.ev.inventory_service.services.Interface;
+
+import com.ev.common_lib.event.ProductUpdateEvent;
+
+public interface VariantIndexService {
+
+    // Cập nhật chỉ mục variant cục bộ từ sự kiện "product_events"
+    void upsert(ProductUpdateEvent event);
+
+    // Nạp lại toàn bộ chỉ mục từ vehicle-service (/variants/all-for-backfill)
+    void backfill();
+
+    // Chỉ mục đã có dữ liệu hay chưa (chưa có thì fallback gọi vehicle-service)
+    boolean isReady();
+}
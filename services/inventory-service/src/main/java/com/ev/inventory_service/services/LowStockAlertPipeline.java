@@ -0,0 +1,264 @@
+package com.ev.inventory_service.services;
+
+import com.ev.common_lib.dto.respond.ApiRespond;
+import com.ev.common_lib.dto.vehicle.VariantDetailDto;
+import com.ev.common_lib.event.StockAlertEvent;
+import com.ev.inventory_service.model.CentralInventory;
+import com.ev.inventory_service.model.StockAlert;
+import com.ev.inventory_service.model.VariantIndex;
+import com.ev.inventory_service.repository.CentralInventoryRepository;
+import com.ev.inventory_service.repository.StockAlertRepository;
+import com.ev.inventory_service.repository.VariantIndexRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Kiểm tra ngưỡng tồn kho và gửi/giải quyết cảnh báo LOW_STOCK ("cảnh báo 1 lần"),
+ * chạy bất đồng bộ sau khi transaction nghiệp vụ commit.
+ *
+ * - submit(variantId): chỉ ghi nhận variant cần kiểm tra (gộp trùng), không query, không gọi HTTP.
+ * - Mỗi cửa sổ ngắn (app.inventory.alerts.window-ms), các variant đang chờ được xử lý theo lô:
+ * kiểm tra ngưỡng trước (1 query tồn kho), chỉ variant dưới ngưỡng mới được làm giàu tên/SKU
+ * (variant_index, gọi catalog nếu thiếu; ngoài transaction), rồi trong 1 transaction:
+ * 1 query tồn kho, 1 query cảnh báo, ghi các StockAlertEvent vào outbox (OutboxProcessor gửi lên Kafka).
+ * Lô lỗi được trả lại hàng đợi để xử lý lại ở cửa sổ sau.
+ */
+@Component
+public class LowStockAlertPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(LowStockAlertPipeline.class);
+
+    public static final String TOPIC_LOW_STOCK_ALERT = "inventory.alerts.low_stock";
+
+    private final CentralInventoryRepository centralRepo;
+    private final StockAlertRepository stockAlertRepo;
+    private final VariantIndexRepository variantIndexRepo;
+    private final StockLedger stockLedger;
+    private final OutboxProcessor outboxProcessor;
+    private final RestTemplate restTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Set<Long> pendingVariantIds = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.services.catalog.url}")
+    private String vehicleCatalogUrl;
+
+    public LowStockAlertPipeline(CentralInventoryRepository centralRepo, StockAlertRepository stockAlertRepo,
+            VariantIndexRepository variantIndexRepo, StockLedger stockLedger,
+            OutboxProcessor outboxProcessor, RestTemplate restTemplate,
+            TransactionTemplate transactionTemplate) {
+        this.centralRepo = centralRepo;
+        this.stockAlertRepo = stockAlertRepo;
+        this.variantIndexRepo = variantIndexRepo;
+        this.stockLedger = stockLedger;
+        this.outboxProcessor = outboxProcessor;
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Đăng ký kiểm tra ngưỡng cho variant; chỉ có hiệu lực khi transaction hiện tại commit.
+     */
+    public void submit(Long variantId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pendingVariantIds.add(variantId);
+                }
+            });
+        } else {
+            pendingVariantIds.add(variantId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.inventory.alerts.window-ms:500}")
+    public void drain() {
+        if (pendingVariantIds.isEmpty()) {
+            return;
+        }
+        List<Long> variantIds = new ArrayList<>(pendingVariantIds);
+        pendingVariantIds.removeAll(variantIds);
+
+        try {
+            // Lấy tên/SKU trước khi mở transaction (lời gọi HTTP không giữ kết nối/khóa DB),
+            // và chỉ cho các variant đang dưới ngưỡng: variant đủ hàng không bao giờ cần tới
+            Map<Long, VariantIndex> variants = lookupVariants(findBelowThreshold(variantIds));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                List<StockAlert> newAlerts = evaluate(variantIds);
+                if (!newAlerts.isEmpty()) {
+                    publish(newAlerts, variants);
+                }
+            });
+        } catch (Exception e) {
+            // Trả lại các variant để lần drain sau xử lý lại (transaction đã rollback nên không tạo trùng)
+            pendingVariantIds.addAll(variantIds);
+            log.error("Lỗi khi xử lý lô cảnh báo tồn kho {}, sẽ thử lại: {}", variantIds, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Các variant trong lô đang ở dưới ngưỡng (ứng viên tạo cảnh báo)
+     */
+    private List<Long> findBelowThreshold(List<Long> variantIds) {
+        return centralRepo.findByVariantIdIn(variantIds).stream()
+                .filter(inventory -> isLowStock(currentStock(inventory), reorderLevel(inventory)))
+                .map(CentralInventory::getVariantId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Tạo cảnh báo mới cho variant vừa xuống dưới ngưỡng, đóng cảnh báo của variant đã đủ hàng.
+     *
+     * @return Các cảnh báo vừa được tạo (cần gửi Kafka)
+     */
+    private List<StockAlert> evaluate(List<Long> variantIds) {
+        Map<Long, CentralInventory> inventories = centralRepo.findByVariantIdIn(variantIds).stream()
+                .collect(Collectors.toMap(CentralInventory::getVariantId, Function.identity()));
+        Map<Long, StockAlert> openAlerts = new HashMap<>();
+        for (StockAlert alert : stockAlertRepo.findByVariantIdInAndStatus(variantIds, "NEW")) {
+            openAlerts.putIfAbsent(alert.getVariantId(), alert);
+        }
+
+        List<StockAlert> toSave = new ArrayList<>();
+        List<StockAlert> created = new ArrayList<>();
+        for (Long variantId : variantIds) {
+            CentralInventory inventory = inventories.get(variantId);
+            if (inventory == null) {
+                continue;
+            }
+
+            int currentStock = currentStock(inventory);
+            int reorderLevel = reorderLevel(inventory);
+            StockAlert existingAlert = openAlerts.get(variantId);
+
+            if (isLowStock(currentStock, reorderLevel)) {
+                // ---- DƯỚI NGƯỠNG (LOW_STOCK): tạo cảnh báo nếu chưa có ----
+                if (existingAlert == null) {
+                    StockAlert newAlert = new StockAlert();
+                    newAlert.setVariantId(variantId);
+                    newAlert.setAlertType("LOW_STOCK_CENTRAL");
+                    newAlert.setCurrentStock(currentStock);
+                    newAlert.setThreshold(reorderLevel);
+                    newAlert.setStatus("NEW");
+                    toSave.add(newAlert);
+                    created.add(newAlert);
+                }
+            } else if (existingAlert != null) {
+                // ---- TRÊN NGƯỠNG (STOCK_OK): đóng cảnh báo đang mở ----
+                existingAlert.setStatus("RESOLVED");
+                toSave.add(existingAlert);
+            }
+        }
+
+        stockAlertRepo.saveAll(toSave);
+        return created;
+    }
+
+    private int currentStock(CentralInventory inventory) {
+        // Khi bật sổ cái, số lượng trong DB có thể chưa được ghi kịp
+        return stockLedger.isEnabled()
+                ? stockLedger.snapshot(inventory.getVariantId()).map(StockLedger.Counts::available)
+                        .orElse(inventory.getAvailableQuantity())
+                : inventory.getAvailableQuantity();
+    }
+
+    private static int reorderLevel(CentralInventory inventory) {
+        return (inventory.getReorderLevel() != null) ? inventory.getReorderLevel() : 0;
+    }
+
+    private static boolean isLowStock(int currentStock, int reorderLevel) {
+        return currentStock <= reorderLevel && currentStock > 0;
+    }
+
+    private void publish(List<StockAlert> alerts, Map<Long, VariantIndex> knownVariants) {
+        // Variant vừa xuống ngưỡng sau bước kiểm tra trước: chỉ lấy từ variant_index, không gọi HTTP
+        Map<Long, VariantIndex> variants = new HashMap<>(knownVariants);
+        List<Long> unresolved = alerts.stream()
+                .map(StockAlert::getVariantId)
+                .filter(id -> !knownVariants.containsKey(id))
+                .collect(Collectors.toList());
+        if (!unresolved.isEmpty()) {
+            for (VariantIndex variant : variantIndexRepo.findAllById(unresolved)) {
+                variants.put(variant.getVariantId(), variant);
+            }
+        }
+
+        for (StockAlert alert : alerts) {
+            VariantIndex variant = variants.get(alert.getVariantId());
+            StockAlertEvent eventPayload = StockAlertEvent.builder()
+                    .alertId(alert.getAlertId())
+                    .variantId(alert.getVariantId())
+                    .alertType(alert.getAlertType())
+                    .currentStock(alert.getCurrentStock())
+                    .threshold(alert.getThreshold())
+                    .alertDate(alert.getAlertDate())
+                    .variantName(variant != null ? variant.getVersionName() : null)
+                    .skuCode(variant != null ? variant.getSkuCode() : null)
+                    .build();
+            outboxProcessor.enqueue(TOPIC_LOW_STOCK_ALERT, "StockAlert", alert.getVariantId(), eventPayload);
+        }
+        log.info("Đã tạo {} cảnh báo tồn kho thấp", alerts.size());
+    }
+
+    /**
+     * Lấy tên/SKU từ variant_index; chỉ các variant chưa có trong chỉ mục mới gọi
+     * vehicle-service (1 request cho cả lô).
+     */
+    private Map<Long, VariantIndex> lookupVariants(List<Long> variantIds) {
+        if (variantIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, VariantIndex> result = variantIndexRepo.findAllById(variantIds).stream()
+                .collect(Collectors.toMap(VariantIndex::getVariantId, Function.identity()));
+
+        List<Long> missing = variantIds.stream()
+                .filter(id -> !result.containsKey(id))
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        try {
+            ResponseEntity<ApiRespond<List<VariantDetailDto>>> response = restTemplate.exchange(
+                    vehicleCatalogUrl + "/vehicle-catalog/variants/details-by-ids",
+                    HttpMethod.POST,
+                    new HttpEntity<>(missing),
+                    new ParameterizedTypeReference<ApiRespond<List<VariantDetailDto>>>() {
+                    });
+            if (response.getBody() != null && response.getBody().getData() != null) {
+                for (VariantDetailDto details : response.getBody().getData()) {
+                    VariantIndex entry = new VariantIndex();
+                    entry.setVariantId(details.getVariantId());
+                    entry.setVersionName(details.getVersionName());
+                    entry.setSkuCode(details.getSkuCode());
+                    result.put(details.getVariantId(), entry);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Không thể lấy chi tiết variant {} từ catalog-service: {}", missing, e.getMessage());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,225 @@
+package com.ev.inventory_service.services;
+
+import com.ev.common_lib.exception.AppException;
+import com.ev.common_lib.exception.ErrorCode;
+import com.ev.inventory_service.model.Outbox;
+import com.ev.inventory_service.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox cho các sự kiện Kafka của inventory-service.
+ *
+ * - enqueue(...): ghi sự kiện vào bảng inventory_outbox trong CÙNG transaction nghiệp vụ,
+ * nên sự kiện chỉ tồn tại khi dữ liệu đã commit (không gửi sớm, không mất khi Kafka lỗi).
+ * - dispatch(): định kỳ lấy một lô sự kiện NEW (FOR UPDATE SKIP LOCKED), gửi song song cả lô,
+ * chờ kết quả rồi đánh dấu SENT bằng 1 câu UPDATE; dòng lỗi được hẹn gửi lại với backoff lũy thừa
+ * (next_attempt_at), quá số lần thử thì FAILED.
+ * - Metrics: outbox.pending, outbox.lag (tuổi sự kiện NEW cũ nhất), outbox.publish.lag
+ * (thời gian từ lúc ghi đến lúc gửi xong), outbox.sent / outbox.failed.
+ */
+@Component
+public class OutboxProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxProcessor.class);
+
+    private static final String STATUS_NEW = "NEW";
+    private static final String STATUS_FAILED = "FAILED";
+
+    // Cùng cấu hình với JsonSerializer của KafkaTemplate, nên message gửi đi giữ nguyên định dạng cũ
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    private final OutboxRepository outboxRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Timer publishLag;
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+
+    @Value("${app.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.outbox.retry.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.outbox.retry.base-delay-ms:1000}")
+    private long baseDelayMs;
+
+    @Value("${app.outbox.retry.max-delay-ms:300000}")
+    private long maxDelayMs;
+
+    @Value("${app.outbox.retention-days:7}")
+    private int retentionDays;
+
+    public OutboxProcessor(OutboxRepository outboxRepository, KafkaTemplate<String, Object> kafkaTemplate,
+            TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+
+        this.sentCounter = Counter.builder("outbox.sent").register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.failed").register(meterRegistry);
+        this.publishLag = Timer.builder("outbox.publish.lag")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("outbox.pending", pendingCount, AtomicLong::get).register(meterRegistry);
+        TimeGauge.builder("outbox.lag", oldestPendingAgeMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ghi một sự kiện vào outbox (phải được gọi bên trong transaction nghiệp vụ).
+     * Lỗi khi ghi sẽ làm rollback cả transaction để đảm bảo tính nhất quán.
+     */
+    public void enqueue(String topic, String aggregateType, Object aggregateId, Object payload) {
+        try {
+            Outbox out = Outbox.builder()
+                    .id(UUID.randomUUID().toString())
+                    .aggregateType(aggregateType)
+                    .aggregateId(aggregateId != null ? aggregateId.toString() : null)
+                    .eventType(payload.getClass().getSimpleName())
+                    .topic(topic)
+                    .payloadType(payload.getClass().getName())
+                    .payload(objectMapper.writeValueAsString(payload))
+                    .status(STATUS_NEW)
+                    .attempts(0)
+                    .createdAt(LocalDateTime.now())
+                    .build();
+            outboxRepository.save(out);
+        } catch (Exception e) {
+            log.error("CRITICAL: Không thể ghi sự kiện outbox cho topic {} ({}): {}", topic, aggregateId,
+                    e.getMessage(), e);
+            throw new AppException(ErrorCode.DATABASE_ERROR);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:200}")
+    public void dispatch() {
+        try {
+            // Chỉ lấy tiếp khi cả lô gửi thành công; có lỗi thì đợi lần poll sau (dòng lỗi đã được hẹn giờ)
+            Integer sent;
+            do {
+                sent = transactionTemplate.execute(status -> dispatchBatch());
+            } while (sent != null && sent == batchSize);
+        } catch (Exception e) {
+            log.error("Lỗi khi gửi lô sự kiện outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Số sự kiện đã gửi thành công trong lô
+     */
+    private int dispatchBatch() {
+        List<Outbox> batch = outboxRepository.claimBatch(LocalDateTime.now(), batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Gửi cả lô (producer tự gom batch), sau đó mới chờ kết quả
+        List<CompletableFuture<?>> futures = new ArrayList<>(batch.size());
+        for (Outbox o : batch) {
+            futures.add(send(o));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        LocalDateTime now = LocalDateTime.now();
+        List<String> sentIds = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Outbox o = batch.get(i);
+            try {
+                futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sentIds.add(o.getId());
+                publishLag.record(Duration.between(o.getCreatedAt(), now));
+            } catch (Exception ex) {
+                log.error("Lỗi khi gửi sự kiện outbox ID {} lên topic {}: {}", o.getId(), o.getTopic(),
+                        ex.getMessage());
+                handleSendFailure(o, now);
+            }
+        }
+
+        if (!sentIds.isEmpty()) {
+            outboxRepository.markSent(sentIds, now);
+            sentCounter.increment(sentIds.size());
+        }
+        return sentIds.size();
+    }
+
+    private CompletableFuture<?> send(Outbox o) {
+        try {
+            Object payload = objectMapper.readValue(o.getPayload(), Class.forName(o.getPayloadType()));
+            return kafkaTemplate.send(o.getTopic(), o.getAggregateId(), payload);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Hẹn gửi lại với backoff lũy thừa (base * 2^(attempts-1), tối đa maxDelay);
+     * dòng đang được quản lý trong transaction nên thay đổi được ghi khi commit.
+     */
+    private void handleSendFailure(Outbox o, LocalDateTime now) {
+        int newAttempts = o.getAttempts() + 1;
+        o.setAttempts(newAttempts);
+        o.setLastAttemptAt(now);
+        failedCounter.increment();
+
+        if (newAttempts >= maxAttempts) {
+            o.setStatus(STATUS_FAILED);
+            return;
+        }
+        long delayMs = Math.min(maxDelayMs, baseDelayMs << Math.min(newAttempts - 1, 20));
+        o.setNextAttemptAt(now.plus(Duration.ofMillis(delayMs)));
+    }
+
+    /**
+     * Cập nhật gauge độ trễ outbox (số sự kiện chờ và tuổi sự kiện cũ nhất).
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.metrics-interval-ms:10000}")
+    public void refreshLagMetrics() {
+        try {
+            pendingCount.set(outboxRepository.countByStatus(STATUS_NEW));
+            oldestPendingAgeMs.set(outboxRepository.findFirstByStatusOrderByCreatedAtAsc(STATUS_NEW)
+                    .map(o -> Duration.between(o.getCreatedAt(), LocalDateTime.now()).toMillis())
+                    .orElse(0L));
+        } catch (Exception e) {
+            log.warn("Không thể cập nhật metrics outbox: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Dọn các sự kiện đã gửi quá thời gian lưu giữ.
+     */
+    @Scheduled(cron = "${app.outbox.purge-cron:0 0 3 * * *}")
+    public void purgeSent() {
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays)));
+        log.info("Đã xóa {} sự kiện outbox đã gửi", deleted);
+    }
+}
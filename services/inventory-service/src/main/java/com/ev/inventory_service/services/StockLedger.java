@@ -0,0 +1,256 @@
+package com.ev.inventory_service.services;
+
+import com.ev.common_lib.exception.AppException;
+import com.ev.common_lib.exception.ErrorCode;
+import com.ev.inventory_service.model.CentralInventory;
+import com.ev.inventory_service.repository.CentralInventoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sổ cái tồn kho trung tâm trong bộ nhớ (tùy chọn, bật bằng
+ * app.inventory.ledger.enabled=true).
+ *
+ * - Mỗi variantId giữ một bộ đếm (total/available/allocated) bất biến trong
+ * AtomicReference, thay đổi bằng compare-and-set nên không bao giờ bán vượt tồn.
+ * - Chênh lệch (delta) chỉ được đưa vào hàng đợi ghi khi transaction commit,
+ * và được hoàn lại vào bộ đếm nếu transaction rollback.
+ * - Định kỳ ghi các delta xuống MySQL bằng một JDBC batch UPDATE tương đối
+ * (col = col + ?), nên không ghi đè lên thay đổi khác.
+ * - Khởi tạo lại từ bảng central_inventory khi service khởi động.
+ *
+ * Lưu ý: chỉ đúng khi một instance duy nhất ghi vào central_inventory, và khi bật sổ cái thì
+ * chỉ flush() ghi các cột số lượng (các đường ghi khác dùng UPDATE đúng cột / @DynamicUpdate).
+ *
+ * Đánh đổi về độ bền: transaction nghiệp vụ commit KHÔNG kèm thay đổi central_inventory;
+ * delta chỉ nằm trong bộ nhớ đến lần flush kế tiếp (app.inventory.ledger.flush-interval-ms,
+ * mặc định 200ms). Nếu process dừng đột ngột (crash, kill -9) trước khi flush, các delta
+ * đó bị mất và central_inventory lệch với các bản ghi giao dịch đã commit, cần đối soát lại
+ * (khi tắt có kiểm soát, flushOnShutdown() ghi nốt phần còn lại).
+ * Ngoài ra, mọi truy vấn đọc trực tiếp MySQL (báo cáo, service khác) có thể trễ tối đa
+ * một chu kỳ flush. Chỉ bật ledger khi chấp nhận được rủi ro này.
+ */
+@Component
+public class StockLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(StockLedger.class);
+
+    private static final String FLUSH_SQL = "UPDATE central_inventory SET total_quantity = total_quantity + ?, "
+            + "available_quantity = available_quantity + ?, allocated_quantity = allocated_quantity + ? "
+            + "WHERE variant_id = ?";
+
+    /**
+     * Bộ đếm tồn kho bất biến của một variant (cũng dùng làm delta).
+     */
+    public record Counts(int total, int available, int allocated) {
+        public static final Counts ZERO = new Counts(0, 0, 0);
+
+        Counts plus(Counts delta) {
+            return new Counts(total + delta.total, available + delta.available, allocated + delta.allocated);
+        }
+
+        Counts negate() {
+            return new Counts(-total, -available, -allocated);
+        }
+
+        boolean isZero() {
+            return total == 0 && available == 0 && allocated == 0;
+        }
+    }
+
+    private final CentralInventoryRepository centralRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+
+    private final Map<Long, AtomicReference<Counts>> balances = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicReference<Counts>> pendingDeltas = new ConcurrentHashMap<>();
+
+    @Value("${app.inventory.ledger.enabled:false}")
+    private boolean enabled;
+
+    public StockLedger(CentralInventoryRepository centralRepo, JdbcTemplate jdbcTemplate, CacheManager cacheManager) {
+        this.centralRepo = centralRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheManager = cacheManager;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Nạp lại toàn bộ sổ cái từ central_inventory (chạy khi khởi động).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        balances.clear();
+        List<CentralInventory> rows = centralRepo.findAll();
+        for (CentralInventory row : rows) {
+            balances.put(row.getVariantId(), new AtomicReference<>(toCounts(row)));
+        }
+        log.info("StockLedger: đã nạp {} variant từ central_inventory", rows.size());
+    }
+
+    /**
+     * Giữ hàng: available -> allocated.
+     */
+    public void reserve(Long variantId, int quantity) {
+        apply(variantId, new Counts(0, -quantity, quantity));
+    }
+
+    /**
+     * Xuất kho hàng đã giữ: trừ allocated và total.
+     */
+    public void ship(Long variantId, int quantity) {
+        apply(variantId, new Counts(-quantity, 0, -quantity));
+    }
+
+    /**
+     * Nhập kho / nhận hàng trả về: cộng total và available.
+     */
+    public void receive(Long variantId, int quantity) {
+        apply(variantId, new Counts(quantity, quantity, 0));
+    }
+
+    /**
+     * Đảm bảo variant có bộ đếm trong sổ cái (dùng khi vừa tạo dòng central_inventory mới).
+     */
+    public void register(Long variantId) {
+        balances.computeIfAbsent(variantId, id -> new AtomicReference<>(Counts.ZERO));
+    }
+
+    public Optional<Counts> snapshot(Long variantId) {
+        AtomicReference<Counts> ref = balances.get(variantId);
+        return ref == null ? Optional.empty() : Optional.of(ref.get());
+    }
+
+    private void apply(Long variantId, Counts delta) {
+        AtomicReference<Counts> ref = balanceOf(variantId);
+
+        while (true) {
+            Counts current = ref.get();
+            Counts next = current.plus(delta);
+            if (next.available() < 0 || next.allocated() < 0 || next.total() < 0) {
+                throw new AppException(ErrorCode.INSUFFICIENT_STOCK);
+            }
+            if (ref.compareAndSet(current, next)) {
+                break;
+            }
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(variantId, delta);
+                    } else {
+                        ref.accumulateAndGet(delta.negate(), Counts::plus);
+                    }
+                }
+            });
+        } else {
+            enqueue(variantId, delta);
+        }
+    }
+
+    private AtomicReference<Counts> balanceOf(Long variantId) {
+        AtomicReference<Counts> ref = balances.get(variantId);
+        if (ref != null) {
+            return ref;
+        }
+        // Chưa có trong sổ cái: nạp từ DB một lần
+        CentralInventory row = centralRepo.findByVariantId(variantId)
+                .orElseThrow(() -> new AppException(ErrorCode.INVENTORY_NOT_FOUND));
+        return balances.computeIfAbsent(variantId, id -> new AtomicReference<>(toCounts(row)));
+    }
+
+    private void enqueue(Long variantId, Counts delta) {
+        pendingDeltas.computeIfAbsent(variantId, id -> new AtomicReference<>(Counts.ZERO))
+                .accumulateAndGet(delta, Counts::plus);
+    }
+
+    /**
+     * Ghi các delta đã commit xuống MySQL theo batch.
+     */
+    @Scheduled(fixedDelayString = "${app.inventory.ledger.flush-interval-ms:200}")
+    public void flush() {
+        if (pendingDeltas.isEmpty()) {
+            return;
+        }
+
+        List<Long> variantIds = new ArrayList<>();
+        List<Counts> deltas = new ArrayList<>();
+        for (Map.Entry<Long, AtomicReference<Counts>> entry : pendingDeltas.entrySet()) {
+            Counts delta = entry.getValue().getAndSet(Counts.ZERO);
+            if (!delta.isZero()) {
+                variantIds.add(entry.getKey());
+                deltas.add(delta);
+            }
+        }
+        if (variantIds.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(variantIds.size());
+        for (int i = 0; i < variantIds.size(); i++) {
+            Counts d = deltas.get(i);
+            batchArgs.add(new Object[] { d.total(), d.available(), d.allocated(), variantIds.get(i) });
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batchArgs);
+        } catch (Exception e) {
+            log.error("StockLedger: ghi batch {} variant thất bại, sẽ thử lại: {}", variantIds.size(), e.getMessage());
+            for (int i = 0; i < variantIds.size(); i++) {
+                enqueue(variantIds.get(i), deltas.get(i));
+            }
+            return;
+        }
+
+        Cache cache = cacheManager.getCache("inventory-status");
+        if (cache != null) {
+            variantIds.forEach(cache::evict);
+        }
+    }
+
+    /**
+     * Ghi nốt các delta còn lại khi tắt service có kiểm soát (trước khi DataSource đóng).
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void flushOnShutdown() {
+        flush();
+        if (!pendingDeltas.values().stream().allMatch(ref -> ref.get().isZero())) {
+            log.error("StockLedger: còn delta chưa ghi được khi tắt service, cần đối soát central_inventory");
+        }
+    }
+
+    private static Counts toCounts(CentralInventory row) {
+        return new Counts(row.getTotalQuantity(), row.getAvailableQuantity(), row.getAllocatedQuantity());
+    }
+}
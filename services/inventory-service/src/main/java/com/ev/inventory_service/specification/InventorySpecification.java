@@ -1,6 +1,9 @@
 package com.ev.inventory_service.specification;
 
 import com.ev.inventory_service.model.CentralInventory;
+import com.ev.inventory_service.model.VariantIndex;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 import java.util.List;
 
@@ -20,4 +23,25 @@ public class InventorySpecification {
             return root.get("variantId").in(variantIds);
         };
     }
+
+    /**
+     * Tìm các inventory có variant khớp từ khóa (tên model, phiên bản, màu, SKU)
+     * dựa trên chỉ mục variant cục bộ, không cần gọi sang vehicle-service.
+     * SQL: variant_id IN (SELECT variant_id FROM variant_index WHERE ... LIKE ...)
+     */
+    public static Specification<CentralInventory> matchesVariantKeyword(String keyword) {
+        return (root, query, criteriaBuilder) -> {
+            String likePattern = "%" + keyword.toLowerCase() + "%";
+
+            Subquery<Long> subquery = query.subquery(Long.class);
+            Root<VariantIndex> variant = subquery.from(VariantIndex.class);
+            subquery.select(variant.get("variantId")).where(criteriaBuilder.or(
+                    criteriaBuilder.like(criteriaBuilder.lower(variant.get("modelName")), likePattern),
+                    criteriaBuilder.like(criteriaBuilder.lower(variant.get("versionName")), likePattern),
+                    criteriaBuilder.like(criteriaBuilder.lower(variant.get("color")), likePattern),
+                    criteriaBuilder.like(criteriaBuilder.lower(variant.get("skuCode")), likePattern)));
+
+            return root.get("variantId").in(subquery);
+        };
+    }
 }
@@ -0,0 +1,144 @@
+package com.ev.inventory_service.services;
+
+import com.ev.common_lib.exception.AppException;
+import com.ev.inventory_service.model.CentralInventory;
+import com.ev.inventory_service.repository.CentralInventoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockLedgerTest {
+
+    private static final long VARIANT_ID = 42L;
+    private static final int INITIAL_STOCK = 100;
+
+    private JdbcTemplate jdbcTemplate;
+    private StockLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        CentralInventory row = new CentralInventory();
+        row.setVariantId(VARIANT_ID);
+        row.setTotalQuantity(INITIAL_STOCK);
+        row.setAvailableQuantity(INITIAL_STOCK);
+        row.setAllocatedQuantity(0);
+
+        CentralInventoryRepository repo = mock(CentralInventoryRepository.class);
+        when(repo.findAll()).thenReturn(List.of(row));
+        jdbcTemplate = mock(JdbcTemplate.class);
+
+        ledger = new StockLedger(repo, jdbcTemplate, new ConcurrentMapCacheManager("inventory-status"));
+        ledger.setEnabled(true);
+        ledger.rebuild();
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws InterruptedException {
+        int threads = 32;
+        int attemptsPerThread = 50;
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    try {
+                        ledger.reserve(VARIANT_ID, 1);
+                        reserved.incrementAndGet();
+                    } catch (AppException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        StockLedger.Counts counts = ledger.snapshot(VARIANT_ID).orElseThrow();
+        assertEquals(INITIAL_STOCK, reserved.get());
+        assertEquals(threads * attemptsPerThread - INITIAL_STOCK, rejected.get());
+        assertEquals(0, counts.available());
+        assertEquals(INITIAL_STOCK, counts.allocated());
+        assertEquals(INITIAL_STOCK, counts.total());
+    }
+
+    @Test
+    void concurrentReserveShipAndRestockKeepCountsConsistent() throws InterruptedException {
+        int threads = 16;
+        int rounds = 200;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    ledger.receive(VARIANT_ID, 1);
+                    ledger.reserve(VARIANT_ID, 1);
+                    ledger.ship(VARIANT_ID, 1);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        StockLedger.Counts counts = ledger.snapshot(VARIANT_ID).orElseThrow();
+        assertEquals(INITIAL_STOCK, counts.available());
+        assertEquals(0, counts.allocated());
+        assertEquals(INITIAL_STOCK, counts.total());
+    }
+
+    @Test
+    void flushWritesSummedDeltasInOneBatch() {
+        ledger.reserve(VARIANT_ID, 3);
+        ledger.reserve(VARIANT_ID, 2);
+        ledger.ship(VARIANT_ID, 4);
+
+        ledger.flush();
+
+        verify(jdbcTemplate).batchUpdate(anyString(),
+                ArgumentMatchers.<List<Object[]>>argThat(args -> args.size() == 1
+                        && (int) args.get(0)[0] == -4
+                        && (int) args.get(0)[1] == -5
+                        && (int) args.get(0)[2] == 1
+                        && (long) args.get(0)[3] == VARIANT_ID));
+    }
+
+    @Test
+    void flushRequeuesDeltasWhenBatchFails() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+        ledger.reserve(VARIANT_ID, 5);
+
+        ledger.flush();
+        ledger.flush();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(),
+                ArgumentMatchers.<List<Object[]>>argThat(args -> args.size() == 1
+                        && (int) args.get(0)[1] == -5));
+    }
+}
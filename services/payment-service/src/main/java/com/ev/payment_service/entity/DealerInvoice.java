@@ -11,7 +11,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "dealer_invoices")
+@Table(name = "dealer_invoices", indexes = {
+        @Index(name = "idx_dealer_invoices_created_dealer", columnList = "created_at, dealer_id"),
+        @Index(name = "idx_dealer_invoices_status_dealer_due", columnList = "status, dealer_id, due_date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
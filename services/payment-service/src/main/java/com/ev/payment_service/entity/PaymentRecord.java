@@ -10,7 +10,10 @@ import java.util.UUID;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payment_records")
+@Table(name = "payment_records", indexes = {
+        @Index(name = "idx_payment_records_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_payment_records_customer_created", columnList = "customer_id, created_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
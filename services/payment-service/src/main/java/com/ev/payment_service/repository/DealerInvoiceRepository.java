@@ -6,6 +6,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,4 +30,33 @@ public interface DealerInvoiceRepository extends JpaRepository<DealerInvoice, UU
     // Lấy danh sách hóa đơn theo orderId (có thể có nhiều hóa đơn cho 1 order)
     @Query("SELECT di FROM DealerInvoice di WHERE di.referenceType = 'SALES_ORDER_B2B' AND di.referenceId = :orderId")
     List<DealerInvoice> findAllByOrderId(@Param("orderId") String orderId);
-}
\ No newline at end of file
+
+    /**
+     * Doanh thu theo đại lý cho hóa đơn tạo trong [from, to).
+     * Mỗi dòng: [dealerId, count, sum(totalAmount), sum(amountPaid)]
+     */
+    @Query("SELECT di.dealerId, COUNT(di), SUM(di.totalAmount), SUM(di.amountPaid) " +
+           "FROM DealerInvoice di " +
+           "WHERE di.createdAt >= :from AND di.createdAt < :to " +
+           "GROUP BY di.dealerId")
+    List<Object[]> summarizeRevenueByDealer(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * Công nợ chưa thanh toán theo đại lý, chia nhóm tuổi nợ theo dueDate.
+     * Ngưỡng được tính sẵn: overdue30 = hôm nay - 30 ngày, ...
+     * Mỗi dòng: [dealerId, count, overdueCount, current(<=30), 31-60, 61-90, >90]
+     */
+    @Query("SELECT di.dealerId, COUNT(di), " +
+           "SUM(CASE WHEN di.dueDate <= :today THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN di.dueDate >= :overdue30 THEN di.totalAmount - di.amountPaid ELSE 0 END), " +
+           "SUM(CASE WHEN di.dueDate < :overdue30 AND di.dueDate >= :overdue60 THEN di.totalAmount - di.amountPaid ELSE 0 END), " +
+           "SUM(CASE WHEN di.dueDate < :overdue60 AND di.dueDate >= :overdue90 THEN di.totalAmount - di.amountPaid ELSE 0 END), " +
+           "SUM(CASE WHEN di.dueDate < :overdue90 THEN di.totalAmount - di.amountPaid ELSE 0 END) " +
+           "FROM DealerInvoice di " +
+           "WHERE di.status <> 'PAID' " +
+           "GROUP BY di.dealerId")
+    List<Object[]> summarizeUnpaidAgingByDealer(@Param("today") LocalDate today,
+                                                @Param("overdue30") LocalDate overdue30,
+                                                @Param("overdue60") LocalDate overdue60,
+                                                @Param("overdue90") LocalDate overdue90);
+}
@@ -5,6 +5,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -18,4 +20,15 @@ public interface DealerTransactionRepository extends JpaRepository<DealerTransac
             "WHERE dt.status = 'PENDING_CONFIRMATION' " +
             "ORDER BY dt.transactionDate DESC")
         Page<DealerTransaction> findPendingTransactions(Pageable pageable);
-}
\ No newline at end of file
+
+        /**
+         * Số giao dịch thành công (SUCCESS/CONFIRMED) theo đại lý, cho hóa đơn tạo trong [from, to).
+         * Mỗi dòng: [dealerId, count]
+         */
+        @Query("SELECT di.dealerId, COUNT(dt) " +
+            "FROM DealerTransaction dt JOIN dt.dealerInvoice di " +
+            "WHERE dt.status IN ('SUCCESS', 'CONFIRMED') " +
+            "AND di.createdAt >= :from AND di.createdAt < :to " +
+            "GROUP BY di.dealerId")
+        List<Object[]> countSuccessfulByDealer(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
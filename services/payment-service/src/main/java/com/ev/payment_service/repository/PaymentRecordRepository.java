@@ -1,13 +1,22 @@
 package com.ev.payment_service.repository;
 
 import com.ev.payment_service.entity.PaymentRecord;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.List;
 import java.util.UUID;
 
-public interface PaymentRecordRepository extends JpaRepository<PaymentRecord, UUID> {
+public interface PaymentRecordRepository extends JpaRepository<PaymentRecord, UUID>,
+        JpaSpecificationExecutor<PaymentRecord> {
 
     // Tìm sổ thanh toán bằng Order ID (vì 1-1)
     Optional<PaymentRecord> findByOrderId(UUID orderId);
@@ -26,4 +35,32 @@ public interface PaymentRecordRepository extends JpaRepository<PaymentRecord, UU
     
     // Tìm theo nhiều status
     List<PaymentRecord> findByStatusIn(List<String> statuses, Sort sort);
-}
\ No newline at end of file
+
+    // Tìm kiếm có phân trang; nạp kèm paymentPlan để tránh N+1 khi map response
+    @Override
+    @EntityGraph(attributePaths = "paymentPlan")
+    Page<PaymentRecord> findAll(Specification<PaymentRecord> spec, Pageable pageable);
+
+    /**
+     * Thống kê theo trạng thái (đã chuẩn hóa UPPER/TRIM) trong khoảng createdAt (tham số null = không giới hạn).
+     * Mỗi dòng: [status, count, sum(totalAmount), sum(amountPaid), sum(remainingAmount)];
+     * các sổ có status null được gộp vào một dòng riêng với status = null.
+     */
+    @Query("SELECT UPPER(TRIM(r.status)), COUNT(r), SUM(r.totalAmount), SUM(r.amountPaid), SUM(r.remainingAmount) " +
+           "FROM PaymentRecord r " +
+           "WHERE (:startDate IS NULL OR r.createdAt >= :startDate) " +
+           "AND (:endDate IS NULL OR r.createdAt <= :endDate) " +
+           "GROUP BY UPPER(TRIM(r.status))")
+    List<Object[]> summarizeByStatus(@Param("startDate") LocalDateTime startDate,
+                                     @Param("endDate") LocalDateTime endDate);
+
+    /**
+     * Công nợ theo khách hàng (chỉ sổ còn nợ, có customerId).
+     * Mỗi dòng: [customerId, count, sum(remainingAmount)]
+     */
+    @Query("SELECT r.customerId, COUNT(r), SUM(r.remainingAmount) " +
+           "FROM PaymentRecord r " +
+           "WHERE r.customerId IS NOT NULL AND r.remainingAmount > 0 " +
+           "GROUP BY r.customerId")
+    List<Object[]> summarizeDebtByCustomer();
+}
@@ -5,6 +5,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,4 +30,18 @@ public interface TransactionRepository extends JpaRepository<Transaction, UUID>
            "AND t.paymentRecord.customerId IS NOT NULL " +
            "ORDER BY t.transactionDate DESC")
     Page<Transaction> findPendingManualTransactions(Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Doanh thu giao dịch thành công theo phương thức thanh toán, cho các sổ thanh toán
+     * tạo trong khoảng [startDate, endDate] (tham số null = không giới hạn).
+     * Mỗi dòng: [methodName, sum(amount)]
+     */
+    @Query("SELECT COALESCE(m.methodName, 'UNKNOWN'), SUM(t.amount) " +
+           "FROM Transaction t JOIN t.paymentRecord r LEFT JOIN t.paymentMethod m " +
+           "WHERE UPPER(t.status) = 'SUCCESS' " +
+           "AND (:startDate IS NULL OR r.createdAt >= :startDate) " +
+           "AND (:endDate IS NULL OR r.createdAt <= :endDate) " +
+           "GROUP BY COALESCE(m.methodName, 'UNKNOWN')")
+    List<Object[]> sumSuccessfulAmountByMethod(@Param("startDate") LocalDateTime startDate,
+                                               @Param("endDate") LocalDateTime endDate);
+}
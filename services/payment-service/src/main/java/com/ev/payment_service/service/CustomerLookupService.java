@@ -0,0 +1,97 @@
+package com.ev.payment_service.service;
+
+import com.ev.common_lib.dto.respond.ApiRespond;
+import com.ev.payment_service.dto.external.CustomerInfo;
+import com.ev.payment_service.repository.CustomerRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tra cứu tên/email khách hàng cho các màn hình danh sách thanh toán.
+ * - Cache cục bộ (Caffeine, TTL ngắn): các trang liên tiếp thường lặp lại cùng khách hàng.
+ * - Các ID chưa có trong cache được lấy theo lô bằng 1 query (CustomerRepository.findByIds);
+ * chỉ ID không tìm thấy trong customer_db mới gọi customer-service từng cái.
+ */
+@Service
+@Slf4j
+public class CustomerLookupService {
+
+    private final CustomerRepository customerRepository;
+    private final RestTemplate restTemplate;
+    private final Cache<Long, CustomerInfo> cache;
+
+    @Value("${customer-service.url}")
+    private String customerServiceBaseUrl;
+
+    public CustomerLookupService(CustomerRepository customerRepository, RestTemplate restTemplate,
+            @Value("${customer.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${customer.cache.max-size:10000}") long maxSize) {
+        this.customerRepository = customerRepository;
+        this.restTemplate = restTemplate;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Lấy thông tin các khách hàng (bỏ qua ID null); khách hàng không tìm thấy sẽ không có trong kết quả.
+     */
+    public Map<Long, CustomerInfo> findByIds(Collection<Long> customerIds) {
+        Set<Long> ids = customerIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, CustomerInfo> result = new HashMap<>(cache.getAllPresent(ids));
+        Set<Long> missing = new HashSet<>(ids);
+        missing.removeAll(result.keySet());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, CustomerInfo> loaded = customerRepository.findByIds(missing);
+        missing.removeAll(loaded.keySet());
+        for (Long id : missing) {
+            CustomerInfo info = fetchFromCustomerService(id);
+            if (info != null) {
+                loaded.put(id, info);
+            }
+        }
+
+        cache.putAll(loaded);
+        result.putAll(loaded);
+        return result;
+    }
+
+    private CustomerInfo fetchFromCustomerService(Long customerId) {
+        try {
+            ResponseEntity<ApiRespond<CustomerInfo>> response = restTemplate.exchange(
+                    customerServiceBaseUrl + "/customers/" + customerId,
+                    HttpMethod.GET,
+                    null,
+                    new ParameterizedTypeReference<ApiRespond<CustomerInfo>>() {
+                    });
+            return response.getBody() != null ? response.getBody().getData() : null;
+        } catch (Exception e) {
+            log.warn("Failed to fetch customer info from customer-service for ID: {}", customerId, e);
+            return null;
+        }
+    }
+}
@@ -17,14 +17,17 @@ import com.ev.payment_service.mapper.TransactionMapper;
 import com.ev.payment_service.repository.PaymentMethodRepository;
 import com.ev.payment_service.repository.PaymentRecordRepository;
 import com.ev.payment_service.repository.TransactionRepository;
+import com.ev.payment_service.service.CustomerLookupService;
 import com.ev.payment_service.service.Interface.ICustomerPaymentService;
 import com.ev.payment_service.service.Interface.IPaymentRecordService;
+import com.ev.payment_service.specification.PaymentRecordSpecification;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -50,6 +53,7 @@ public class CustomerPaymentServiceImpl implements ICustomerPaymentService {
     private final TransactionMapper transactionMapper;
     private final IPaymentRecordService paymentRecordService;
     private final com.ev.payment_service.repository.CustomerRepository customerRepository;
+    private final CustomerLookupService customerLookupService;
 
     // === DYNAMIC CALL (SỬ DỤNG RestTemplate) ===
     private final RestTemplate restTemplate;
@@ -57,9 +61,6 @@ public class CustomerPaymentServiceImpl implements ICustomerPaymentService {
     @Value("${sales-service.url}") // Lấy URL từ application.properties
     private String salesServiceUrl;
 
-    @Value("${customer-service.url}") // URL customer service
-    private String customerServiceBaseUrl;
-
     @Override
     @Transactional
     public InitiatePaymentResponse initiatePayment(UUID orderId, InitiatePaymentRequest request, String userEmail,
@@ -781,86 +782,23 @@ public class CustomerPaymentServiceImpl implements ICustomerPaymentService {
         log.info("Filtering payment records - status: {}, startDate: {}, endDate: {}, orderId: {}, customerId: {}",
                 status, startDate, endDate, orderId, customerId);
 
-        // Build query với criteria
-        Page<PaymentRecord> records;
-
-        // Nếu có orderId, tìm trực tiếp
-        if (orderId != null) {
-            PaymentRecord record = paymentRecordRepository.findByOrderId(orderId).orElse(null);
-            if (record != null) {
-                return new org.springframework.data.domain.PageImpl<>(
-                        java.util.Collections.singletonList(mapToPaymentRecordResponse(record)),
-                        pageable,
-                        1);
-            } else {
-                return Page.empty(pageable);
-            }
-        }
-
-        // Nếu chỉ có customerId
-        if (customerId != null && status == null && startDate == null && endDate == null) {
-            List<PaymentRecord> customerRecords = paymentRecordRepository.findByCustomerId(customerId);
-            return new org.springframework.data.domain.PageImpl<>(
-                    customerRecords.stream()
-                            .map(this::mapToPaymentRecordResponse)
-                            .collect(java.util.stream.Collectors.toList()),
-                    pageable,
-                    customerRecords.size());
-        }
-
-        // Nếu chỉ có status
-        if (status != null && customerId == null && startDate == null && endDate == null) {
-            List<PaymentRecord> statusRecords = paymentRecordRepository.findByStatus(status);
-            return new org.springframework.data.domain.PageImpl<>(
-                    statusRecords.stream()
-                            .map(this::mapToPaymentRecordResponse)
-                            .collect(java.util.stream.Collectors.toList()),
-                    pageable,
-                    statusRecords.size());
-        }
-
-        // Trường hợp tổng quát: lấy tất cả và filter trong memory (simple
-        // implementation)
-        // TODO: Nên dùng JPA Specification cho performance tốt hơn
-        List<PaymentRecord> allRecords = paymentRecordRepository.findAll();
+        // Lọc và phân trang trong DB; mỗi trang chỉ tra cứu khách hàng 1 lần theo lô
+        Specification<PaymentRecord> spec = Specification.allOf(
+                PaymentRecordSpecification.hasOrderId(orderId),
+                PaymentRecordSpecification.hasStatus(status),
+                PaymentRecordSpecification.hasCustomerId(customerId),
+                PaymentRecordSpecification.createdBetween(startDate, endDate));
 
-        java.util.stream.Stream<PaymentRecord> stream = allRecords.stream();
+        Page<PaymentRecord> records = paymentRecordRepository.findAll(spec, pageable);
 
-        // Apply filters
-        if (status != null && !status.isEmpty()) {
-            stream = stream.filter(r -> status.equals(r.getStatus()));
-        }
+        Map<Long, CustomerInfo> customers = customerLookupService.findByIds(records.getContent().stream()
+                .map(PaymentRecord::getCustomerId)
+                .collect(Collectors.toList()));
 
-        if (customerId != null) {
-            stream = stream.filter(r -> customerId.equals(r.getCustomerId()));
-        }
+        log.info("Returning page - Total filtered: {}, Page size: {}, Page content size: {}",
+                records.getTotalElements(), pageable.getPageSize(), records.getNumberOfElements());
 
-        if (startDate != null) {
-            stream = stream.filter(r -> r.getCreatedAt() != null &&
-                    !r.getCreatedAt().isBefore(startDate));
-        }
-
-        if (endDate != null) {
-            stream = stream.filter(r -> r.getCreatedAt() != null &&
-                    !r.getCreatedAt().isAfter(endDate));
-        }
-
-        List<PaymentRecordResponse> filtered = stream
-                .map(this::mapToPaymentRecordResponse)
-                .collect(java.util.stream.Collectors.toList());
-
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), filtered.size());
-
-        List<PaymentRecordResponse> pageContent = start < filtered.size()
-                ? filtered.subList(start, end)
-                : java.util.Collections.emptyList();
-
-        log.info("Returning page - Total filtered: {}, Page size: {}, Page content size: {}, Start: {}, End: {}",
-                filtered.size(), pageable.getPageSize(), pageContent.size(), start, end);
-
-        return new org.springframework.data.domain.PageImpl<>(pageContent, pageable, filtered.size());
+        return records.map(record -> mapToPaymentRecordResponse(record, customers.get(record.getCustomerId())));
     }
 
     @Override
@@ -868,96 +806,44 @@ public class CustomerPaymentServiceImpl implements ICustomerPaymentService {
     public PaymentStatisticsResponse getPaymentStatistics(LocalDateTime startDate, LocalDateTime endDate) {
         log.info("Getting payment statistics - startDate: {}, endDate: {}", startDate, endDate);
 
-        // Lấy tất cả payment records
-        List<PaymentRecord> allRecords = paymentRecordRepository.findAll();
-
-        // Filter theo date nếu có
-        java.util.stream.Stream<PaymentRecord> recordStream = allRecords.stream();
-
-        if (startDate != null) {
-            recordStream = recordStream.filter(r -> r.getCreatedAt() != null &&
-                    !r.getCreatedAt().isBefore(startDate));
-        }
-
-        if (endDate != null) {
-            recordStream = recordStream.filter(r -> r.getCreatedAt() != null &&
-                    !r.getCreatedAt().isAfter(endDate));
+        // 1 query GROUP BY theo trạng thái (vài dòng), không nạp từng payment record
+        long totalOrders = 0;
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        BigDecimal completedAmount = BigDecimal.ZERO;
+        BigDecimal pendingAmount = BigDecimal.ZERO;
+        Map<String, Long> ordersByStatus = new java.util.HashMap<>();
+
+        for (Object[] row : paymentRecordRepository.summarizeByStatus(startDate, endDate)) {
+            String recordStatus = (String) row[0];
+            long count = ((Number) row[1]).longValue();
+            BigDecimal sumTotal = row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO;
+            BigDecimal sumPaid = row[3] != null ? (BigDecimal) row[3] : BigDecimal.ZERO;
+            BigDecimal sumRemaining = row[4] != null ? (BigDecimal) row[4] : BigDecimal.ZERO;
+
+            totalOrders += count;
+            completedAmount = completedAmount.add(sumPaid);
+            if (recordStatus == null) {
+                // Sổ chưa có status: chỉ tính vào tổng số đơn và số tiền đã trả
+                continue;
+            }
+            ordersByStatus.merge(recordStatus, count, Long::sum);
+            if ("PAID".equals(recordStatus)) {
+                totalRevenue = totalRevenue.add(sumTotal);
+            } else if (!"CANCELLED".equals(recordStatus)) {
+                pendingAmount = pendingAmount.add(sumRemaining);
+            }
         }
 
-        List<PaymentRecord> filteredRecords = recordStream.collect(java.util.stream.Collectors.toList());
-        log.info("Calculating statistics for {} filtered payment records", filteredRecords.size());
-
-        filteredRecords.forEach(r -> {
-            log.info("Record ID: {}, Status: '{}' (len={}), TotalAmount: {}",
-                    r.getRecordId(),
-                    r.getStatus(),
-                    r.getStatus() != null ? r.getStatus().length() : 0,
-                    r.getTotalAmount());
-        });
-
-        // Tính toán thống kê
-        // Tính toán thống kê với null-check và ignore case
-        long totalOrders = filteredRecords.size();
-
-        long completedOrders = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null && "PAID".equalsIgnoreCase(r.getStatus().trim()))
-                .count();
-
-        long pendingOrders = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null &&
-                        ("PENDING_DEPOSIT".equalsIgnoreCase(r.getStatus().trim()) ||
-                                "PENDING".equalsIgnoreCase(r.getStatus().trim())))
-                .count();
-
-        long failedOrders = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null && "FAILED".equalsIgnoreCase(r.getStatus().trim()))
-                .count();
-
-        long cancelledOrders = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null && "CANCELLED".equalsIgnoreCase(r.getStatus().trim()))
-                .count();
-
-        BigDecimal totalRevenue = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null && "PAID".equalsIgnoreCase(r.getStatus().trim()))
-                .map(PaymentRecord::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal completedAmount = filteredRecords.stream()
-                .map(PaymentRecord::getAmountPaid)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal pendingAmount = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null &&
-                        !"PAID".equalsIgnoreCase(r.getStatus().trim()) &&
-                        !"CANCELLED".equalsIgnoreCase(r.getStatus().trim()))
-                .map(PaymentRecord::getRemainingAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Thống kê theo status
-        Map<String, Long> ordersByStatus = filteredRecords.stream()
-                .filter(r -> r.getStatus() != null)
-                .collect(java.util.stream.Collectors.groupingBy(
-                        r -> r.getStatus().trim().toUpperCase(),
-                        java.util.stream.Collectors.counting()));
+        long completedOrders = ordersByStatus.getOrDefault("PAID", 0L);
+        long pendingOrders = ordersByStatus.getOrDefault("PENDING_DEPOSIT", 0L)
+                + ordersByStatus.getOrDefault("PENDING", 0L);
+        long failedOrders = ordersByStatus.getOrDefault("FAILED", 0L);
+        long cancelledOrders = ordersByStatus.getOrDefault("CANCELLED", 0L);
 
-        // Thống kê theo payment method (cần join với transactions)
+        // Thống kê theo payment method: 1 query JOIN + GROUP BY
         Map<String, BigDecimal> revenueByMethod = new java.util.HashMap<>();
-
-        for (PaymentRecord record : filteredRecords) {
-            List<Transaction> transactions = transactionRepository.findByPaymentRecord_OrderId(record.getOrderId());
-
-            if (transactions == null || transactions.isEmpty())
-                continue;
-
-            for (Transaction transaction : transactions) {
-                if ("SUCCESS".equalsIgnoreCase(transaction.getStatus())) {
-                    String methodName = transaction.getPaymentMethod() != null
-                            ? transaction.getPaymentMethod().getMethodName()
-                            : "UNKNOWN";
-
-                    revenueByMethod.merge(methodName, transaction.getAmount(), BigDecimal::add);
-                }
-            }
+        for (Object[] row : transactionRepository.sumSuccessfulAmountByMethod(startDate, endDate)) {
+            revenueByMethod.put((String) row[0], row[1] != null ? (BigDecimal) row[1] : BigDecimal.ZERO);
         }
 
         // Completion rate
@@ -985,34 +871,12 @@ public class CustomerPaymentServiceImpl implements ICustomerPaymentService {
 
     /**
      * Helper method để map PaymentRecord sang PaymentRecordResponse
+     * (customerInfo đã được tra cứu theo lô cho cả trang)
      */
-    private PaymentRecordResponse mapToPaymentRecordResponse(PaymentRecord record) {
-        // Fetch customer info from customer-service via REST API
-        String customerName = null;
-        String customerEmail = null;
-
-        if (record.getCustomerId() != null) {
-            try {
-                // Call customer-service API to get customer details
-                String customerServiceUrl = customerServiceBaseUrl + "/customers/" + record.getCustomerId();
-
-                // Use exchange to handle ApiRespond wrapper from customer-service
-                ResponseEntity<ApiRespond<CustomerInfo>> response = restTemplate.exchange(
-                        customerServiceUrl,
-                        HttpMethod.GET,
-                        null,
-                        new ParameterizedTypeReference<ApiRespond<CustomerInfo>>() {
-                        });
-
-                if (response.getBody() != null && response.getBody().getData() != null) {
-                    CustomerInfo customerInfo = response.getBody().getData();
-                    customerName = customerInfo.getFullName();
-                    customerEmail = customerInfo.getEmail();
-                }
-            } catch (Exception e) {
-                log.warn("Failed to fetch customer info from customer-service for ID: {}", record.getCustomerId(), e);
-            }
-        }
+    private PaymentRecordResponse mapToPaymentRecordResponse(PaymentRecord record, CustomerInfo customerInfo) {
+        // Khách vãng lai (không có customerId) dùng thông tin lưu trên sổ thanh toán
+        String customerName = customerInfo != null ? customerInfo.getFullName() : record.getCustomerName();
+        String customerEmail = customerInfo != null ? customerInfo.getEmail() : record.getCustomerEmail();
 
         return PaymentRecordResponse.builder()
                 .recordId(record.getRecordId())
@@ -3,10 +3,7 @@ package com.ev.payment_service.service.Implementation;
 import com.ev.payment_service.dto.response.DealerRevenueResponse;
 import com.ev.payment_service.dto.response.CustomerDebtSummaryResponse;
 import com.ev.payment_service.dto.response.DealerDebtAgingResponse;
-import com.ev.payment_service.entity.DealerInvoice;
-import com.ev.payment_service.entity.DealerTransaction;
 import com.ev.payment_service.entity.DealerDebtRecord;
-import com.ev.payment_service.entity.PaymentRecord;
 import com.ev.payment_service.repository.DealerInvoiceRepository;
 import com.ev.payment_service.repository.DealerTransactionRepository;
 import com.ev.payment_service.repository.DealerDebtRecordRepository;
@@ -18,10 +15,14 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Payment Report Service Implementation
@@ -41,50 +42,28 @@ public class PaymentReportServiceImpl implements IPaymentReportService {
     public List<DealerRevenueResponse> getRevenueByDealer(LocalDate startDate, LocalDate endDate) {
         log.info("Getting revenue by dealer - StartDate: {}, EndDate: {}", startDate, endDate);
 
-        // Lấy tất cả invoices trong khoảng thời gian
-        List<DealerInvoice> invoices = dealerInvoiceRepository.findAll().stream()
-                .filter(invoice -> {
-                    LocalDate invoiceDate = invoice.getCreatedAt().toLocalDate();
-                    return (invoiceDate.isAfter(startDate.minusDays(1)) || invoiceDate.isEqual(startDate)) &&
-                           (invoiceDate.isBefore(endDate.plusDays(1)) || invoiceDate.isEqual(endDate));
-                })
-                .collect(Collectors.toList());
+        // Hóa đơn tạo trong [startDate, endDate] (tính cả ngày cuối)
+        LocalDateTime from = startDate.atStartOfDay();
+        LocalDateTime to = endDate.plusDays(1).atStartOfDay();
 
-        // Group by dealerId
-        Map<UUID, List<DealerInvoice>> invoicesByDealer = invoices.stream()
-                .collect(Collectors.groupingBy(DealerInvoice::getDealerId));
+        // Số giao dịch thành công theo đại lý: 1 query JOIN + GROUP BY
+        Map<UUID, Long> transactionCounts = new HashMap<>();
+        for (Object[] row : dealerTransactionRepository.countSuccessfulByDealer(from, to)) {
+            transactionCounts.put((UUID) row[0], ((Number) row[1]).longValue());
+        }
 
-        // Tính toán doanh thu cho mỗi dealer
+        // Doanh thu theo đại lý: 1 query GROUP BY
         List<DealerRevenueResponse> revenueList = new ArrayList<>();
-        for (Map.Entry<UUID, List<DealerInvoice>> entry : invoicesByDealer.entrySet()) {
-            UUID dealerId = entry.getKey();
-            List<DealerInvoice> dealerInvoices = entry.getValue();
-
-            BigDecimal totalRevenue = dealerInvoices.stream()
-                    .map(DealerInvoice::getTotalAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            BigDecimal totalPaid = dealerInvoices.stream()
-                    .map(DealerInvoice::getAmountPaid)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            // Lấy tổng số transactions
-            List<DealerTransaction> transactions = dealerTransactionRepository.findAll().stream()
-                    .filter(transaction -> dealerInvoices.stream()
-                            .anyMatch(invoice -> invoice.getDealerInvoiceId().equals(transaction.getDealerInvoice().getDealerInvoiceId())))
-                    .filter(transaction -> "SUCCESS".equals(transaction.getStatus()) || "CONFIRMED".equals(transaction.getStatus()))
-                    .collect(Collectors.toList());
-
-            DealerRevenueResponse response = DealerRevenueResponse.builder()
+        for (Object[] row : dealerInvoiceRepository.summarizeRevenueByDealer(from, to)) {
+            UUID dealerId = (UUID) row[0];
+            revenueList.add(DealerRevenueResponse.builder()
                     .dealerId(dealerId)
                     .dealerName("Dealer " + dealerId) // TODO: Lấy từ Dealer Service
-                    .totalRevenue(totalRevenue)
-                    .totalPaid(totalPaid)
-                    .totalTransactions(transactions.size())
-                    .totalInvoices(dealerInvoices.size())
-                    .build();
-
-            revenueList.add(response);
+                    .totalRevenue(toBigDecimal(row[2]))
+                    .totalPaid(toBigDecimal(row[3]))
+                    .totalTransactions(transactionCounts.getOrDefault(dealerId, 0L).intValue())
+                    .totalInvoices(((Number) row[1]).intValue())
+                    .build());
         }
 
         log.info("Found {} dealers with revenue data", revenueList.size());
@@ -96,41 +75,20 @@ public class PaymentReportServiceImpl implements IPaymentReportService {
     public List<CustomerDebtSummaryResponse> getCustomerDebtSummary() {
         log.info("Getting customer debt summary");
 
-        // Lấy tất cả payment records có công nợ (remainingAmount > 0)
-        List<PaymentRecord> paymentRecords = paymentRecordRepository.findAll().stream()
-                .filter(record -> record.getRemainingAmount().compareTo(BigDecimal.ZERO) > 0)
-                .filter(record -> record.getCustomerId() != null)
-                .collect(Collectors.toList());
-
-        // 1. Group by customerId (Long)
-        Map<Long, List<PaymentRecord>> recordsByCustomer = paymentRecords.stream()
-                .collect(Collectors.groupingBy(PaymentRecord::getCustomerId));
-
+        // Tổng công nợ và số đơn còn nợ theo khách hàng: 1 query GROUP BY
         List<CustomerDebtSummaryResponse> debtList = new ArrayList<>();
-        // 2. Process each customer
-        for (Map.Entry<Long, List<PaymentRecord>> entry : recordsByCustomer.entrySet()) {
-            Long customerId = entry.getKey();
-            List<PaymentRecord> customerRecords = entry.getValue();
-
-            BigDecimal totalDebt = customerRecords.stream()
-                    .map(PaymentRecord::getRemainingAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            BigDecimal averageDebt = totalDebt.divide(
-                    BigDecimal.valueOf(customerRecords.size()),
-                    2,
-                    java.math.RoundingMode.HALF_UP
-            );
-
-            CustomerDebtSummaryResponse response = CustomerDebtSummaryResponse.builder()
+        for (Object[] row : paymentRecordRepository.summarizeDebtByCustomer()) {
+            Long customerId = (Long) row[0];
+            int totalOrders = ((Number) row[1]).intValue();
+            BigDecimal totalDebt = toBigDecimal(row[2]);
+
+            debtList.add(CustomerDebtSummaryResponse.builder()
                     .customerId(customerId)
                     .customerName("Customer " + customerId) // TODO: Lấy từ Customer Service
                     .totalDebt(totalDebt)
-                    .totalOrders(customerRecords.size())
-                    .averageDebt(averageDebt)
-                    .build();
-
-            debtList.add(response);
+                    .totalOrders(totalOrders)
+                    .averageDebt(totalDebt.divide(BigDecimal.valueOf(totalOrders), 2, RoundingMode.HALF_UP))
+                    .build());
         }
 
         log.info("Found {} customers with debt", debtList.size());
@@ -142,76 +100,42 @@ public class PaymentReportServiceImpl implements IPaymentReportService {
     public List<DealerDebtAgingResponse> getDealerDebtAging() {
         log.info("Getting dealer debt aging");
 
-        // Lấy tất cả debt records
-        List<DealerDebtRecord> debtRecords = dealerDebtRecordRepository.findAll();
-
-        // Lấy tất cả invoices chưa thanh toán đủ
-        List<DealerInvoice> unpaidInvoices = dealerInvoiceRepository.findAll().stream()
-                .filter(invoice -> !"PAID".equals(invoice.getStatus()))
-                .collect(Collectors.toList());
-
-        // Tính toán aging cho mỗi dealer
-        List<DealerDebtAgingResponse> agingList = new ArrayList<>();
+        // Nhóm tuổi nợ của hóa đơn chưa thanh toán đủ, tính trong DB:
+        // chưa đến hạn / quá hạn 0-30 ngày -> currentPeriod, 31-60, 61-90, trên 90 ngày
         LocalDate today = LocalDate.now();
+        Map<UUID, Object[]> agingByDealer = new HashMap<>();
+        for (Object[] row : dealerInvoiceRepository.summarizeUnpaidAgingByDealer(
+                today, today.minusDays(30), today.minusDays(60), today.minusDays(90))) {
+            agingByDealer.put((UUID) row[0], row);
+        }
 
-        for (DealerDebtRecord debtRecord : debtRecords) {
+        // dealer_debt_records chỉ có 1 dòng mỗi đại lý
+        List<DealerDebtAgingResponse> agingList = new ArrayList<>();
+        for (DealerDebtRecord debtRecord : dealerDebtRecordRepository.findAll()) {
             UUID dealerId = debtRecord.getDealerId();
+            Object[] aging = agingByDealer.get(dealerId);
 
-            // Lấy invoices của dealer này
-            List<DealerInvoice> dealerInvoices = unpaidInvoices.stream()
-                    .filter(invoice -> invoice.getDealerId().equals(dealerId))
-                    .collect(Collectors.toList());
-
-            BigDecimal currentPeriod = BigDecimal.ZERO;
-            BigDecimal period31to60 = BigDecimal.ZERO;
-            BigDecimal period61to90 = BigDecimal.ZERO;
-            BigDecimal over90Days = BigDecimal.ZERO;
-            int overdueInvoices = 0;
-
-            for (DealerInvoice invoice : dealerInvoices) {
-                LocalDate dueDate = invoice.getDueDate();
-                long daysOverdue = ChronoUnit.DAYS.between(dueDate, today);
-                BigDecimal remainingAmount = invoice.getTotalAmount().subtract(invoice.getAmountPaid());
-
-                if (daysOverdue < 0) {
-                    // Chưa đến hạn
-                    currentPeriod = currentPeriod.add(remainingAmount);
-                } else if (daysOverdue <= 30) {
-                    // 0-30 ngày quá hạn
-                    currentPeriod = currentPeriod.add(remainingAmount);
-                    overdueInvoices++;
-                } else if (daysOverdue <= 60) {
-                    // 31-60 ngày quá hạn
-                    period31to60 = period31to60.add(remainingAmount);
-                    overdueInvoices++;
-                } else if (daysOverdue <= 90) {
-                    // 61-90 ngày quá hạn
-                    period61to90 = period61to90.add(remainingAmount);
-                    overdueInvoices++;
-                } else {
-                    // Trên 90 ngày quá hạn
-                    over90Days = over90Days.add(remainingAmount);
-                    overdueInvoices++;
-                }
-            }
-
-            DealerDebtAgingResponse response = DealerDebtAgingResponse.builder()
+            agingList.add(DealerDebtAgingResponse.builder()
                     .dealerId(dealerId)
                     .dealerName("Dealer " + dealerId) // TODO: Lấy từ Dealer Service
                     .currentBalance(debtRecord.getCurrentBalance())
-                    .currentPeriod(currentPeriod)
-                    .period31to60(period31to60)
-                    .period61to90(period61to90)
-                    .over90Days(over90Days)
-                    .totalInvoices(dealerInvoices.size())
-                    .overdueInvoices(overdueInvoices)
-                    .build();
-
-            agingList.add(response);
+                    .currentPeriod(aging != null ? toBigDecimal(aging[3]) : BigDecimal.ZERO)
+                    .period31to60(aging != null ? toBigDecimal(aging[4]) : BigDecimal.ZERO)
+                    .period61to90(aging != null ? toBigDecimal(aging[5]) : BigDecimal.ZERO)
+                    .over90Days(aging != null ? toBigDecimal(aging[6]) : BigDecimal.ZERO)
+                    .totalInvoices(aging != null ? ((Number) aging[1]).intValue() : 0)
+                    .overdueInvoices(aging != null ? ((Number) aging[2]).intValue() : 0)
+                    .build());
         }
 
         log.info("Found {} dealers with debt aging data", agingList.size());
         return agingList;
     }
-}
 
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+}
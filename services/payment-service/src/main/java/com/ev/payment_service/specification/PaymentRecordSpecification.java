@@ -0,0 +1,53 @@
+package com.ev.payment_service.specification;
+
+import com.ev.payment_service.entity.PaymentRecord;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Các điều kiện lọc sổ thanh toán (trang tìm kiếm của admin). Tham số null = bỏ qua điều kiện,
+ * nên có thể ghép tùy ý bằng Specification.allOf(...).
+ */
+public class PaymentRecordSpecification {
+
+    public static Specification<PaymentRecord> hasStatus(String status) {
+        if (status == null || status.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<PaymentRecord> hasCustomerId(Long customerId) {
+        if (customerId == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("customerId"), customerId);
+    }
+
+    public static Specification<PaymentRecord> hasOrderId(UUID orderId) {
+        if (orderId == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("orderId"), orderId);
+    }
+
+    /**
+     * createdAt nằm trong khoảng [startDate, endDate] (cả hai đầu đều tùy chọn).
+     */
+    public static Specification<PaymentRecord> createdBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        if (startDate == null && endDate == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            if (startDate == null) {
+                return cb.lessThanOrEqualTo(root.get("createdAt"), endDate);
+            }
+            if (endDate == null) {
+                return cb.greaterThanOrEqualTo(root.get("createdAt"), startDate);
+            }
+            return cb.between(root.get("createdAt"), startDate, endDate);
+        };
+    }
+}
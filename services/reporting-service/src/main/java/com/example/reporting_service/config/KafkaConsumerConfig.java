@@ -10,8 +10,12 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.util.backoff.ExponentialBackOff;
 import org.springframework.util.backoff.FixedBackOff;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,6 +40,9 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.properties.spring.json.trusted.packages:*}")
     private String trustedPackages;
 
+    @Value("${app.kafka.batch.max-poll-records:500}")
+    private int batchMaxPollRecords;
+
     /**
      * ConsumerFactory với ErrorHandlingDeserializer bọc JsonDeserializer.
      * Khi gặp message không parse được, nó sẽ bỏ qua thay vì crash.
@@ -83,4 +90,46 @@ public class KafkaConsumerConfig {
         
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * ContainerFactory cho listener theo lô (micro-batch): mỗi lần poll (tối đa
+     * app.kafka.batch.max-poll-records bản ghi) được giao cho listener dưới dạng List.
+     * AckMode.BATCH: offset chỉ được commit sau khi listener trả về, tức là sau khi đã ghi DB xong.
+     *
+     * Phân loại lỗi (xem KafkaRetryPolicy):
+     * - Lỗi kết nối (DB/API tạm ngừng) -> thử lại không giới hạn với backoff lũy thừa (tối đa 30s),
+     * không bao giờ bỏ qua bản ghi. Listener chỉ ném lỗi kết nối ra nguyên dạng (thử lại cả lô).
+     * - Lỗi gắn với 1 bản ghi -> listener đã ghi các bản ghi trước đó rồi ném BatchListenerFailedException(index):
+     * bản ghi lỗi được thử lại 2 lần rồi bỏ qua (log); lỗi dữ liệu/ràng buộc bị bỏ qua ngay, không thử lại.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxPollRecords));
+
+        ExponentialBackOff connectivityBackOff = new ExponentialBackOff(1000L, 2.0);
+        connectivityBackOff.setMaxInterval(30_000L);
+        connectivityBackOff.setMaxElapsedTime(Long.MAX_VALUE); // Không giới hạn: không mất delta khi DB/API tạm ngừng
+
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(
+            (record, exception) -> {
+                log.error("Skipping Kafka record after repeated failure at topic={}, partition={}, offset={}: {}",
+                    record.topic(), record.partition(), record.offset(), exception.getMessage());
+            },
+            connectivityBackOff
+        );
+        // Bản ghi lỗi: chỉ thử lại không giới hạn khi nguyên nhân là lỗi kết nối, còn lại 2 lần
+        errorHandler.setBackOffFunction((record, exception) ->
+                KafkaRetryPolicy.isConnectivityFailure(exception) ? null : new FixedBackOff(1000L, 2L));
+        // Lỗi dữ liệu/ràng buộc (vd NOT NULL region) lặp lại y hệt mỗi lần: không thử lại
+        errorHandler.addNotRetryableExceptions(NonTransientDataAccessException.class);
+        errorHandler.addRetryableExceptions(DataAccessResourceFailureException.class);
+        factory.setCommonErrorHandler(errorHandler);
+
+        return factory;
+    }
+}
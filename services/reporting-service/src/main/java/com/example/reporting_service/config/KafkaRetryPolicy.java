@@ -0,0 +1,68 @@
+package com.example.reporting_service.config;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.List;
+
+/**
+ * Phân loại lỗi khi xử lý Kafka theo lô.
+ *
+ * - Lỗi kết nối (DB/API tạm ngừng, timeout, 5xx, 429): thử lại không giới hạn, không bỏ qua bản ghi.
+ * - Mọi lỗi khác (dữ liệu sai, vi phạm ràng buộc, 4xx...): gắn với bản ghi cụ thể
+ * (BatchListenerFailedException), thử lại có giới hạn rồi bỏ qua riêng bản ghi đó.
+ */
+public final class KafkaRetryPolicy {
+
+    private static final List<Class<? extends Throwable>> CONNECTIVITY_FAILURES = List.of(
+            ResourceAccessException.class,
+            HttpServerErrorException.class,
+            HttpClientErrorException.TooManyRequests.class,
+            TransientDataAccessException.class,
+            RecoverableDataAccessException.class,
+            DataAccessResourceFailureException.class,
+            CannotCreateTransactionException.class,
+            SQLTransientException.class,
+            SQLRecoverableException.class,
+            SocketException.class,
+            SocketTimeoutException.class);
+
+    private KafkaRetryPolicy() {
+    }
+
+    /**
+     * @return true nếu trong chuỗi cause có lỗi kết nối (nên thử lại đến khi thành công)
+     */
+    public static boolean isConnectivityFailure(Throwable exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            for (Class<? extends Throwable> type : CONNECTIVITY_FAILURES) {
+                if (type.isInstance(t)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true nếu listener đã chỉ ra bản ghi lỗi (BatchListenerFailedException)
+     */
+    public static boolean isRecordFailure(Throwable exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            if (t instanceof BatchListenerFailedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
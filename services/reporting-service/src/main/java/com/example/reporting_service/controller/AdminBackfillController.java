@@ -4,6 +4,8 @@ import com.example.reporting_service.model.DealerCache;
 import com.example.reporting_service.model.VehicleCache;
 import com.example.reporting_service.repository.DealerCacheRepository;
 import com.example.reporting_service.repository.VehicleCacheRepository;
+import com.example.reporting_service.service.CacheService;
+import com.example.reporting_service.service.SalesPersistenceService;
 import com.ev.common_lib.dto.respond.ApiRespond;
 import com.ev.common_lib.dto.vehicle.VariantDetailDto;
 import com.ev.common_lib.dto.dealer.DealerBasicDto;
@@ -34,6 +36,8 @@ public class AdminBackfillController {
     private final DealerCacheRepository dealerCacheRepo;
     private final VehicleCacheRepository vehicleCacheRepo;
     private final RestTemplate restTemplate;
+    private final CacheService cacheService;
+    private final SalesPersistenceService salesPersistenceService;
 
     @Value("${app.services.dealer.url}")
     private String dealerServiceUrl;
@@ -78,7 +82,7 @@ public class AdminBackfillController {
             
         // 3. Xóa cache cũ và lưu cache mới
         dealerCacheRepo.deleteAllInBatch(); // Xóa sạch cache cũ
-        dealerCacheRepo.saveAll(dealerCaches); // Lưu cache mới
+        cacheService.putDealers(dealerCacheRepo.saveAll(dealerCaches)); // Lưu cache mới (DB + bộ nhớ)
         
         log.info("Hoàn thành backfill: Đã lưu {} đại lý.", dealerCaches.size());
         return ResponseEntity.ok("Đã lấp đầy " + dealerCaches.size() + " đại lý.");
@@ -120,9 +124,20 @@ public class AdminBackfillController {
             
         // 3. Xóa cache cũ và lưu cache mới
         vehicleCacheRepo.deleteAllInBatch(); // Xóa sạch cache cũ
-        vehicleCacheRepo.saveAll(vehicleCaches); // Lưu cache mới
+        cacheService.putVehicles(vehicleCacheRepo.saveAll(vehicleCaches)); // Lưu cache mới (DB + bộ nhớ)
         
         log.info("Hoàn thành backfill: Đã lưu {} xe.", vehicleCaches.size());
         return ResponseEntity.ok("Đã lấp đầy " + vehicleCaches.size() + " xe.");
     }
+
+    /**
+     * Nạp lại doanh số theo ngày (báo cáo tốc độ tiêu thụ) từ sales_records
+     * cho các ngày chưa có dữ liệu từ Kafka (các dòng này đếm số đơn, không phải số xe).
+     */
+    @PostMapping("/sales-daily")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<String> backfillSalesDaily() {
+        int written = salesPersistenceService.backfillSalesDaily();
+        return ResponseEntity.ok("Đã lấp đầy " + written + " dòng doanh số theo ngày (tính theo số đơn).");
+    }
 }
@@ -109,38 +109,20 @@ public class ReportController {
     @GetMapping("/inventory-velocity")
     public ResponseEntity<List<InventoryVelocityDTO>> getInventoryVelocityReport(
         @RequestParam(required = false) String region,
-        @RequestParam(required = false) String modelId,
-        @RequestParam(required = false) String variantId
+        @RequestParam(required = false) Long modelId,
+        @RequestParam(required = false) Long variantId,
+        @RequestParam(required = false) Integer days // Cửa sổ tính: 7/30/90 ngày (app.reports.velocity.windows)
         // Lưu ý: Không filter theo dealershipId ở đây, 
         // vì chúng ta đang tính velocity theo Region (khớp với bảng Inventory)
     ) {
-        
-        // Tạo Specification cho Inventory (giống API /inventory)
-        Specification<InventorySummaryByRegion> inventorySpec = (root, query, cb) -> cb.conjunction();
-        if (region != null && !region.isEmpty()) {
-            inventorySpec = inventorySpec.and((root, query, cb) -> cb.equal(root.get("region"), region));
-        }
-        if (modelId != null && !modelId.isEmpty()) {
-            inventorySpec = inventorySpec.and((root, query, cb) -> cb.equal(root.get("modelId"), modelId));
-        }
-        if (variantId != null && !variantId.isEmpty()) {
-            inventorySpec = inventorySpec.and((root, query, cb) -> cb.equal(root.get("variantId"), variantId));
-        }
-        
-        // Tạo Specification cho Sales (tương tự)
-        Specification<SalesSummaryByDealership> salesSpec = (root, query, cb) -> cb.conjunction();
-        if (region != null && !region.isEmpty()) {
-            salesSpec = salesSpec.and((root, query, cb) -> cb.equal(root.get("region"), region));
-        }
-        if (modelId != null && !modelId.isEmpty()) {
-            salesSpec = salesSpec.and((root, query, cb) -> cb.equal(root.get("modelId"), modelId));
-        }
-        if (variantId != null && !variantId.isEmpty()) {
-            salesSpec = salesSpec.and((root, query, cb) -> cb.equal(root.get("variantId"), variantId));
+        int period = (days != null) ? days : reportingService.getDefaultDaysPeriod();
+        if (!reportingService.isSupportedWindow(period)) {
+            return ResponseEntity.badRequest().build();
         }
 
         // Gọi service tính toán
-        List<InventoryVelocityDTO> results = reportingService.calculateInventoryVelocity(inventorySpec, salesSpec);
+        List<InventoryVelocityDTO> results = reportingService.calculateInventoryVelocity(
+            period, (region != null && !region.isEmpty()) ? region : null, modelId, variantId);
         
         return ResponseEntity.ok(results);
     }
@@ -0,0 +1,31 @@
+package com.example.reporting_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Giao dịch kho trung tâm (topic inventory_events) đã được làm giàu thông tin xe.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CentralInventoryTransactionEvent {
+    private Long variantId;
+    private String variantName;
+    private Long modelId;
+    private String modelName;
+
+    private String transactionType; // RESTOCK, INITIAL_STOCK, ALLOCATE, TRANSFER_TO_DEALER, ...
+    private int quantity;
+    private String fromDealerId;
+    private String toDealerId;
+    private String staffId;
+    private String notes;
+    private String referenceId;
+    private LocalDateTime transactionDate;
+}
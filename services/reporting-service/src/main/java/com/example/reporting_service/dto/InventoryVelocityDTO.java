@@ -18,10 +18,14 @@ public class InventoryVelocityDTO {
     // Dữ liệu tồn kho
     private Long currentStock;
     
-    // Dữ liệu doanh số (ví dụ: 30 ngày qua)
+    // Số xe bán trong cửa sổ periodDays ngày (giữ tên cũ để không đổi API cho frontend)
     private Long salesLast30Days;
+    private Integer periodDays;
     
     // Dữ liệu tính toán (Tốc độ tiêu thụ)
     private Double averageDailySales; // Doanh số trung bình ngày
     private Double daysOfSupply; // Số ngày tồn kho (DOS)
+
+    // Phần của salesLast30Days lấy từ lịch sử nạp lại (đếm số ĐƠN theo ngày đặt, không phải số xe)
+    private Long salesEstimatedFromOrders;
 }
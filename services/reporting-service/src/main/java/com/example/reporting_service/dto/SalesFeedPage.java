@@ -0,0 +1,20 @@
+package com.example.reporting_service.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Một trang từ sales-service /internal/reporting-feed (phân trang keyset theo orderDate, orderId).
+ */
+@Data
+@NoArgsConstructor
+public class SalesFeedPage {
+    private List<SaleEventDTO> items;
+    private LocalDateTime nextAfterDate;
+    private UUID nextAfterId;
+    private boolean hasMore;
+}
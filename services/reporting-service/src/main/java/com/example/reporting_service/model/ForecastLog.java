@@ -9,7 +9,9 @@ import lombok.Builder;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "forecast_logs")
+@Table(name = "forecast_logs", indexes = {
+        @Index(name = "idx_forecast_model_version", columnList = "modelName, dataVersion, createdAt")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -21,6 +23,9 @@ public class ForecastLog {
 
     private String modelName; // "ALL" or specific model name
 
+    @Column(length = 64)
+    private String dataVersion; // Hash của dữ liệu bán hàng dùng để dự báo (xem ForecastContextBuilder)
+
     @Column(columnDefinition = "TEXT")
     private String responseJson;
 
@@ -0,0 +1,46 @@
+package com.example.reporting_service.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Doanh số theo ngày của từng (region, variant), được cộng dồn cùng lúc với
+ * sales_summary_by_dealership. Dùng để tính tốc độ tiêu thụ theo cửa sổ 7/30/90 ngày.
+ *
+ * Dòng từ Kafka: units_sold = số xe theo ngày giao. Dòng backfilled = true được nạp lại từ
+ * sales_records (1 dòng = 1 đơn, không có số lượng): units_sold = SỐ ĐƠN theo ngày đặt hàng.
+ */
+@Entity
+@Table(name = "sales_daily_by_region",
+       uniqueConstraints = @UniqueConstraint(
+           name = "idx_sales_daily_logical_key",
+           columnNames = {"saleDate", "region", "variantId"}
+       )
+)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesDailyByRegion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate saleDate;
+
+    @Column(nullable = false)
+    private String region;
+
+    @Column(nullable = false)
+    private Long variantId;
+
+    private Long unitsSold;
+    private Double revenue;
+
+    // true: nạp lại từ lịch sử sales_records, units_sold là số đơn (không phải số xe)
+    private Boolean backfilled;
+}
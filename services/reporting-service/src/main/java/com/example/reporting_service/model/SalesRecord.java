@@ -7,7 +7,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "sales_records")
+@Table(name = "sales_records", indexes = {
+        @Index(name = "idx_sales_records_order_date", columnList = "orderDate"),
+        @Index(name = "idx_sales_records_model_date", columnList = "modelName, orderDate")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,31 @@
+package com.example.reporting_service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Vị trí đồng bộ cuối cùng (keyset: lastDate, lastId) của một luồng sync,
+ * được lưu sau mỗi chunk để lần chạy sau (hoặc sau khi lỗi) tiếp tục từ đó.
+ */
+@Entity
+@Table(name = "sync_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncCursor {
+
+    @Id
+    @Column(length = 50)
+    private String name; // Ví dụ: "sales"
+
+    private LocalDateTime lastDate;
+
+    private UUID lastId;
+
+    private LocalDateTime updatedAt;
+}
@@ -8,5 +8,5 @@ import java.util.Optional;
 
 @Repository
 public interface ForecastLogRepository extends JpaRepository<ForecastLog, Long> {
-    Optional<ForecastLog> findTopByModelNameOrderByCreatedAtDesc(String modelName);
+    Optional<ForecastLog> findTopByModelNameAndDataVersionOrderByCreatedAtDesc(String modelName, String dataVersion);
 }
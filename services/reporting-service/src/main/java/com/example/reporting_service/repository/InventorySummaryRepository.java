@@ -7,6 +7,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.List;
+
 // Kế thừa JpaSpecificationExecutor để có thể query động
 public interface InventorySummaryRepository 
     extends JpaRepository<InventorySummaryByRegion, Long>, JpaSpecificationExecutor<InventorySummaryByRegion> {
@@ -41,4 +44,27 @@ public interface InventorySummaryRepository
         String modelName, 
         String variantName
     );
-}
\ No newline at end of file
+
+    /**
+     * Tồn kho theo (region, variant) kèm số xe bán từ ngày :since (bảng sales_daily_by_region),
+     * tính bằng 1 truy vấn join/group-by.
+     * Mỗi dòng: [region, modelId, modelName, variantId, variantName, totalStock, unitsSold, unitsFromOrders]
+     * (unitsFromOrders: phần của unitsSold lấy từ dòng backfilled, là số đơn chứ không phải số xe)
+     */
+    @Query(value = """
+        SELECT i.region, i.model_id, i.model_name, i.variant_id, i.variant_name,
+               i.total_stock, COALESCE(s.units_sold, 0), COALESCE(s.units_from_orders, 0)
+        FROM inventory_summary_by_region i
+        LEFT JOIN (
+            SELECT region, variant_id, SUM(units_sold) AS units_sold,
+                   SUM(CASE WHEN backfilled THEN units_sold ELSE 0 END) AS units_from_orders
+            FROM sales_daily_by_region
+            WHERE sale_date >= :since
+            GROUP BY region, variant_id
+        ) s ON s.region = i.region AND s.variant_id = i.variant_id
+        WHERE (:region IS NULL OR i.region = :region)
+          AND (:modelId IS NULL OR i.model_id = :modelId)
+          AND (:variantId IS NULL OR i.variant_id = :variantId)
+    """, nativeQuery = true)
+    List<Object[]> findStockWithSalesSince(LocalDate since, String region, Long modelId, Long variantId);
+}
@@ -9,7 +9,34 @@ import java.util.UUID;
 
 @Repository
 public interface SalesRecordRepository extends JpaRepository<SalesRecord, UUID> {
-    List<SalesRecord> findByModelName(String modelName);
     @org.springframework.data.jpa.repository.Query("SELECT MAX(s.orderDate) FROM SalesRecord s")
     java.time.LocalDateTime findMaxOrderDate();
+
+    /**
+     * Doanh số theo tuần ISO cho từng (model, region) kể từ :from.
+     * Mỗi dòng: [modelName, region, yearWeek (vd 202540), orderCount, totalAmount]
+     */
+    @org.springframework.data.jpa.repository.Query(value = """
+        SELECT model_name, region, YEARWEEK(order_date, 3) AS year_week,
+               COUNT(*), COALESCE(SUM(total_amount), 0)
+        FROM sales_records
+        WHERE order_date >= :from
+          AND (:modelName IS NULL OR model_name = :modelName)
+        GROUP BY model_name, region, year_week
+        ORDER BY model_name, region, year_week
+    """, nativeQuery = true)
+    List<Object[]> summarizeWeekly(java.time.LocalDateTime from, String modelName);
+
+    /**
+     * Dấu vân tay rẻ của dữ liệu dự báo (không tải từng dòng về):
+     * [count, maxOrderDate, maxReportedAt, totalAmount].
+     * Upsert sales_records cập nhật reported_at khi bất kỳ cột nào đổi (kể cả region/model_name).
+     */
+    @org.springframework.data.jpa.repository.Query(value = """
+        SELECT COUNT(*), MAX(order_date), MAX(reported_at), COALESCE(SUM(total_amount), 0)
+        FROM sales_records
+        WHERE order_date >= :from
+          AND (:modelName IS NULL OR model_name = :modelName)
+    """, nativeQuery = true)
+    List<Object[]> fingerprint(java.time.LocalDateTime from, String modelName);
 }
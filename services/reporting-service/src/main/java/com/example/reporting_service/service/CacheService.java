@@ -5,100 +5,279 @@ import com.example.reporting_service.model.VehicleCache;
 import com.example.reporting_service.repository.DealerCacheRepository;
 import com.example.reporting_service.repository.VehicleCacheRepository;
 import com.ev.common_lib.event.DealerInfoEvent;
-import com.ev.common_lib.event.VehicleInfoEvent;
 import com.ev.common_lib.dto.vehicle.VariantDetailDto;
 import com.ev.common_lib.dto.respond.ApiRespond;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.core.ParameterizedTypeReference;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+/**
+ * Cache chiều (dimension) Đại lý / Xe dùng để làm giàu dữ liệu báo cáo.
+ *
+ * - Nằm trong heap (Caffeine, giới hạn kích thước), nạp sẵn từ bảng cache_dealer_info /
+ * cache_vehicle_info khi khởi động và được làm mới bởi syncMetadata, backfill và product_events.
+ * - Tra cứu khi xử lý Kafka chỉ là 1 lần đọc map.
+ * - Khi thiếu: chỉ 1 luồng tải (bảng cache -> API) cho mỗi key, các luồng khác chờ kết quả đó.
+ * Việc tải chạy ngoài Caffeine (không nằm trong compute) nên lời gọi API chậm không khóa map;
+ * key không tìm thấy (404 / body rỗng) được ghi nhớ (negative cache) trong thời gian ngắn để không gọi API lặp lại.
+ * - Lỗi kết nối/timeout/5xx KHÔNG được coi là "không tìm thấy": exception được ném ra để lô Kafka được thử lại.
+ * - Giá trị trong cache là bất biến với người dùng: cập nhật luôn tạo bản ghi mới rồi put thay thế.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class CacheService {
 
     private final DealerCacheRepository dealerCacheRepo;
     private final VehicleCacheRepository vehicleCacheRepo;
     private final RestTemplate restTemplate;
 
+    private final Cache<UUID, DealerCache> dealers;
+    private final Cache<Long, VehicleCache> vehicles;
+    // Negative cache: key đã tra cứu nhưng không tồn tại (404 / body rỗng)
+    private final Cache<UUID, Boolean> missingDealers;
+    private final Cache<Long, Boolean> missingVehicles;
+    // Các lần tải đang chạy (single-flight), mỗi key tối đa 1 lần tải
+    private final Map<UUID, CompletableFuture<DealerCache>> dealerLoads = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<VehicleCache>> vehicleLoads = new ConcurrentHashMap<>();
+
     @Value("${app.services.dealer.url}") // Thêm vào application.yml
     private String dealerServiceUrl;
     @Value("${app.services.catalog.url}") // Thêm vào application.yml
     private String vehicleServiceUrl;
 
+    public CacheService(DealerCacheRepository dealerCacheRepo, VehicleCacheRepository vehicleCacheRepo,
+            RestTemplate restTemplate,
+            @Value("${app.dimension-cache.max-size:100000}") long maxSize,
+            @Value("${app.dimension-cache.negative-ttl-seconds:60}") long negativeTtlSeconds) {
+        this.dealerCacheRepo = dealerCacheRepo;
+        this.vehicleCacheRepo = vehicleCacheRepo;
+        this.restTemplate = restTemplate;
+        this.dealers = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.vehicles = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.missingDealers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .build();
+        this.missingVehicles = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .build();
+    }
+
+    /**
+     * Nạp sẵn toàn bộ bảng cache vào bộ nhớ khi service khởi động.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        try {
+            putDealers(dealerCacheRepo.findAll());
+            putVehicles(vehicleCacheRepo.findAll());
+            log.info("Đã nạp cache chiều: {} đại lý, {} xe", dealers.estimatedSize(), vehicles.estimatedSize());
+        } catch (Exception e) {
+            log.error("Không nạp được cache chiều khi khởi động: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Cập nhật cache bộ nhớ sau khi bảng cache_dealer_info được làm mới (syncMetadata/backfill).
+     */
+    public void putDealers(Collection<DealerCache> dealerCaches) {
+        for (DealerCache dealer : dealerCaches) {
+            dealers.put(dealer.getDealerId(), dealer);
+            missingDealers.invalidate(dealer.getDealerId());
+        }
+    }
+
     /**
-     * Lấy thông tin Dealer (Ưu tiên Cache, nếu không có thì gọi API)
+     * Cập nhật cache bộ nhớ sau khi bảng cache_vehicle_info được làm mới (syncMetadata/backfill/product_events).
+     */
+    public void putVehicles(Collection<VehicleCache> vehicleCaches) {
+        for (VehicleCache vehicle : vehicleCaches) {
+            vehicles.put(vehicle.getVariantId(), vehicle);
+            missingVehicles.invalidate(vehicle.getVariantId());
+        }
+    }
+
+    /**
+     * Áp dụng thay đổi xe (từ product_events): tạo bản ghi mới từ giá trị hiện có
+     * (bộ nhớ hoặc bảng cache, không gọi API), ghi đè các trường có trong sự kiện,
+     * rồi lưu xuống bảng cache và thay thế trong bộ nhớ.
+     */
+    public void applyVehicleUpdate(Long variantId, String variantName, Long modelId, String modelName) {
+        VehicleCache current = vehicles.getIfPresent(variantId);
+        if (current == null) {
+            current = vehicleCacheRepo.findById(variantId).orElse(null);
+        }
+
+        VehicleCache updated = new VehicleCache();
+        updated.setVariantId(variantId);
+        updated.setVariantName(variantName != null ? variantName : current != null ? current.getVariantName() : null);
+        updated.setModelId(modelId != null ? modelId : current != null ? current.getModelId() : null);
+        updated.setModelName(modelName != null ? modelName : current != null ? current.getModelName() : null);
+
+        VehicleCache saved = vehicleCacheRepo.save(updated);
+        vehicles.put(saved.getVariantId(), saved);
+        missingVehicles.invalidate(saved.getVariantId());
+    }
+
+    /**
+     * Lấy thông tin Dealer (Ưu tiên bộ nhớ, nếu không có thì tải 1 lần)
+     *
+     * @return null nếu Dealer không tồn tại; lỗi kết nối tới API được ném ra ngoài
      */
     public DealerCache getDealerInfo(UUID dealerId) {
-        // 1. Thử lấy từ cache
-        Optional<DealerCache> cacheOpt = dealerCacheRepo.findById(dealerId);
-        if (cacheOpt.isPresent()) {
-            return cacheOpt.get(); // Cache Hit!
+        DealerCache cached = dealers.getIfPresent(dealerId);
+        if (cached != null) {
+            return cached; // Cache Hit!
+        }
+        if (missingDealers.getIfPresent(dealerId) != null) {
+            return null; // Vừa tra cứu không thấy
         }
 
-        // 2. Cache Miss! Gọi API
+        // Cache Miss! Mỗi key chỉ 1 luồng tải (single-flight)
+        return loadOnce(dealerId, dealerLoads, id -> {
+            DealerCache loaded = loadDealer(id);
+            if (loaded != null) {
+                dealers.put(id, loaded);
+            } else {
+                missingDealers.put(id, Boolean.TRUE);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Lấy thông tin Vehicle (Ưu tiên bộ nhớ, nếu không có thì tải 1 lần)
+     *
+     * @return null nếu Vehicle không tồn tại; lỗi kết nối tới API được ném ra ngoài
+     */
+    public VehicleCache getVehicleInfo(Long variantId) {
+        VehicleCache cached = vehicles.getIfPresent(variantId);
+        if (cached != null) {
+            return cached; // Cache Hit!
+        }
+        if (missingVehicles.getIfPresent(variantId) != null) {
+            return null; // Vừa tra cứu không thấy
+        }
+
+        return loadOnce(variantId, vehicleLoads, id -> {
+            VehicleCache loaded = loadVehicle(id);
+            if (loaded != null) {
+                vehicles.put(id, loaded);
+            } else {
+                missingVehicles.put(id, Boolean.TRUE);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Luồng đầu tiên tải key, các luồng đến sau chờ cùng kết quả.
+     */
+    private <K, V> V loadOnce(K key, Map<K, CompletableFuture<V>> inFlight, Function<K, V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                // Ném lại đúng lỗi của luồng tải (để phân loại lỗi kết nối / dữ liệu)
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            V value = loader.apply(key);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private DealerCache loadDealer(UUID dealerId) {
+        // 1. Thử bảng cache trong DB (có thể đã được instance khác ghi)
+        DealerCache stored = dealerCacheRepo.findById(dealerId).orElse(null);
+        if (stored != null) {
+            return stored;
+        }
+
+        // 2. Gọi API
         log.warn("Cache Miss cho Dealer ID: {}. Đang gọi API...", dealerId);
+        DealerInfoEvent dealerInfo;
         try {
             // Giả sử dealer-service có API trả về DTO này
             String url = dealerServiceUrl + "/api/dealers/" + dealerId;
-            DealerInfoEvent dealerInfo = restTemplate.getForObject(url, DealerInfoEvent.class);
-
-            if (dealerInfo != null) {
-                // 3. Lưu vào cache cho lần sau
-                DealerCache newCache = new DealerCache();
-                newCache.setDealerId(dealerInfo.getDealerId());
-                newCache.setDealerName(dealerInfo.getDealerName());
-                newCache.setRegion(dealerInfo.getRegion());
-                return dealerCacheRepo.save(newCache);
-            }
-        } catch (Exception e) {
-            log.error("Lỗi khi lazy-load Dealer {}: {}", dealerId, e.getMessage());
+            dealerInfo = restTemplate.getForObject(url, DealerInfoEvent.class);
+        } catch (HttpClientErrorException.NotFound e) {
+            log.error("Dealer {} không tồn tại (404)", dealerId);
+            return null;
+        }
+        // Lỗi kết nối/timeout/5xx được ném ra ngoài: không ghi nhớ là "không tìm thấy"
+
+        if (dealerInfo == null || dealerInfo.getDealerId() == null) {
+            log.error("Dealer {} không tồn tại (body rỗng)", dealerId);
+            return null;
         }
-        return null;
+        // 3. Lưu vào bảng cache cho lần khởi động sau
+        DealerCache newCache = new DealerCache();
+        newCache.setDealerId(dealerInfo.getDealerId());
+        newCache.setDealerName(dealerInfo.getDealerName());
+        newCache.setRegion(dealerInfo.getRegion());
+        return dealerCacheRepo.save(newCache);
     }
 
-    /**
-     * Lấy thông tin Vehicle (Ưu tiên Cache, nếu không có thì gọi API)
-     */
-    public VehicleCache getVehicleInfo(Long variantId) {
-        // 1. Thử lấy từ cache
-        Optional<VehicleCache> cacheOpt = vehicleCacheRepo.findById(variantId);
-        if (cacheOpt.isPresent()) {
-            return cacheOpt.get(); // Cache Hit!
+    private VehicleCache loadVehicle(Long variantId) {
+        VehicleCache stored = vehicleCacheRepo.findById(variantId).orElse(null);
+        if (stored != null) {
+            return stored;
         }
 
-        // 2. Cache Miss! Gọi API
         log.warn("Cache Miss cho Variant ID: {}. Đang gọi API...", variantId);
+        ResponseEntity<ApiRespond<VariantDetailDto>> response;
         try {
             String url = vehicleServiceUrl + "/vehicle-catalog/variants/" + variantId;
             // API này trả về ApiRespond<VariantDetailDto>
-            ResponseEntity<ApiRespond<VariantDetailDto>> response = restTemplate.exchange(
+            response = restTemplate.exchange(
                     url, HttpMethod.GET, null, new ParameterizedTypeReference<ApiRespond<VariantDetailDto>>() {
                     });
+        } catch (HttpClientErrorException.NotFound e) {
+            log.error("Vehicle {} không tồn tại (404)", variantId);
+            return null;
+        }
+        // Lỗi kết nối/timeout/5xx được ném ra ngoài: không ghi nhớ là "không tìm thấy"
 
-            VariantDetailDto vehicleInfo = response.getBody().getData();
-
-            if (vehicleInfo != null) {
-                // 3. Lưu vào cache
-                VehicleCache newCache = new VehicleCache();
-                newCache.setVariantId(vehicleInfo.getVariantId());
-                newCache.setVariantName(vehicleInfo.getVersionName());
-                newCache.setModelId(vehicleInfo.getModelId());
-                newCache.setModelName(vehicleInfo.getModelName());
-                return vehicleCacheRepo.save(newCache);
-            }
-        } catch (Exception e) {
-            log.error("Lỗi khi lazy-load Vehicle {}: {}", variantId, e.getMessage());
+        VariantDetailDto vehicleInfo = response.getBody() != null ? response.getBody().getData() : null;
+        if (vehicleInfo == null) {
+            log.error("Vehicle {} không tồn tại (body rỗng)", variantId);
+            return null;
         }
-        return null;
+        VehicleCache newCache = new VehicleCache();
+        newCache.setVariantId(vehicleInfo.getVariantId());
+        newCache.setVariantName(vehicleInfo.getVersionName());
+        newCache.setModelId(vehicleInfo.getModelId());
+        newCache.setModelName(vehicleInfo.getModelName());
+        return vehicleCacheRepo.save(newCache);
     }
 }
@@ -1,148 +1,130 @@
 package com.example.reporting_service.service;
 
-import com.example.reporting_service.model.CentralInventorySummary;
-import com.example.reporting_service.model.CentralInventoryTransactionLog;
-import com.example.reporting_service.repository.CentralInventorySummaryRepository;
-import com.example.reporting_service.repository.CentralInventoryTransactionLogRepository;
+import com.example.reporting_service.dto.CentralInventoryTransactionEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.Timestamp;
-import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CentralInventoryPersistenceService {
 
-    private final CentralInventorySummaryRepository summaryRepo;
-    private final CentralInventoryTransactionLogRepository logRepo;
-
     /**
-     * Xử lý event RESTOCK hoặc INITIAL_STOCK: Tăng tồn kho trung tâm
+     * Cộng dồn nhập/xuất vào bảng tổng hợp; available_stock được tính lại sau khi cộng
+     * (MySQL gán các cột theo thứ tự trái -> phải). Tên xe chỉ ghi khi dòng chưa có.
      */
-    @Transactional
-    public void handleRestock(Long variantId, String variantName, Long modelId, String modelName,
-                              int quantity, String staffId, String notes, String referenceId,
-                              LocalDateTime transactionDate) {
-
-        // 1. Cập nhật bảng tổng hợp
-        CentralInventorySummary summary = getOrCreateSummary(variantId, variantName, modelId, modelName);
-        summary.setTotalImported(summary.getTotalImported() + quantity);
-        summary.setAvailableStock(summary.getTotalImported() - summary.getTotalTransferred());
-        summary.setLastUpdatedAt(Timestamp.from(Instant.now()));
-        summaryRepo.save(summary);
-
-        // 2. Ghi log
-        saveTransactionLog(variantId, variantName, modelId, modelName,
-                "RESTOCK", quantity, null, null, staffId, referenceId, notes, transactionDate);
-
-        log.info("-> Đã cập nhật RESTOCK: variant={}, qty={}, availableStock={}",
-                variantId, quantity, summary.getAvailableStock());
-    }
+    private static final String UPSERT_SUMMARY_SQL = """
+        INSERT INTO central_inventory_summary (
+            variant_id, variant_name, model_id, model_name,
+            total_imported, total_allocated, total_transferred, available_stock, last_updated_at
+        ) VALUES (?, ?, ?, ?, ?, 0, ?, ?, CURRENT_TIMESTAMP)
+        ON DUPLICATE KEY UPDATE
+            total_imported = central_inventory_summary.total_imported + VALUES(total_imported),
+            total_transferred = central_inventory_summary.total_transferred + VALUES(total_transferred),
+            available_stock = central_inventory_summary.total_imported - central_inventory_summary.total_transferred,
+            variant_name = COALESCE(central_inventory_summary.variant_name, VALUES(variant_name)),
+            model_id = COALESCE(central_inventory_summary.model_id, VALUES(model_id)),
+            model_name = COALESCE(central_inventory_summary.model_name, VALUES(model_name)),
+            last_updated_at = CURRENT_TIMESTAMP
+    """;
+
+    private static final String INSERT_LOG_SQL = """
+        INSERT INTO central_inventory_transaction_log (
+            variant_id, variant_name, model_id, model_name, transaction_type, quantity,
+            from_dealer_id, to_dealer_id, staff_id, reference_id, notes, transaction_date, received_at
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    private final JdbcTemplate jdbcTemplate;
 
     /**
-     * Xử lý event ALLOCATE: Ghi nhận phân bổ (Xem như Đã điều phối/Xuất kho theo yêu cầu User)
-     * "2 cái đó là 1 mà" -> Gộp ALLOCATE vào logic của TRANSFER_TO_DEALER
+     * Ghi một lô giao dịch kho trung tâm (1 lần poll Kafka) trong 1 transaction:
+     * - RESTOCK / INITIAL_STOCK: cộng total_imported.
+     * - ALLOCATE / TRANSFER_TO_DEALER: cộng total_transferred (ALLOCATE được tính là đã điều phối).
+     * - Loại khác: chỉ ghi log.
+     * Các thay đổi được cộng dồn theo variant trong bộ nhớ rồi ghi bằng 1 JDBC batch upsert;
+     * log giao dịch được ghi bằng 1 JDBC batch insert.
      */
     @Transactional
-    public void handleAllocate(Long variantId, String variantName, Long modelId, String modelName,
-                               int quantity, String staffId, String notes, String referenceId,
-                               LocalDateTime transactionDate) {
-
-        CentralInventorySummary summary = getOrCreateSummary(variantId, variantName, modelId, modelName);
-        
-        // Cũ: summary.setTotalAllocated(summary.getTotalAllocated() + quantity);
-        // Mới: Cộng vào TotalTransferred và Trừ AvailableStock
-        summary.setTotalTransferred(summary.getTotalTransferred() + quantity);
-        summary.setAvailableStock(summary.getTotalImported() - summary.getTotalTransferred());
-        
-        summary.setLastUpdatedAt(Timestamp.from(Instant.now()));
-        summaryRepo.save(summary);
-
-        saveTransactionLog(variantId, variantName, modelId, modelName,
-                "ALLOCATE", quantity, null, null, staffId, referenceId, notes, transactionDate);
-
-        log.info("-> Đã cập nhật ALLOCATE (tính là Dispatched): variant={}, qty={}, totalTransferred={}, availableStock={}",
-                variantId, quantity, summary.getTotalTransferred(), summary.getAvailableStock());
-    }
-
-    /**
-     * Xử lý event TRANSFER_TO_DEALER: Giảm tồn kho trung tâm
-     */
-    @Transactional
-    public void handleTransferToDealer(Long variantId, String variantName, Long modelId, String modelName,
-                                       int quantity, String toDealerId, String staffId, String notes,
-                                       String referenceId, LocalDateTime transactionDate) {
-
-        CentralInventorySummary summary = getOrCreateSummary(variantId, variantName, modelId, modelName);
-        summary.setTotalTransferred(summary.getTotalTransferred() + quantity);
-        summary.setAvailableStock(summary.getTotalImported() - summary.getTotalTransferred());
-        summary.setLastUpdatedAt(Timestamp.from(Instant.now()));
-        summaryRepo.save(summary);
-
-        saveTransactionLog(variantId, variantName, modelId, modelName,
-                "TRANSFER_TO_DEALER", quantity, null, toDealerId, staffId, referenceId, notes, transactionDate);
-
-        log.info("-> Đã cập nhật TRANSFER_TO_DEALER: variant={}, qty={}, availableStock={}",
-                variantId, quantity, summary.getAvailableStock());
-    }
-
-    /**
-     * Xử lý các event khác (ADJUSTMENT_ADD, ADJUSTMENT_SUBTRACT, RETURN_FROM_DEALER, etc.)
-     */
-    @Transactional
-    public void handleOtherTransaction(Long variantId, String variantName, Long modelId, String modelName,
-                                       String transactionType, int quantity, String fromDealerId, String toDealerId,
-                                       String staffId, String notes, String referenceId,
-                                       LocalDateTime transactionDate) {
-
-        // Chỉ ghi log, không thay đổi summary
-        saveTransactionLog(variantId, variantName, modelId, modelName,
-                transactionType, quantity, fromDealerId, toDealerId, staffId, referenceId, notes, transactionDate);
-
-        log.info("-> Đã ghi log transaction: type={}, variant={}, qty={}", transactionType, variantId, quantity);
-    }
-
-    // ========== HELPER METHODS ==========
-
-    private CentralInventorySummary getOrCreateSummary(Long variantId, String variantName,
-                                                        Long modelId, String modelName) {
-        return summaryRepo.findByVariantId(variantId).orElseGet(() -> {
-            CentralInventorySummary newSummary = new CentralInventorySummary();
-            newSummary.setVariantId(variantId);
-            newSummary.setVariantName(variantName);
-            newSummary.setModelId(modelId);
-            newSummary.setModelName(modelName);
-            newSummary.setTotalImported(0L);
-            newSummary.setTotalAllocated(0L);
-            newSummary.setTotalTransferred(0L);
-            newSummary.setAvailableStock(0L);
-            return newSummary;
-        });
-    }
-
-    private void saveTransactionLog(Long variantId, String variantName, Long modelId, String modelName,
-                                     String transactionType, int quantity, String fromDealerId, String toDealerId,
-                                     String staffId, String referenceId, String notes,
-                                     LocalDateTime transactionDate) {
-        CentralInventoryTransactionLog logEntry = new CentralInventoryTransactionLog();
-        logEntry.setVariantId(variantId);
-        logEntry.setVariantName(variantName);
-        logEntry.setModelId(modelId);
-        logEntry.setModelName(modelName);
-        logEntry.setTransactionType(transactionType);
-        logEntry.setQuantity(quantity);
-        logEntry.setFromDealerId(fromDealerId);
-        logEntry.setToDealerId(toDealerId);
-        logEntry.setStaffId(staffId);
-        logEntry.setReferenceId(referenceId);
-        logEntry.setNotes(notes);
-        logEntry.setTransactionDate(transactionDate != null ? transactionDate : LocalDateTime.now());
-        logEntry.setReceivedAt(LocalDateTime.now());
-        logRepo.save(logEntry);
+    public void saveTransactions(List<CentralInventoryTransactionEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Object[]> summaryDeltas = new LinkedHashMap<>();
+        List<Object[]> logArgs = new ArrayList<>(events.size());
+        Timestamp receivedAt = Timestamp.valueOf(LocalDateTime.now());
+
+        for (CentralInventoryTransactionEvent event : events) {
+            String logType = event.getTransactionType();
+            long imported = 0;
+            long transferred = 0;
+            switch (event.getTransactionType()) {
+                case "RESTOCK":
+                case "INITIAL_STOCK":
+                    imported = event.getQuantity();
+                    logType = "RESTOCK";
+                    break;
+                case "ALLOCATE":
+                case "TRANSFER_TO_DEALER":
+                    transferred = event.getQuantity();
+                    break;
+                default:
+                    break;
+            }
+
+            if (imported != 0 || transferred != 0) {
+                // [variantName, modelId, modelName, imported, transferred]
+                Object[] delta = summaryDeltas.computeIfAbsent(event.getVariantId(),
+                        id -> new Object[] { event.getVariantName(), event.getModelId(), event.getModelName(), 0L, 0L });
+                delta[3] = (Long) delta[3] + imported;
+                delta[4] = (Long) delta[4] + transferred;
+            }
+
+            // TRANSFER_TO_DEALER chỉ ghi toDealerId (giữ như trước)
+            String fromDealerId = switch (event.getTransactionType()) {
+                case "RESTOCK", "INITIAL_STOCK", "ALLOCATE", "TRANSFER_TO_DEALER" -> null;
+                default -> event.getFromDealerId();
+            };
+            String toDealerId = switch (event.getTransactionType()) {
+                case "RESTOCK", "INITIAL_STOCK", "ALLOCATE" -> null;
+                default -> event.getToDealerId();
+            };
+            LocalDateTime transactionDate = event.getTransactionDate() != null
+                    ? event.getTransactionDate() : LocalDateTime.now();
+
+            logArgs.add(new Object[] {
+                event.getVariantId(), event.getVariantName(), event.getModelId(), event.getModelName(),
+                logType, event.getQuantity(), fromDealerId, toDealerId,
+                event.getStaffId(), event.getReferenceId(), event.getNotes(),
+                Timestamp.valueOf(transactionDate), receivedAt
+            });
+        }
+
+        if (!summaryDeltas.isEmpty()) {
+            List<Object[]> summaryArgs = new ArrayList<>(summaryDeltas.size());
+            for (Map.Entry<Long, Object[]> entry : summaryDeltas.entrySet()) {
+                Object[] d = entry.getValue();
+                long imported = (Long) d[3];
+                long transferred = (Long) d[4];
+                summaryArgs.add(new Object[] {
+                    entry.getKey(), d[0], d[1], d[2], imported, transferred, imported - transferred
+                });
+            }
+            jdbcTemplate.batchUpdate(UPSERT_SUMMARY_SQL, summaryArgs);
+        }
+        jdbcTemplate.batchUpdate(INSERT_LOG_SQL, logArgs);
+
+        log.info("-> Đã ghi {} giao dịch kho trung tâm ({} variant)", events.size(), summaryDeltas.size());
     }
 }
@@ -0,0 +1,146 @@
+package com.example.reporting_service.service;
+
+import com.example.reporting_service.repository.SalesRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dựng ngữ cảnh (context) cho prompt dự báo nhu cầu.
+ *
+ * - Lịch sử được gộp sẵn trong SQL thành chuỗi theo tuần cho từng (model, region),
+ * thay vì tải toàn bộ sales_records và nối từng dòng.
+ * - Độ dài context bị giới hạn theo app.forecast.token-budget (ước lượng ~4 ký tự/token):
+ * chuỗi có doanh số lớn được giữ trước, phần còn lại chỉ ghi tổng.
+ * - dataVersion(): hash của dấu vân tay dữ liệu + cấu hình, dùng làm khóa cache dự báo.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ForecastContextBuilder {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final BigDecimal MILLION = BigDecimal.valueOf(1_000_000);
+
+    private final SalesRecordRepository salesRecordRepository;
+
+    // Số tuần lịch sử đưa vào prompt
+    @Value("${app.forecast.history-weeks:26}")
+    private int historyWeeks;
+
+    // Giới hạn số token (ước lượng) cho phần dữ liệu của prompt
+    @Value("${app.forecast.token-budget:3000}")
+    private int tokenBudget;
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Phiên bản dữ liệu dùng cho dự báo (không đổi nếu dữ liệu trong cửa sổ lịch sử không đổi).
+     *
+     * @return null nếu không có dữ liệu
+     */
+    public String dataVersion(String modelName) {
+        LocalDateTime from = historyStart();
+        List<Object[]> rows = salesRecordRepository.fingerprint(from, normalize(modelName));
+        if (rows.isEmpty() || ((Number) rows.get(0)[0]).longValue() == 0) {
+            return null;
+        }
+        String fingerprint = normalize(modelName) + "|" + from + "|" + historyWeeks + "|" + tokenBudget
+                + "|" + Arrays.toString(rows.get(0));
+        return sha256(fingerprint);
+    }
+
+    /**
+     * @return Chuỗi dữ liệu đã gộp theo tuần, tối đa app.forecast.token-budget token
+     */
+    public String build(String modelName) {
+        LocalDateTime from = historyStart();
+
+        // Gộp các dòng (model, region, tuần) thành chuỗi theo (model, region)
+        Map<String, Series> seriesByKey = new LinkedHashMap<>();
+        for (Object[] row : salesRecordRepository.summarizeWeekly(from, normalize(modelName))) {
+            String key = row[0] + " | " + row[1];
+            Series series = seriesByKey.computeIfAbsent(key, Series::new);
+            int yearWeek = ((Number) row[2]).intValue();
+            long orders = ((Number) row[3]).longValue();
+            BigDecimal amount = new BigDecimal(row[4].toString());
+            series.points.add(String.format("%d-W%02d:%d/%s", yearWeek / 100, yearWeek % 100, orders,
+                    amount.divide(MILLION, 0, RoundingMode.HALF_UP).toPlainString()));
+            series.totalOrders += orders;
+        }
+
+        List<Series> ordered = new ArrayList<>(seriesByKey.values());
+        ordered.sort(Comparator.comparingLong((Series s) -> s.totalOrders).reversed());
+
+        StringBuilder context = new StringBuilder(String.format(
+                "Weekly sales per model | region since %s (ISO week:orders/revenue in million VND).",
+                from.toLocalDate()));
+        int budgetChars = tokenBudget * CHARS_PER_TOKEN;
+        int omittedSeries = 0;
+        long omittedOrders = 0;
+        for (Series series : ordered) {
+            String line = "\n" + series.key + ": " + String.join(", ", series.points);
+            if (context.length() + line.length() > budgetChars) {
+                omittedSeries++;
+                omittedOrders += series.totalOrders;
+                continue;
+            }
+            context.append(line);
+        }
+        if (omittedSeries > 0) {
+            context.append(String.format("\n(+%d smaller series omitted, %d orders in total)",
+                    omittedSeries, omittedOrders));
+        }
+
+        log.info("Built forecast context: {} series, ~{} tokens", ordered.size() - omittedSeries,
+                estimateTokens(context.toString()));
+        return context.toString();
+    }
+
+    // Bắt đầu từ thứ Hai để cửa sổ (và dataVersion) ổn định trong suốt một tuần
+    private LocalDateTime historyStart() {
+        return LocalDate.now().with(DayOfWeek.MONDAY).minusWeeks(historyWeeks - 1L).atStartOfDay();
+    }
+
+    private static String normalize(String modelName) {
+        return (modelName == null || modelName.isEmpty()) ? null : modelName;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Series {
+        private final String key;
+        private final List<String> points = new ArrayList<>();
+        private long totalOrders;
+
+        Series(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.reporting_service.service;
+
+/**
+ * Mô hình sinh dự báo từ prompt (Gemini khi chạy thật, stub cục bộ khi kiểm thử).
+ * Chọn bằng app.forecast.model=gemini|stub.
+ */
+public interface ForecastModelClient {
+
+    /**
+     * @return Văn bản trả về từ mô hình (mong đợi JSON một dòng)
+     */
+    String generate(String prompt);
+}
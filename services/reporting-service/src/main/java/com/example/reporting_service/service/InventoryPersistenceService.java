@@ -1,49 +1,99 @@
 package com.example.reporting_service.service;
 
 import com.example.reporting_service.dto.EnrichedInventoryStockEvent;
-import com.example.reporting_service.repository.InventorySummaryRepository;
 import com.example.reporting_service.repository.DealerStockSnapshotRepository;
 import com.example.reporting_service.model.DealerStockSnapshotId;
 import com.example.reporting_service.model.DealerStockSnapshot;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor // Dùng @RequiredArgsConstructor
 public class InventoryPersistenceService {
 
-    private final InventorySummaryRepository inventoryRepository;
+    private static final String UPSERT_SNAPSHOT_SQL = """
+        INSERT INTO dealer_stock_snapshot (dealer_id, variant_id, current_stock)
+        VALUES (?, ?, ?)
+        ON DUPLICATE KEY UPDATE current_stock = VALUES(current_stock)
+    """;
+
+    // Giống InventorySummaryRepository.updateStockByDelta nhưng chạy theo JDBC batch
+    private static final String UPSERT_REGION_DELTA_SQL = """
+        INSERT INTO inventory_summary_by_region (
+            region, variant_id, model_id, model_name, variant_name,
+            total_stock, last_updated_at
+        ) VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+        ON DUPLICATE KEY UPDATE
+            total_stock = inventory_summary_by_region.total_stock + VALUES(total_stock),
+            model_id = VALUES(model_id),
+            model_name = VALUES(model_name),
+            variant_name = VALUES(variant_name),
+            last_updated_at = CURRENT_TIMESTAMP
+    """;
+
     // (Bảng cache này lưu trữ số tồn kho CUỐI CÙNG của từng ĐẠI LÝ)
-    private final DealerStockSnapshotRepository snapshotRepo; 
+    private final DealerStockSnapshotRepository snapshotRepo;
+    private final JdbcTemplate jdbcTemplate;
 
+    /**
+     * Ghi một lô sự kiện tồn kho đại lý (1 lần poll Kafka) trong 1 transaction:
+     * - Mỗi (dealer, variant) chỉ giữ số tồn CUỐI CÙNG trong lô.
+     * - Delta so với snapshot cũ được cộng dồn theo (region, variant) rồi ghi bằng 1 JDBC batch.
+     * - Snapshot mới được ghi bằng 1 JDBC batch upsert.
+     */
     @Transactional
-    public void saveInventorySummary(EnrichedInventoryStockEvent event) {
-        
-        // 1. Tìm tồn kho cũ của đại lý này (từ snapshot)
-        UUID dealerId = event.getDealerId();
-        Long variantId = event.getVariantId();
-        Long oldStock = snapshotRepo.findById(new DealerStockSnapshotId(dealerId, variantId))
-                            .map(DealerStockSnapshot::getCurrentStock)
-                            .orElse(0L);
-        
-        Long newStock = event.getStockOnHand();
-        Long delta = newStock - oldStock; // Thay đổi (chênh lệch)
-
-        // 2. Cập nhật snapshot với giá trị MỚI
-        snapshotRepo.save(new DealerStockSnapshot(dealerId, variantId, newStock));
-
-        // 3. CẬP NHẬT BẢNG TỔNG HỢP VỚI "DELTA"
-        // (Đây là logic an toàn để cập nhật tổng kho khu vực)
-        inventoryRepository.updateStockByDelta(
-            event.getRegion(),
-            event.getVariantId(),
-            delta, // Chỉ cộng/trừ phần chênh lệch
-            event.getModelId(), 
-            event.getModelName(), 
-            event.getVariantName()
-        );
+    public void saveInventorySummaries(List<EnrichedInventoryStockEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        // 1. Số tồn cuối cùng của từng (dealer, variant) trong lô (giữ thứ tự offset)
+        Map<DealerStockSnapshotId, EnrichedInventoryStockEvent> latest = new LinkedHashMap<>();
+        for (EnrichedInventoryStockEvent event : events) {
+            latest.put(new DealerStockSnapshotId(event.getDealerId(), event.getVariantId()), event);
+        }
+
+        // 2. Tồn kho cũ từ snapshot: 1 query cho cả lô
+        Map<DealerStockSnapshotId, Long> oldStocks = snapshotRepo.findAllById(latest.keySet()).stream()
+                .collect(Collectors.toMap(
+                        s -> new DealerStockSnapshotId(s.getDealerId(), s.getVariantId()),
+                        DealerStockSnapshot::getCurrentStock));
+
+        // 3. Cộng dồn delta theo (region, variant)
+        Map<String, Object[]> regionDeltas = new LinkedHashMap<>();
+        List<Object[]> snapshotArgs = new ArrayList<>(latest.size());
+        for (Map.Entry<DealerStockSnapshotId, EnrichedInventoryStockEvent> entry : latest.entrySet()) {
+            EnrichedInventoryStockEvent event = entry.getValue();
+            Long newStock = event.getStockOnHand();
+            long delta = newStock - oldStocks.getOrDefault(entry.getKey(), 0L);
+
+            snapshotArgs.add(new Object[] { toBytes(event.getDealerId()), event.getVariantId(), newStock });
+
+            Object[] args = regionDeltas.computeIfAbsent(event.getRegion() + "|" + event.getVariantId(),
+                    k -> new Object[] { event.getRegion(), event.getVariantId(), event.getModelId(),
+                            event.getModelName(), event.getVariantName(), 0L });
+            args[5] = (Long) args[5] + delta;
+        }
+
+        // 4. Ghi theo batch
+        jdbcTemplate.batchUpdate(UPSERT_SNAPSHOT_SQL, snapshotArgs);
+        jdbcTemplate.batchUpdate(UPSERT_REGION_DELTA_SQL, new ArrayList<>(regionDeltas.values()));
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
     }
-}
\ No newline at end of file
+}
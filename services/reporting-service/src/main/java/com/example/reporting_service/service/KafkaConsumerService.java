@@ -1,22 +1,30 @@
 package com.example.reporting_service.service;
 
+import com.example.reporting_service.config.KafkaRetryPolicy;
+import com.example.reporting_service.dto.CentralInventoryTransactionEvent;
 import com.example.reporting_service.dto.EnrichedInventoryStockEvent;
 import com.example.reporting_service.dto.SaleEventDTO;
 import com.example.reporting_service.model.DealerCache;
 import com.example.reporting_service.model.VehicleCache;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 
 import com.ev.common_lib.event.DealerStockUpdatedEvent;
 import com.ev.common_lib.event.OrderDeliveredEvent;
+import com.ev.common_lib.event.ProductUpdateEvent;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -30,160 +38,121 @@ public class KafkaConsumerService {
     private final ObjectMapper objectMapper;
 
     /**
-     * Lắng nghe sự kiện TỒN KHO ĐẠI LÝ từ inventory-service
+     * Lắng nghe sự kiện TỒN KHO ĐẠI LÝ từ inventory-service (theo lô mỗi lần poll)
      */
-    @KafkaListener(topics = "stock_events_dealerEVM", groupId = "reporting-service-group")
-    public void handleInventoryEvent(ConsumerRecord<String, Object> record) {
-        Object value = record.value();
-        log.info("Nhận được message (Tồn kho) - offset={}: {}", record.offset(), value);
-
-        // Skip nếu value là null (deserialization error đã được ErrorHandlingDeserializer xử lý)
-        if (value == null) {
-            log.warn("Received null value at offset {} (deserialization error), skipping...", record.offset());
-            return;
-        }
-
-        try {
-            // Convert LinkedHashMap hoặc String sang DTO
-            DealerStockUpdatedEvent event;
-            if (value instanceof String) {
-                event = objectMapper.readValue((String) value, DealerStockUpdatedEvent.class);
-            } else {
-                event = objectMapper.convertValue(value, DealerStockUpdatedEvent.class);
+    @KafkaListener(topics = "stock_events_dealerEVM", groupId = "reporting-service-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleInventoryEvents(List<ConsumerRecord<String, Object>> records) {
+        // index bản ghi trong lô -> dữ liệu đã làm giàu (theo thứ tự offset)
+        Map<Integer, List<EnrichedInventoryStockEvent>> enriched = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            DealerStockUpdatedEvent event = convert(records.get(i), DealerStockUpdatedEvent.class);
+            if (event == null) {
+                continue;
             }
-            
-            // 2. Tra cứu Cache (Lazy-loading)
-            DealerCache dealer = cacheService.getDealerInfo(event.getDealerId());
-            if (dealer == null) {
-                log.error("Cache Miss (không tìm thấy) cho Dealer: {}. Đang thử lại...", event.getDealerId());
-                throw new RuntimeException("Cache Miss cho Dealer (sẽ retry): " + event.getDealerId());
-            }
-
-            // 3. Xây dựng DTO nội bộ (Enriched)
-            EnrichedInventoryStockEvent enrichedEvent = new EnrichedInventoryStockEvent();
-            enrichedEvent.setRegion(dealer.getRegion());
-            enrichedEvent.setDealerId(event.getDealerId());
-            enrichedEvent.setModelId(event.getModelId());
-            enrichedEvent.setModelName(event.getModelName());
-            enrichedEvent.setVariantId(event.getVariantId());
-            enrichedEvent.setVariantName(event.getVariantName());
-            
-            // 4. Gán giá trị từ DTO gốc -> DTO nội bộ
-            enrichedEvent.setStockOnHand(Long.valueOf(event.getNewAvailableQuantity()));
-            
-            // 5. GỌI LỚP PERSISTENCE
-            persistenceService.saveInventorySummary(enrichedEvent);
 
-            log.info("-> Đã cập nhật báo cáo tồn kho thành công cho: {}", event.getVariantName());
-
-        } catch (Exception e) {
-            log.error("LỖI GIAO DỊCH/LƯU MESSAGE (Tồn kho): " + e.getMessage());
-            throw new RuntimeException("Failed to process Kafka message for DB save (Inventory).", e);
+            try {
+                // Tra cứu cache chiều (đọc map trong bộ nhớ, chỉ gọi API khi thiếu)
+                DealerCache dealer = findDealer(event.getDealerId());
+
+                EnrichedInventoryStockEvent enrichedEvent = new EnrichedInventoryStockEvent();
+                enrichedEvent.setRegion(dealer.getRegion());
+                enrichedEvent.setDealerId(event.getDealerId());
+                enrichedEvent.setModelId(event.getModelId());
+                enrichedEvent.setModelName(event.getModelName());
+                enrichedEvent.setVariantId(event.getVariantId());
+                enrichedEvent.setVariantName(event.getVariantName());
+                enrichedEvent.setStockOnHand(Long.valueOf(event.getNewAvailableQuantity()));
+                enriched.put(i, List.of(enrichedEvent));
+            } catch (RuntimeException e) {
+                throw failAt(i, "Sự kiện tồn kho không hợp lệ", e, enriched,
+                        persistenceService::saveInventorySummaries);
+            }
         }
+
+        saveInOrder(enriched, persistenceService::saveInventorySummaries);
+        log.info("-> Đã cập nhật báo cáo tồn kho: {} bản ghi, {} sự kiện hợp lệ", records.size(), enriched.size());
     }
 
     /**
-     * Lắng nghe sự kiện DOANH SỐ từ sales-service
+     * Lắng nghe sự kiện DOANH SỐ từ sales-service (theo lô mỗi lần poll)
      */
-    @KafkaListener(topics = "sales.orders.delivered", groupId = "reporting-service-group")
-    public void handleSaleEvent(ConsumerRecord<String, Object> record) {
-        Object value = record.value();
-        log.info("Nhận được message (Doanh số) - offset={}: {}", record.offset(), value);
-
-        // Skip nếu value là null (deserialization error đã được ErrorHandlingDeserializer xử lý)
-        if (value == null) {
-            log.warn("Received null value at offset {} (deserialization error), skipping...", record.offset());
-            return;
-        }
-
-        try {
-            // Convert LinkedHashMap hoặc String sang DTO
-            OrderDeliveredEvent event;
-            if (value instanceof String) {
-                event = objectMapper.readValue((String) value, OrderDeliveredEvent.class);
-            } else {
-                event = objectMapper.convertValue(value, OrderDeliveredEvent.class);
-            }
-            
-            // 2. Tra cứu Cache (Lazy-loading)
-            DealerCache dealer = cacheService.getDealerInfo(event.getDealerId());
-            if (dealer == null) {
-                log.error("Cache Miss (không tìm thấy) cho Dealer: {}. Đang thử lại...", event.getDealerId());
-                throw new RuntimeException("Cache Miss cho Dealer (sẽ retry): " + event.getDealerId());
+    @KafkaListener(topics = "sales.orders.delivered", groupId = "reporting-service-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleSaleEvents(List<ConsumerRecord<String, Object>> records) {
+        Map<Integer, List<SaleEventDTO>> enriched = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            OrderDeliveredEvent event = convert(records.get(i), OrderDeliveredEvent.class);
+            if (event == null || event.getItems() == null) {
+                continue;
             }
 
-            // 3. Lặp qua TỪNG MẶT HÀNG trong đơn hàng (Rất quan trọng)
-            for (OrderDeliveredEvent.OrderItemDetail item : event.getItems()) {
-                
-                // 4. Tra cứu cache cho Xe
-                VehicleCache vehicle = cacheService.getVehicleInfo(item.getVariantId());
-                if (vehicle == null) {
-                    log.error("Cache Miss (không tìm thấy) cho Vehicle: {}. Bỏ qua item này.", item.getVariantId());
-                    continue; // Bỏ qua item này, xử lý item tiếp theo
+            try {
+                DealerCache dealer = findDealer(event.getDealerId());
+
+                // Lặp qua TỪNG MẶT HÀNG trong đơn hàng
+                List<SaleEventDTO> sales = new ArrayList<>(event.getItems().size());
+                for (OrderDeliveredEvent.OrderItemDetail item : event.getItems()) {
+                    VehicleCache vehicle = item.getVariantId() != null
+                            ? cacheService.getVehicleInfo(item.getVariantId()) : null;
+                    if (vehicle == null) {
+                        log.error("Cache Miss (không tìm thấy) cho Vehicle: {}. Bỏ qua item này.", item.getVariantId());
+                        continue;
+                    }
+
+                    SaleEventDTO saleDto = new SaleEventDTO();
+                    saleDto.setRegion(dealer.getRegion());
+                    saleDto.setDealershipId(dealer.getDealerId());
+                    saleDto.setDealershipName(dealer.getDealerName());
+
+                    saleDto.setModelId(vehicle.getModelId());
+                    saleDto.setModelName(vehicle.getModelName());
+                    saleDto.setVariantId(vehicle.getVariantId());
+                    saleDto.setVariantName(vehicle.getVariantName());
+
+                    saleDto.setQuantitySold((long) item.getQuantity());
+                    saleDto.setSalePrice(item.getFinalPrice().doubleValue());
+                    saleDto.setSaleTimestamp(Timestamp.valueOf(event.getDeliveryDate()));
+                    sales.add(saleDto);
                 }
-                
-                // 5. Xây dựng DTO nội bộ (SaleEventDTO)
-                SaleEventDTO saleDto = new SaleEventDTO();
-                saleDto.setRegion(dealer.getRegion());
-                saleDto.setDealershipId(dealer.getDealerId());
-                saleDto.setDealershipName(dealer.getDealerName());
-                
-                saleDto.setModelId(vehicle.getModelId());
-                saleDto.setModelName(vehicle.getModelName());
-                saleDto.setVariantId(vehicle.getVariantId());
-                saleDto.setVariantName(vehicle.getVariantName());
-                
-                saleDto.setQuantitySold((long) item.getQuantity());
-                saleDto.setSalePrice(item.getFinalPrice().doubleValue());
-                saleDto.setSaleTimestamp(Timestamp.valueOf(event.getDeliveryDate()));
-
-                // 6. GỌI LỚP PERSISTENCE (cho từng item)
-                salesPersistenceService.saveSaleSummary(saleDto);
+                if (!sales.isEmpty()) {
+                    enriched.put(i, sales);
+                }
+            } catch (RuntimeException e) {
+                throw failAt(i, "Đơn hàng " + event.getOrderId() + " không hợp lệ", e, enriched,
+                        salesPersistenceService::saveSaleSummaries);
             }
-
-            log.info("-> Đã cập nhật báo cáo doanh số thành công cho Order: {}", event.getOrderId());
-
-        } catch (Exception e) {
-            log.error("LỖI GIAO DỊCH/LƯU MESSAGE (Doanh số): " + e.getMessage());
-            throw new RuntimeException("Failed to process Kafka message for DB save (Sales).", e);
         }
+
+        saveInOrder(enriched, salesPersistenceService::saveSaleSummaries);
+        log.info("-> Đã cập nhật báo cáo doanh số: {} bản ghi, {} đơn hàng hợp lệ", records.size(), enriched.size());
     }
 
     /**
-     * Lắng nghe sự kiện GIAO DỊCH KHO TRUNG TÂM từ inventory-service
+     * Lắng nghe sự kiện GIAO DỊCH KHO TRUNG TÂM từ inventory-service (theo lô mỗi lần poll)
      * Topic: inventory_events
      * Event chứa: InventoryTransaction entity (variantId, transactionType, quantity, staffId, notes, etc.)
      */
-    @KafkaListener(topics = "inventory_events", groupId = "reporting-service-group")
-    public void handleCentralInventoryEvent(ConsumerRecord<String, Object> record) {
-        Object value = record.value();
-        log.info("Nhận được message (Kho trung tâm) - offset={}: {}", record.offset(), value);
-
-        if (value == null) {
-            log.warn("Received null value at offset {} (deserialization error), skipping...", record.offset());
-            return;
-        }
-
-        try {
-            // Convert message sang LinkedHashMap
-            LinkedHashMap<String, Object> eventMap;
-            if (value instanceof String) {
-                eventMap = objectMapper.readValue((String) value, LinkedHashMap.class);
-            } else if (value instanceof LinkedHashMap) {
-                eventMap = (LinkedHashMap<String, Object>) value;
-            } else {
-                eventMap = objectMapper.convertValue(value, LinkedHashMap.class);
+    @KafkaListener(topics = "inventory_events", groupId = "reporting-service-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleCentralInventoryEvents(List<ConsumerRecord<String, Object>> records) {
+        Map<Integer, List<CentralInventoryTransactionEvent>> enriched = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, Object> record = records.get(i);
+            LinkedHashMap<String, Object> eventMap = convert(record, LinkedHashMap.class);
+            if (eventMap == null) {
+                continue;
             }
 
             // Trích xuất fields từ InventoryTransaction
             Long variantId = toLong(eventMap.get("variantId"));
             String transactionType = (String) eventMap.get("transactionType");
             Integer quantity = toInt(eventMap.get("quantity"));
-            String staffId = (String) eventMap.get("staffId");
-            String notes = (String) eventMap.get("notes");
-            String referenceId = (String) eventMap.get("referenceId");
-            String toDealerId = eventMap.get("toDealerId") != null ? eventMap.get("toDealerId").toString() : null;
-            String fromDealerId = eventMap.get("fromDealerId") != null ? eventMap.get("fromDealerId").toString() : null;
+            if (variantId == null || transactionType == null || quantity == null) {
+                log.error("Event thiếu thông tin bắt buộc (variantId, transactionType, quantity) tại offset {}. Bỏ qua.",
+                        record.offset());
+                continue;
+            }
 
             // Parse transactionDate
             LocalDateTime transactionDate = LocalDateTime.now();
@@ -195,60 +164,128 @@ public class KafkaConsumerService {
                 }
             }
 
-            if (variantId == null || transactionType == null || quantity == null) {
-                log.error("Event thiếu thông tin bắt buộc (variantId, transactionType, quantity). Bỏ qua.");
-                return;
+            try {
+                CentralInventoryTransactionEvent event = CentralInventoryTransactionEvent.builder()
+                        .variantId(variantId)
+                        .transactionType(transactionType)
+                        .quantity(quantity)
+                        .staffId((String) eventMap.get("staffId"))
+                        .notes((String) eventMap.get("notes"))
+                        .referenceId((String) eventMap.get("referenceId"))
+                        .toDealerId(eventMap.get("toDealerId") != null ? eventMap.get("toDealerId").toString() : null)
+                        .fromDealerId(eventMap.get("fromDealerId") != null ? eventMap.get("fromDealerId").toString() : null)
+                        .transactionDate(transactionDate)
+                        .build();
+
+                // Enrich với thông tin vehicle từ cache
+                VehicleCache vehicle = cacheService.getVehicleInfo(variantId);
+                if (vehicle != null) {
+                    event.setVariantName(vehicle.getVariantName());
+                    event.setModelId(vehicle.getModelId());
+                    event.setModelName(vehicle.getModelName());
+                } else {
+                    log.warn("Không tìm thấy thông tin vehicle cho variantId={}. Lưu với thông tin rỗng.", variantId);
+                }
+                enriched.put(i, List.of(event));
+            } catch (RuntimeException e) {
+                throw failAt(i, "Giao dịch kho trung tâm không hợp lệ", e, enriched,
+                        centralInventoryPersistenceService::saveTransactions);
             }
+        }
 
-            // Enrich với thông tin vehicle từ cache
-            String variantName = null;
-            Long modelId = null;
-            String modelName = null;
-
-            VehicleCache vehicle = cacheService.getVehicleInfo(variantId);
-            if (vehicle != null) {
-                variantName = vehicle.getVariantName();
-                modelId = vehicle.getModelId();
-                modelName = vehicle.getModelName();
-            } else {
-                log.warn("Không tìm thấy thông tin vehicle cho variantId={}. Lưu với thông tin rỗng.", variantId);
-            }
+        saveInOrder(enriched, centralInventoryPersistenceService::saveTransactions);
+    }
 
-            // Dispatch theo transactionType
-            switch (transactionType) {
-                case "RESTOCK":
-                case "INITIAL_STOCK":
-                    centralInventoryPersistenceService.handleRestock(
-                            variantId, variantName, modelId, modelName,
-                            quantity, staffId, notes, referenceId, transactionDate);
-                    break;
+    /**
+     * Cập nhật cache chiều Xe khi vehicle-service thay đổi variant/model.
+     * Mỗi instance dùng group riêng để cache bộ nhớ của instance nào cũng được làm mới;
+     * group mới bắt đầu từ cuối topic (latest) vì trạng thái hiện có đã được nạp sẵn khi khởi động.
+     */
+    @KafkaListener(topics = "product_events", groupId = "reporting-dimension-cache-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void handleProductUpdate(ConsumerRecord<String, Object> record) {
+        ProductUpdateEvent event = convert(record, ProductUpdateEvent.class);
+        if (event == null || event.getVariantId() == null) {
+            return;
+        }
 
-                case "ALLOCATE":
-                    centralInventoryPersistenceService.handleAllocate(
-                            variantId, variantName, modelId, modelName,
-                            quantity, staffId, notes, referenceId, transactionDate);
-                    break;
+        cacheService.applyVehicleUpdate(event.getVariantId(), event.getVersionName(),
+                event.getModelId(), event.getModelName());
+    }
 
-                case "TRANSFER_TO_DEALER":
-                    centralInventoryPersistenceService.handleTransferToDealer(
-                            variantId, variantName, modelId, modelName,
-                            quantity, toDealerId, staffId, notes, referenceId, transactionDate);
-                    break;
+    // ========== BATCH HELPERS ==========
 
-                default:
-                    centralInventoryPersistenceService.handleOtherTransaction(
-                            variantId, variantName, modelId, modelName,
-                            transactionType, quantity, fromDealerId, toDealerId,
-                            staffId, notes, referenceId, transactionDate);
-                    break;
+    /**
+     * Chuyển value (LinkedHashMap hoặc String) sang DTO; trả về null nếu value null
+     * (lỗi deserialize đã được ErrorHandlingDeserializer xử lý) hoặc không parse được.
+     */
+    private <T> T convert(ConsumerRecord<String, Object> record, Class<T> type) {
+        Object value = record.value();
+        if (value == null) {
+            log.warn("Received null value at offset {} (deserialization error), skipping...", record.offset());
+            return null;
+        }
+        try {
+            if (value instanceof String) {
+                return objectMapper.readValue((String) value, type);
             }
+            return objectMapper.convertValue(value, type);
+        } catch (Exception e) {
+            log.error("Không parse được message topic={} offset={}: {}. Bỏ qua.",
+                    record.topic(), record.offset(), e.getMessage());
+            return null;
+        }
+    }
 
-            log.info("-> Đã xử lý event kho trung tâm: type={}, variant={}, qty={}",
-                    transactionType, variantId, quantity);
+    /**
+     * @throws IllegalStateException nếu Dealer không tồn tại (lỗi của riêng bản ghi này)
+     */
+    private DealerCache findDealer(UUID dealerId) {
+        DealerCache dealer = dealerId != null ? cacheService.getDealerInfo(dealerId) : null;
+        if (dealer == null) {
+            log.error("Cache Miss (không tìm thấy) cho Dealer: {}", dealerId);
+            throw new IllegalStateException("Không tìm thấy Dealer: " + dealerId);
+        }
+        return dealer;
+    }
 
-        } catch (Exception e) {
-            log.error("LỖI xử lý message (Kho trung tâm): " + e.getMessage(), e);
-            throw new RuntimeException("Failed to process Kafka message for DB save (Central Inventory).", e);
+    /**
+     * Xử lý lỗi khi làm giàu bản ghi thứ index trong lô.
+     * - Lỗi kết nối: chưa ghi gì, ném lại nguyên dạng để cả lô được thử lại.
+     * - Lỗi khác: ghi các bản ghi đứng trước (offset của chúng sẽ được commit) rồi báo lỗi đúng index.
+     */
+    private <T> RuntimeException failAt(int index, String message, RuntimeException cause,
+            Map<Integer, List<T>> processed, Consumer<List<T>> saver) {
+        if (KafkaRetryPolicy.isConnectivityFailure(cause)) {
+            return cause;
+        }
+        saveInOrder(processed, saver);
+        return new BatchListenerFailedException(message, cause, index);
+    }
+
+    /**
+     * Ghi dữ liệu của các bản ghi (theo thứ tự offset) bằng 1 lần gọi saver (1 transaction).
+     * Nếu lỗi không phải lỗi kết nối (vd vi phạm ràng buộc), ghi lại từng bản ghi để tìm bản ghi lỗi:
+     * các bản ghi trước nó được giữ lại, bản ghi lỗi được báo qua BatchListenerFailedException(index).
+     */
+    private <T> void saveInOrder(Map<Integer, List<T>> byIndex, Consumer<List<T>> saver) {
+        if (byIndex.isEmpty()) {
+            return;
+        }
+        try {
+            saver.accept(byIndex.values().stream().flatMap(List::stream).toList());
+        } catch (RuntimeException e) {
+            if (KafkaRetryPolicy.isConnectivityFailure(e)) {
+                throw e;
+            }
+            log.warn("Ghi lô thất bại ({}), ghi lại từng bản ghi để tìm bản ghi lỗi", e.getMessage());
+            for (Map.Entry<Integer, List<T>> entry : byIndex.entrySet()) {
+                try {
+                    saver.accept(entry.getValue());
+                } catch (RuntimeException recordError) {
+                    throw new BatchListenerFailedException("Không ghi được bản ghi", recordError, entry.getKey());
+                }
+            }
         }
     }
 
@@ -1,19 +1,13 @@
 package com.example.reporting_service.service;
 
 import com.example.reporting_service.dto.InventoryVelocityDTO;
-import com.example.reporting_service.model.InventorySummaryByRegion;
-import com.example.reporting_service.model.SalesSummaryByDealership;
 import com.example.reporting_service.repository.InventorySummaryRepository;
-import com.example.reporting_service.repository.SalesSummaryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,63 +16,53 @@ public class ReportingService {
     @Autowired
     private InventorySummaryRepository inventoryRepo;
 
-    @Autowired
-    private SalesSummaryRepository salesRepo;
+    // Các cửa sổ (số ngày) được phép khi tính tốc độ tiêu thụ
+    @Value("${app.reports.velocity.windows:7,30,90}")
+    private List<Integer> velocityWindows;
 
     // Mặc định tính tốc độ tiêu thụ trong 30 ngày
-    private static final int DEFAULT_DAYS_PERIOD = 30;
-
-    public List<InventoryVelocityDTO> calculateInventoryVelocity(Specification<InventorySummaryByRegion> inventorySpec,
-                                                               Specification<SalesSummaryByDealership> salesSpec) {
+    @Value("${app.reports.velocity.default-days:30}")
+    private int defaultDaysPeriod;
 
-        // Bước 1: Lấy tồn kho hiện tại (dựa trên filter)
-        List<InventorySummaryByRegion> inventoryList = inventoryRepo.findAll(inventorySpec);
+    public int getDefaultDaysPeriod() {
+        return defaultDaysPeriod;
+    }
 
-        // Bước 2: Lấy doanh số trong 30 ngày qua (dựa trên filter)
-        // (Lưu ý: salesSpec có thể cần điều chỉnh nếu filter khác inventorySpec, 
-        // ví dụ: salesSpec không filter theo 'dealershipId' nếu muốn xem velocity theo 'region')
-        
-        // Tính mốc thời gian 30 ngày trước
-        Timestamp thirtyDaysAgo = Timestamp.from(Instant.now().minus(DEFAULT_DAYS_PERIOD, ChronoUnit.DAYS));
+    public boolean isSupportedWindow(int days) {
+        return velocityWindows.contains(days);
+    }
 
-        // Thêm điều kiện thời gian vào specification
-        Specification<SalesSummaryByDealership> finalSalesSpec = salesSpec
-            .and((root, query, cb) -> cb.greaterThan(root.get("lastSaleAt"), thirtyDaysAgo));
+    /**
+     * Tốc độ tiêu thụ theo (region, model, variant) trong :days ngày gần nhất.
+     * Tồn kho và doanh số được join/group-by trong 1 truy vấn SQL
+     * (doanh số lấy từ bảng theo ngày sales_daily_by_region), Java chỉ tính tỉ lệ.
+     */
+    public List<InventoryVelocityDTO> calculateInventoryVelocity(int days, String region, Long modelId, Long variantId) {
+        // Cửa sổ gồm cả hôm nay: [hôm nay - (days - 1), hôm nay]
+        LocalDate since = LocalDate.now().minusDays(days - 1L);
 
-        // Group sales by (region, model, variant)
-        // Vì SalesSummaryByDealership đang chi tiết tới 'dealershipId', 
-        // chúng ta cần tổng hợp lại theo (region, model, variant) để khớp với InventorySummaryByRegion
-        Map<String, Long> salesMap = salesRepo.findAll(finalSalesSpec).stream()
-            .collect(Collectors.groupingBy(
-                // Tạo key: "region:modelId:variantId"
-                sale -> sale.getRegion() + ":" + sale.getModelId() + ":" + sale.getVariantId(),
-                // Tính tổng 'totalUnitsSold'
-                Collectors.summingLong(SalesSummaryByDealership::getTotalUnitsSold)
-            ));
+        return inventoryRepo.findStockWithSalesSince(since, region, modelId, variantId).stream().map(row -> {
+            Long currentStock = row[5] != null ? ((Number) row[5]).longValue() : 0L;
+            Long unitsSold = ((Number) row[6]).longValue();
+            Long unitsFromOrders = ((Number) row[7]).longValue();
 
-        // Bước 3: Tính toán Velocity cho từng record tồn kho
-        return inventoryList.stream().map(inventory -> {
-            String key = inventory.getRegion() + ":" + inventory.getModelId() + ":" + inventory.getVariantId();
-            
-            // Lấy doanh số 30 ngày từ map
-            Long salesLast30Days = salesMap.getOrDefault(key, 0L);
-            Long currentStock = inventory.getTotalStock();
-            
             // Tính toán
-            Double avgDailySales = (double) salesLast30Days / DEFAULT_DAYS_PERIOD;
+            Double avgDailySales = (double) unitsSold / days;
             Double daysOfSupply = (avgDailySales == 0) ? Double.POSITIVE_INFINITY : (currentStock / avgDailySales); // Nếu không bán (chia 0) -> tồn vĩnh viễn
 
             // Tạo DTO kết quả
             return new InventoryVelocityDTO(
-                inventory.getRegion(),
-                inventory.getModelId(),
-                inventory.getModelName(),
-                inventory.getVariantId(),
-                inventory.getVariantName(),
+                (String) row[0],
+                row[1] != null ? ((Number) row[1]).longValue() : null,
+                (String) row[2],
+                row[3] != null ? ((Number) row[3]).longValue() : null,
+                (String) row[4],
                 currentStock,
-                salesLast30Days,
+                unitsSold,
+                days,
                 avgDailySales,
-                daysOfSupply
+                daysOfSupply,
+                unitsFromOrders
             );
         }).collect(Collectors.toList());
     }
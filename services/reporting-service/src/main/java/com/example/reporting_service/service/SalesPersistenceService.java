@@ -1,32 +1,235 @@
 package com.example.reporting_service.service;
 
 import com.example.reporting_service.dto.SaleEventDTO;
-import com.example.reporting_service.repository.SalesSummaryRepository;
+import com.example.reporting_service.model.SalesRecord;
+import com.example.reporting_service.model.SyncCursor;
+import com.example.reporting_service.repository.SyncCursorRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Slf4j
 @Service
 public class SalesPersistenceService {
 
+    // Giống SalesSummaryRepository.upsertSalesSummary nhưng chạy theo JDBC batch
+    private static final String UPSERT_SALES_SUMMARY_SQL = """
+        INSERT INTO sales_summary_by_dealership (
+            region, dealership_id, dealership_name,
+            model_id, model_name, variant_id, variant_name,
+            total_units_sold, total_revenue, last_sale_at
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE
+            total_units_sold = sales_summary_by_dealership.total_units_sold + VALUES(total_units_sold),
+            total_revenue = sales_summary_by_dealership.total_revenue + VALUES(total_revenue),
+            last_sale_at = GREATEST(COALESCE(sales_summary_by_dealership.last_sale_at, VALUES(last_sale_at)),
+                                   COALESCE(VALUES(last_sale_at), sales_summary_by_dealership.last_sale_at)),
+            dealership_name = VALUES(dealership_name),
+            model_name = VALUES(model_name),
+            variant_name = VALUES(variant_name)
+    """;
+
+    // Doanh số theo ngày cho báo cáo tốc độ tiêu thụ (cửa sổ 7/30/90 ngày)
+    private static final String UPSERT_SALES_DAILY_SQL = """
+        INSERT INTO sales_daily_by_region (sale_date, region, variant_id, units_sold, revenue, backfilled)
+        VALUES (?, ?, ?, ?, ?, FALSE)
+        ON DUPLICATE KEY UPDATE
+            units_sold = sales_daily_by_region.units_sold + VALUES(units_sold),
+            revenue = sales_daily_by_region.revenue + VALUES(revenue),
+            backfilled = FALSE
+    """;
+
+    // Nạp lại sales_daily_by_region từ sales_records cho các ngày trước :cutoff.
+    // sales_records không có số lượng (1 dòng = 1 đơn) nên units_sold ở đây là SỐ ĐƠN, đánh dấu backfilled.
+    // Chỉ ghi đè dòng backfilled (không đụng dòng đã có dữ liệu Kafka) nên chạy lại không cộng trùng.
+    private static final String BACKFILL_SALES_DAILY_SQL = """
+        INSERT INTO sales_daily_by_region (sale_date, region, variant_id, units_sold, revenue, backfilled)
+        SELECT DATE(order_date), COALESCE(region, 'Unknown'), variant_id,
+               COUNT(*), COALESCE(SUM(total_amount), 0), TRUE
+        FROM sales_records
+        WHERE order_date < ? AND variant_id IS NOT NULL
+        GROUP BY DATE(order_date), COALESCE(region, 'Unknown'), variant_id
+        ON DUPLICATE KEY UPDATE
+            units_sold = IF(sales_daily_by_region.backfilled, VALUES(units_sold), sales_daily_by_region.units_sold),
+            revenue = IF(sales_daily_by_region.backfilled, VALUES(revenue), sales_daily_by_region.revenue)
+    """;
+
+    // Khu vực dùng khi đại lý chưa khai báo region (cùng giá trị mặc định với sales_records)
+    private static final String UNKNOWN_REGION = "Unknown";
+
+    // Khóa chính = orderId nên chạy lại sync không tạo bản ghi trùng.
+    // reported_at được gán trước (so với giá trị cũ) và chỉ đổi khi có cột thay đổi,
+    // để MAX(reported_at) trong fingerprint dự báo phản ánh cả thay đổi region/model_name.
+    private static final String UPSERT_SALES_RECORD_SQL = """
+        INSERT INTO sales_records (
+            id, order_id, total_amount, order_date,
+            dealer_name, variant_id, model_name, region, reported_at
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE
+            reported_at = IF(
+                sales_records.total_amount <=> VALUES(total_amount)
+                AND sales_records.order_date <=> VALUES(order_date)
+                AND (VALUES(dealer_name) IS NULL OR sales_records.dealer_name <=> VALUES(dealer_name))
+                AND (VALUES(variant_id) IS NULL OR sales_records.variant_id <=> VALUES(variant_id))
+                AND (VALUES(model_name) IS NULL OR sales_records.model_name <=> VALUES(model_name))
+                AND (VALUES(region) IS NULL OR sales_records.region <=> VALUES(region)),
+                sales_records.reported_at, VALUES(reported_at)),
+            total_amount = VALUES(total_amount),
+            order_date = VALUES(order_date),
+            dealer_name = COALESCE(VALUES(dealer_name), sales_records.dealer_name),
+            variant_id = COALESCE(VALUES(variant_id), sales_records.variant_id),
+            model_name = COALESCE(VALUES(model_name), sales_records.model_name),
+            region = COALESCE(VALUES(region), sales_records.region)
+    """;
+
     @Autowired
-    private SalesSummaryRepository salesRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SyncCursorRepository syncCursorRepository;
+
+    /**
+     * Ghi một lô doanh số (1 lần poll Kafka): cộng dồn số lượng/doanh thu theo
+     * (region, dealer, variant) và theo (ngày, region, variant) trong bộ nhớ,
+     * rồi ghi mỗi bảng bằng 1 JDBC batch upsert.
+     */
+    @Transactional
+    public void saveSaleSummaries(List<SaleEventDTO> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        // region là cột NOT NULL trong cả 2 bảng tổng hợp
+        for (SaleEventDTO event : events) {
+            if (event.getRegion() == null) {
+                event.setRegion(UNKNOWN_REGION);
+            }
+        }
+
+        Map<String, SaleEventDTO> totals = new LinkedHashMap<>();
+        for (SaleEventDTO event : events) {
+            String key = event.getRegion() + "|" + event.getDealershipId() + "|" + event.getVariantId();
+            SaleEventDTO total = totals.get(key);
+            if (total == null) {
+                totals.put(key, copyOf(event));
+                continue;
+            }
+            total.setQuantitySold(total.getQuantitySold() + event.getQuantitySold());
+            total.setSalePrice(total.getSalePrice() + event.getSalePrice());
+            if (event.getSaleTimestamp() != null && (total.getSaleTimestamp() == null
+                    || event.getSaleTimestamp().after(total.getSaleTimestamp()))) {
+                total.setSaleTimestamp(event.getSaleTimestamp());
+            }
+            // Tên lấy theo sự kiện mới nhất
+            total.setDealershipName(event.getDealershipName());
+            total.setModelName(event.getModelName());
+            total.setVariantName(event.getVariantName());
+        }
 
+        List<Object[]> batchArgs = new ArrayList<>(totals.size());
+        for (SaleEventDTO total : totals.values()) {
+            batchArgs.add(new Object[] {
+                total.getRegion(), toBytes(total.getDealershipId()), total.getDealershipName(),
+                total.getModelId(), total.getModelName(), total.getVariantId(), total.getVariantName(),
+                total.getQuantitySold(), total.getSalePrice(), total.getSaleTimestamp()
+            });
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SALES_SUMMARY_SQL, batchArgs);
+
+        Map<String, Object[]> dailyTotals = new LinkedHashMap<>();
+        for (SaleEventDTO event : events) {
+            LocalDate saleDate = event.getSaleTimestamp() != null
+                    ? event.getSaleTimestamp().toLocalDateTime().toLocalDate()
+                    : LocalDate.now();
+            Object[] args = dailyTotals.computeIfAbsent(saleDate + "|" + event.getRegion() + "|" + event.getVariantId(),
+                    k -> new Object[] { saleDate, event.getRegion(), event.getVariantId(), 0L, 0.0 });
+            args[3] = (Long) args[3] + event.getQuantitySold();
+            args[4] = (Double) args[4] + event.getSalePrice();
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SALES_DAILY_SQL, new ArrayList<>(dailyTotals.values()));
+    }
+
+    /**
+     * Nạp sales_daily_by_region từ lịch sử sales_records mỗi lần khởi động,
+     * để các cửa sổ 7/30/90 ngày không báo 0 trong lúc chờ sự kiện mới.
+     * Không phụ thuộc bảng có trống hay không (listener Kafka có thể đã ghi trước):
+     * backfillSalesDaily tự giới hạn theo ngày sớm nhất có dữ liệu Kafka và chạy lại không cộng trùng.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillSalesDailyOnStartup() {
+        try {
+            backfillSalesDaily();
+        } catch (Exception e) {
+            log.error("Không backfill được sales_daily_by_region: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Backfill sales_daily_by_region từ sales_records cho các ngày trước ngày sớm nhất
+     * đã có dữ liệu từ Kafka (hoặc trước hôm nay nếu chưa có), nên không trùng với phần do Kafka ghi.
+     * Các dòng nạp lại đếm số đơn (backfilled = true), không phải số xe.
+     *
+     * @return Số dòng đã ghi
+     */
+    public int backfillSalesDaily() {
+        LocalDate firstFedDate = jdbcTemplate.queryForObject(
+                "SELECT MIN(sale_date) FROM sales_daily_by_region WHERE backfilled IS NOT TRUE", LocalDate.class);
+        LocalDate cutoff = firstFedDate != null ? firstFedDate : LocalDate.now();
+        int written = jdbcTemplate.update(BACKFILL_SALES_DAILY_SQL, cutoff.atStartOfDay());
+        log.info("Đã backfill sales_daily_by_region trước {}: {} dòng", cutoff, written);
+        return written;
+    }
+
+    /**
+     * Ghi một chunk của sync đơn hàng bằng 1 JDBC batch upsert và lưu con trỏ
+     * trong cùng transaction: chunk hoặc được ghi kèm con trỏ, hoặc không gì cả.
+     */
     @Transactional
-    public void saveSaleSummary(SaleEventDTO event) {
-        System.out.println("LOGGING: Transactional Sales save initiated for " + event.getDealershipName());
-
-        salesRepository.upsertSalesSummary(
-            event.getRegion(),
-            event.getDealershipId(),
-            event.getDealershipName(),
-            event.getModelId(),
-            event.getModelName(),
-            event.getVariantId(),
-            event.getVariantName(),
-            event.getQuantitySold(),
-            event.getSalePrice(),
-            event.getSaleTimestamp()
-        );
+    public void saveSalesRecords(List<SalesRecord> records, SyncCursor cursor) {
+        if (!records.isEmpty()) {
+            List<Object[]> batchArgs = new ArrayList<>(records.size());
+            for (SalesRecord record : records) {
+                batchArgs.add(new Object[] {
+                    toBytes(record.getId()), toBytes(record.getOrderId()), record.getTotalAmount(),
+                    record.getOrderDate(), record.getDealerName(), record.getVariantId(),
+                    record.getModelName(), record.getRegion(), record.getReportedAt()
+                });
+            }
+            jdbcTemplate.batchUpdate(UPSERT_SALES_RECORD_SQL, batchArgs);
+        }
+        syncCursorRepository.save(cursor);
+    }
+
+    private static SaleEventDTO copyOf(SaleEventDTO event) {
+        SaleEventDTO copy = new SaleEventDTO();
+        copy.setRegion(event.getRegion());
+        copy.setDealershipId(event.getDealershipId());
+        copy.setDealershipName(event.getDealershipName());
+        copy.setModelId(event.getModelId());
+        copy.setModelName(event.getModelName());
+        copy.setVariantId(event.getVariantId());
+        copy.setVariantName(event.getVariantName());
+        copy.setQuantitySold(event.getQuantitySold());
+        copy.setSalePrice(event.getSalePrice());
+        copy.setSaleTimestamp(event.getSaleTimestamp());
+        return copy;
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
     }
 }
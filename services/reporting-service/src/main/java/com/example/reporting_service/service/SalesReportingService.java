@@ -3,15 +3,18 @@ package com.example.reporting_service.service;
 import com.example.reporting_service.dto.ApiRespond;
 import com.example.reporting_service.dto.DealerInventoryDto;
 import com.example.reporting_service.dto.SaleEventDTO;
+import com.example.reporting_service.dto.SalesFeedPage;
 import com.example.reporting_service.dto.VariantDetailDto;
 import com.example.reporting_service.dto.DealerResponse;
 import com.example.reporting_service.model.DealerCache;
 import com.example.reporting_service.model.DealerStockSnapshot;
 import com.example.reporting_service.model.SalesRecord;
+import com.example.reporting_service.model.SyncCursor;
 import com.example.reporting_service.model.VehicleCache;
 import com.example.reporting_service.repository.DealerCacheRepository;
 import com.example.reporting_service.repository.DealerStockSnapshotRepository;
 import com.example.reporting_service.repository.SalesRecordRepository;
+import com.example.reporting_service.repository.SyncCursorRepository;
 import com.example.reporting_service.repository.VehicleCacheRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,10 +25,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.sql.Timestamp;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.UUID;
 import java.time.LocalDateTime;
@@ -39,9 +44,18 @@ public class SalesReportingService {
     private final SalesRecordRepository salesRecordRepository;
     private final RestTemplate restTemplate;
     private final GeminiForecastingService geminiForecastingService;
+    private final ForecastContextBuilder forecastContextBuilder;
     private final DealerCacheRepository dealerCacheRepository;
     private final VehicleCacheRepository vehicleCacheRepository;
     private final DealerStockSnapshotRepository dealerStockSnapshotRepository;
+    private final CacheService cacheService;
+    private final SalesPersistenceService salesPersistenceService;
+    private final SyncCursorRepository syncCursorRepository;
+
+    private static final String SALES_SYNC_CURSOR = "sales";
+
+    @Value("${app.sync.sales.chunk-size:500}")
+    private int syncChunkSize;
 
     @Value("${app.services.sales.url}")
     private String salesServiceUrl;
@@ -96,60 +110,62 @@ public class SalesReportingService {
         salesRecordRepository.save(record);
     }
 
+    /**
+     * Đồng bộ đơn hàng từ sales-service theo từng chunk (phân trang keyset).
+     * Mỗi chunk được ghi bằng 1 batch upsert cùng với con trỏ sync_cursors,
+     * nên nếu lỗi giữa chừng thì lần chạy sau tiếp tục từ chunk cuối đã ghi,
+     * và chạy lại nhiều lần không tạo bản ghi trùng.
+     */
     public void syncSalesData() {
         try {
-            LocalDateTime lastSync = salesRecordRepository.findMaxOrderDate();
-            String url = salesServiceUrl + "/api/v1/sales-orders/internal/all-for-reporting";
-            if (lastSync != null) {
-                url += "?since=" + lastSync.toString();
+            SyncCursor cursor = syncCursorRepository.findById(SALES_SYNC_CURSOR).orElse(null);
+            LocalDateTime since = null;
+            if (cursor == null) {
+                // Lần đầu chạy với con trỏ: tiếp tục từ bản ghi mới nhất đã có (nếu có)
+                cursor = new SyncCursor(SALES_SYNC_CURSOR, null, null, null);
+                since = salesRecordRepository.findMaxOrderDate();
             }
-            log.info("Syncing sales data from: {}", url);
-
-            ParameterizedTypeReference<List<SaleEventDTO>> responseType = new ParameterizedTypeReference<>() {
-            };
 
-            ResponseEntity<List<SaleEventDTO>> responseEntity = restTemplate.exchange(url, HttpMethod.GET, null,
-                    responseType);
+            int total = 0;
+            boolean hasMore = true;
+            while (hasMore) {
+                UriComponentsBuilder uri = UriComponentsBuilder
+                        .fromUriString(salesServiceUrl + "/api/v1/sales-orders/internal/reporting-feed")
+                        .queryParam("size", syncChunkSize);
+                if (cursor.getLastDate() != null && cursor.getLastId() != null) {
+                    uri.queryParam("afterDate", cursor.getLastDate()).queryParam("afterId", cursor.getLastId());
+                } else if (since != null) {
+                    uri.queryParam("since", since);
+                }
+                String url = uri.toUriString();
+                log.info("Syncing sales data from: {}", url);
 
-            List<SaleEventDTO> dataList = responseEntity.getBody();
+                SalesFeedPage page = restTemplate.getForObject(url, SalesFeedPage.class);
+                if (page == null || page.getItems() == null || page.getItems().isEmpty()) {
+                    break;
+                }
 
-            if (dataList != null) {
-                if (dataList.isEmpty()) {
-                    log.info("No new sales data to sync.");
-                    return;
+                List<SalesRecord> records = new ArrayList<>(page.getItems().size());
+                for (SaleEventDTO dto : page.getItems()) {
+                    SalesRecord record = toSalesRecord(dto);
+                    if (record != null) {
+                        records.add(record);
+                    }
                 }
 
-                int count = 0;
-                for (SaleEventDTO dto : dataList) {
+                cursor.setLastDate(page.getNextAfterDate());
+                cursor.setLastId(page.getNextAfterId());
+                cursor.setUpdatedAt(LocalDateTime.now());
+                salesPersistenceService.saveSalesRecords(records, cursor);
 
-                    UUID orderUuid;
-                    try {
-                        orderUuid = UUID.fromString(dto.getOrderId());
-                    } catch (Exception e) {
-                        log.warn("Skipping invalid UUID during sync: {}", dto.getOrderId());
-                        continue;
-                    }
+                total += records.size();
+                hasMore = page.isHasMore() && page.getNextAfterDate() != null && page.getNextAfterId() != null;
+            }
 
-                    if (!salesRecordRepository.existsById(orderUuid)) {
-
-                        SalesRecord record = SalesRecord.builder()
-                                .id(orderUuid)
-                                .orderId(orderUuid)
-                                .totalAmount(BigDecimal.valueOf(dto.getSalePrice() != null ? dto.getSalePrice() : 0.0))
-                                .orderDate(dto.getSaleTimestamp() != null ? dto.getSaleTimestamp().toLocalDateTime()
-                                        : LocalDateTime.now())
-                                .dealerName(dto.getDealershipName() != null ? dto.getDealershipName() : "Unknown")
-                                .modelName(dto.getModelName() != null ? dto.getModelName() : "Unknown")
-                                .variantId(dto.getVariantId())
-                                .region(dto.getRegion() != null ? dto.getRegion() : "Unknown")
-                                .reportedAt(LocalDateTime.now())
-                                .build();
-
-                        salesRecordRepository.save(record);
-                        count++;
-                    }
-                }
-                log.info("Synced {} new records.", count);
+            if (total == 0) {
+                log.info("No new sales data to sync.");
+            } else {
+                log.info("Synced {} records.", total);
             }
 
         } catch (Exception e) {
@@ -158,31 +174,58 @@ public class SalesReportingService {
         }
     }
 
+    private SalesRecord toSalesRecord(SaleEventDTO dto) {
+        UUID orderUuid;
+        try {
+            orderUuid = UUID.fromString(dto.getOrderId());
+        } catch (Exception e) {
+            log.warn("Skipping invalid UUID during sync: {}", dto.getOrderId());
+            return null;
+        }
+
+        // Feed chỉ trả dealershipId: lấy tên/khu vực từ cache chiều Đại lý
+        DealerCache dealer = dto.getDealershipId() != null ? cacheService.getDealerInfo(dto.getDealershipId()) : null;
+        String dealerName = dto.getDealershipName() != null ? dto.getDealershipName()
+                : dealer != null && dealer.getDealerName() != null ? dealer.getDealerName() : "Unknown";
+        String region = dto.getRegion() != null ? dto.getRegion()
+                : dealer != null && dealer.getRegion() != null ? dealer.getRegion() : "Unknown";
+
+        return SalesRecord.builder()
+                .id(orderUuid)
+                .orderId(orderUuid)
+                .totalAmount(BigDecimal.valueOf(dto.getSalePrice() != null ? dto.getSalePrice() : 0.0))
+                .orderDate(dto.getSaleTimestamp() != null ? dto.getSaleTimestamp().toLocalDateTime()
+                        : LocalDateTime.now())
+                .dealerName(dealerName)
+                .modelName(dto.getModelName() != null ? dto.getModelName() : "Unknown")
+                .variantId(dto.getVariantId())
+                .region(region)
+                .reportedAt(LocalDateTime.now())
+                .build();
+    }
+
     // ===========================================
     // AI FORECASTING
     // ===========================================
 
+    /**
+     * Dự báo nhu cầu: kiểm tra cache theo phiên bản dữ liệu trước (1 truy vấn tổng hợp),
+     * chỉ khi hụt cache mới dựng context theo tuần và gọi mô hình.
+     */
     public String getDemandForecast(String modelName) {
-        List<SalesRecord> records;
-        if (modelName != null && !modelName.isEmpty()) {
-            records = salesRecordRepository.findByModelName(modelName);
-        } else {
-            records = salesRecordRepository.findAll();
-        }
-
-        if (records.isEmpty()) {
+        String dataVersion = forecastContextBuilder.dataVersion(modelName);
+        if (dataVersion == null) {
             return "No data available for forecasting.";
         }
 
-        String context = records.stream()
-                .map(r -> String.format("[%s] Model: %s, Amount: %s, Region: %s",
-                        r.getOrderDate().format(DateTimeFormatter.ISO_LOCAL_DATE),
-                        r.getModelName(),
-                        r.getTotalAmount(),
-                        r.getRegion()))
-                .collect(Collectors.joining("; "));
+        Optional<String> cached = geminiForecastingService.findCachedForecast(modelName, dataVersion);
+        if (cached.isPresent()) {
+            log.info("Returning cached forecast for: {} (version {})", modelName, dataVersion);
+            return cached.get();
+        }
 
-        return geminiForecastingService.generateForecast(context, modelName);
+        String context = forecastContextBuilder.build(modelName);
+        return geminiForecastingService.generateForecast(context, modelName, dataVersion);
     }
 
     public String generateDemandForecast(String modelName) {
@@ -190,7 +233,8 @@ public class SalesReportingService {
     }
 
     public boolean checkForecastCache(String modelName) {
-        return geminiForecastingService.hasCachedForecast(modelName);
+        String dataVersion = forecastContextBuilder.dataVersion(modelName);
+        return dataVersion != null && geminiForecastingService.hasCachedForecast(modelName, dataVersion);
     }
 
     // ===========================================
@@ -224,7 +268,7 @@ public class SalesReportingService {
                     return p;
                 }).collect(Collectors.toList());
 
-                vehicleCacheRepository.saveAll(cacheList);
+                cacheService.putVehicles(vehicleCacheRepository.saveAll(cacheList));
                 log.info("Synced {} vehicles to cache.", cacheList.size());
             }
         } catch (Exception e) {
@@ -253,7 +297,7 @@ public class SalesReportingService {
                     return dc;
                 }).collect(Collectors.toList());
 
-                dealerCacheRepository.saveAll(cacheList);
+                cacheService.putDealers(dealerCacheRepository.saveAll(cacheList));
                 log.info("Synced {} dealers to cache.", cacheList.size());
             }
         } catch (Exception e) {
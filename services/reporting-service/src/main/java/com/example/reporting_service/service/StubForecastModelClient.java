@@ -0,0 +1,24 @@
+package com.example.reporting_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mô hình giả lập cho môi trường local/kiểm thử: không gọi mạng,
+ * trả về JSON cố định theo đúng cấu trúc mà prompt yêu cầu.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.forecast.model", havingValue = "stub")
+public class StubForecastModelClient implements ForecastModelClient {
+
+    @Override
+    public String generate(String prompt) {
+        log.info("Stub forecast model called (prompt ~{} tokens)", ForecastContextBuilder.estimateTokens(prompt));
+        return "{\"analysis_vi\": \"Dự báo từ mô hình stub (môi trường kiểm thử).\", "
+                + "\"recommendation_vi\": \"Không có khuyến nghị (mô hình stub).\", "
+                + "\"forecast_data\": [{\"label\": \"Next Month 1\", \"value\": 0}, "
+                + "{\"label\": \"Next Month 2\", \"value\": 0}]}";
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.reporting_service.service;
+
+import com.example.reporting_service.dto.EnrichedInventoryStockEvent;
+import com.example.reporting_service.dto.SaleEventDTO;
+import com.example.reporting_service.model.DealerCache;
+import com.example.reporting_service.model.VehicleCache;
+import com.ev.common_lib.event.DealerStockUpdatedEvent;
+import com.ev.common_lib.event.OrderDeliveredEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KafkaConsumerServiceTest {
+
+    private static final UUID DEALER_ID = UUID.randomUUID();
+    private static final UUID UNKNOWN_DEALER_ID = UUID.randomUUID();
+    private static final long VARIANT_ID = 7L;
+
+    private InventoryPersistenceService inventoryPersistence;
+    private SalesPersistenceService salesPersistence;
+    private CacheService cacheService;
+    private KafkaConsumerService consumer;
+
+    @BeforeEach
+    void setUp() {
+        inventoryPersistence = mock(InventoryPersistenceService.class);
+        salesPersistence = mock(SalesPersistenceService.class);
+        cacheService = mock(CacheService.class);
+        consumer = new KafkaConsumerService(inventoryPersistence, salesPersistence,
+                mock(CentralInventoryPersistenceService.class), cacheService,
+                new ObjectMapper().registerModule(new JavaTimeModule()));
+
+        DealerCache dealer = new DealerCache();
+        dealer.setDealerId(DEALER_ID);
+        dealer.setDealerName("Dealer A");
+        dealer.setRegion("North");
+        when(cacheService.getDealerInfo(DEALER_ID)).thenReturn(dealer);
+
+        VehicleCache vehicle = new VehicleCache();
+        vehicle.setVariantId(VARIANT_ID);
+        vehicle.setVariantName("Standard");
+        vehicle.setModelId(1L);
+        vehicle.setModelName("VF8");
+        when(cacheService.getVehicleInfo(VARIANT_ID)).thenReturn(vehicle);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void badInventoryRecordPersistsEarlierRecordsBeforeFailing() {
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, stockEvent(DEALER_ID, 10)),
+                record(1, stockEvent(DEALER_ID, 11)),
+                record(2, stockEvent(UNKNOWN_DEALER_ID, 12)),
+                record(3, stockEvent(DEALER_ID, 13)));
+
+        BatchListenerFailedException failure = assertThrows(BatchListenerFailedException.class,
+                () -> consumer.handleInventoryEvents(records));
+
+        assertEquals(2, failure.getIndex());
+        ArgumentCaptor<List<EnrichedInventoryStockEvent>> saved = ArgumentCaptor.forClass(List.class);
+        verify(inventoryPersistence).saveInventorySummaries(saved.capture());
+        assertEquals(List.of(10L, 11L), saved.getValue().stream().map(EnrichedInventoryStockEvent::getStockOnHand).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void badSaleRecordPersistsEarlierOrdersBeforeFailing() {
+        OrderDeliveredEvent missingPrice = saleEvent(BigDecimal.valueOf(300));
+        missingPrice.getItems().add(new OrderDeliveredEvent.OrderItemDetail(VARIANT_ID, 1, null));
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, saleEvent(BigDecimal.valueOf(100))),
+                record(1, saleEvent(BigDecimal.valueOf(200))),
+                record(2, missingPrice),
+                record(3, saleEvent(BigDecimal.valueOf(400))));
+
+        BatchListenerFailedException failure = assertThrows(BatchListenerFailedException.class,
+                () -> consumer.handleSaleEvents(records));
+
+        assertEquals(2, failure.getIndex());
+        ArgumentCaptor<List<SaleEventDTO>> saved = ArgumentCaptor.forClass(List.class);
+        verify(salesPersistence).saveSaleSummaries(saved.capture());
+        // Dòng hàng hợp lệ của đơn lỗi không được ghi (đơn sẽ được thử lại nguyên vẹn)
+        assertEquals(List.of(100.0, 200.0), saved.getValue().stream().map(SaleEventDTO::getSalePrice).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void constraintViolationIsolatesFailingRecordAndKeepsEarlierOnes() {
+        List<List<EnrichedInventoryStockEvent>> committed = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<EnrichedInventoryStockEvent> events = invocation.getArgument(0);
+            if (events.stream().anyMatch(e -> e.getStockOnHand() == 12L)) {
+                throw new DataIntegrityViolationException("Column 'region' cannot be null");
+            }
+            committed.add(events);
+            return null;
+        }).when(inventoryPersistence).saveInventorySummaries(anyList());
+
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, stockEvent(DEALER_ID, 10)),
+                record(1, stockEvent(DEALER_ID, 11)),
+                record(2, stockEvent(DEALER_ID, 12)),
+                record(3, stockEvent(DEALER_ID, 13)));
+
+        BatchListenerFailedException failure = assertThrows(BatchListenerFailedException.class,
+                () -> consumer.handleInventoryEvents(records));
+
+        assertEquals(2, failure.getIndex());
+        assertEquals(List.of(10L, 11L), committed.stream().flatMap(List::stream)
+                .map(EnrichedInventoryStockEvent::getStockOnHand).toList());
+    }
+
+    @Test
+    void dealerServiceOutageRetriesWholeBatchWithoutWriting() {
+        when(cacheService.getDealerInfo(UNKNOWN_DEALER_ID))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, stockEvent(DEALER_ID, 10)),
+                record(1, stockEvent(UNKNOWN_DEALER_ID, 11)));
+
+        assertThrows(ResourceAccessException.class, () -> consumer.handleInventoryEvents(records));
+
+        verify(inventoryPersistence, never()).saveInventorySummaries(any());
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, Object value) {
+        return new ConsumerRecord<>("topic", 0, offset, null, value);
+    }
+
+    private static DealerStockUpdatedEvent stockEvent(UUID dealerId, int available) {
+        DealerStockUpdatedEvent event = new DealerStockUpdatedEvent();
+        event.setDealerId(dealerId);
+        event.setVariantId(VARIANT_ID);
+        event.setNewAvailableQuantity(available);
+        return event;
+    }
+
+    private static OrderDeliveredEvent saleEvent(BigDecimal price) {
+        List<OrderDeliveredEvent.OrderItemDetail> items = new ArrayList<>();
+        items.add(new OrderDeliveredEvent.OrderItemDetail(VARIANT_ID, 1, price));
+        return new OrderDeliveredEvent(UUID.randomUUID(), DEALER_ID, LocalDateTime.now(), price, items);
+    }
+}
@@ -0,0 +1,38 @@
+package com.ev.sales_service.Listener;
+
+import com.ev.sales_service.dto.outbound.NotificationPushEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationPushListener {
+
+    // Dùng để đẩy tin nhắn qua WebSocket
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Đẩy thông báo (đã có sẵn trong sự kiện) tới topic STOMP đích.
+     * - Broker nội bộ (mặc định): mỗi instance dùng group riêng, nên instance nào cũng nhận
+     * và đẩy cho các client đang kết nối với chính nó.
+     * - Broker relay (app.websocket.relay.enabled=true): dùng group chung, chỉ 1 instance đẩy lên broker
+     * ngoài, broker sẽ phân phát tới client trên mọi instance.
+     */
+    @KafkaListener(topics = "sales.notifications.push",
+            groupId = "#{${app.websocket.relay.enabled:false} ? '${spring.kafka.consumer.group-id}' : 'sales-ws-fanout-${random.uuid}'}")
+    public void handleNotificationPush(String payload) {
+        try {
+            NotificationPushEvent event = objectMapper.readValue(payload, NotificationPushEvent.class);
+            messagingTemplate.convertAndSend(event.getDestination(), event.getNotification());
+            log.debug("Đã đẩy thông báo {} tới {}", event.getNotification().getId(), event.getDestination());
+        } catch (Exception e) {
+            log.error("Lỗi khi xử lý NotificationPushEvent: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ev.sales_service.Listener;
+
+import com.ev.common_lib.event.ProductUpdateEvent;
+import com.ev.sales_service.client.VehicleCatalogClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductEventListener {
+
+    private final VehicleCatalogClient vehicleCatalogClient;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Xóa cache catalog cục bộ khi vehicle-service cập nhật variant/model.
+     * Mỗi instance dùng group riêng để instance nào cũng nhận được sự kiện.
+     */
+    @KafkaListener(topics = "product_events", groupId = "sales-catalog-cache-${random.uuid}")
+    public void handleProductUpdate(String payload) {
+        try {
+            ProductUpdateEvent event = objectMapper.readValue(payload, ProductUpdateEvent.class);
+            vehicleCatalogClient.invalidate(event.getVariantId(), event.getModelId());
+            log.debug("Đã xóa cache catalog cho variant {} / model {}", event.getVariantId(), event.getModelId());
+        } catch (Exception e) {
+            // Không đọc được sự kiện: xóa toàn bộ để tránh dùng dữ liệu cũ
+            log.warn("Không đọc được product_events, xóa toàn bộ cache catalog: {}", e.getMessage());
+            vehicleCatalogClient.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ev.sales_service.Listener;
+
+import com.ev.sales_service.service.PromotionIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PromotionEventListener {
+
+    private final PromotionIndex promotionIndex;
+
+    /**
+     * Dựng lại chỉ mục KM khi có KM mới (promotion-events) hoặc KM thay đổi (sales.promotions.changed).
+     * Mỗi instance dùng group riêng để instance nào cũng nhận được sự kiện.
+     */
+    @KafkaListener(topics = { "promotion-events", "sales.promotions.changed" },
+            groupId = "sales-promotion-index-${random.uuid}")
+    public void handlePromotionEvent(String payload) {
+        log.debug("Nhận sự kiện khuyến mãi, dựng lại PromotionIndex");
+        promotionIndex.rebuild();
+    }
+}
@@ -0,0 +1,205 @@
+package com.ev.sales_service.client;
+
+import com.ev.common_lib.dto.respond.ApiRespond;
+import com.ev.common_lib.dto.vehicle.VariantDetailDto;
+import com.ev.common_lib.exception.AppException;
+import com.ev.common_lib.exception.ErrorCode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client dùng chung để đọc dữ liệu vehicle-catalog từ sales-service.
+ * - Lấy nhiều variant trong 1 request (POST /vehicle-catalog/variants/details-by-ids).
+ * - Gộp các request đồng thời cho cùng một variantId (chỉ 1 request bay đi, các luồng khác chờ kết quả).
+ * - Cache cục bộ có TTL; sự kiện product_events xóa các mục tương ứng (xem ProductEventListener).
+ */
+@Component
+@Slf4j
+public class VehicleCatalogClient {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${app.services.catalog.url}")
+    private String vehicleCatalogUrl;
+
+    @Value("${app.catalog.client.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private final Cache<Long, VariantDetailDto> variants;
+    private final Cache<Long, String> modelNames;
+    private final Map<Long, CompletableFuture<VariantDetailDto>> inFlight = new ConcurrentHashMap<>();
+
+    public VehicleCatalogClient(RestTemplate restTemplate,
+            @Value("${app.catalog.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${app.catalog.cache.max-size:10000}") long maxSize) {
+        this.restTemplate = restTemplate;
+        this.variants = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+        this.modelNames = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Lấy chi tiết một variant (rỗng nếu vehicle-catalog không có variant này).
+     */
+    public Optional<VariantDetailDto> getVariant(Long variantId) {
+        if (variantId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getVariants(List.of(variantId)).get(variantId));
+    }
+
+    /**
+     * Lấy chi tiết nhiều variant: mục đã cache trả về ngay, phần còn lại gom vào tối đa 1 request.
+     * Các variant không tồn tại sẽ không có trong Map kết quả.
+     *
+     * @throws AppException DOWNSTREAM_SERVICE_UNAVAILABLE nếu không gọi được vehicle-catalog
+     */
+    public Map<Long, VariantDetailDto> getVariants(Collection<Long> variantIds) {
+        Map<Long, VariantDetailDto> result = new HashMap<>();
+        Map<Long, CompletableFuture<VariantDetailDto>> waiting = new HashMap<>();
+        Map<Long, CompletableFuture<VariantDetailDto>> owned = new HashMap<>();
+
+        for (Long id : new LinkedHashSet<>(variantIds)) {
+            if (id == null) {
+                continue;
+            }
+            VariantDetailDto cached = variants.getIfPresent(id);
+            if (cached != null) {
+                result.put(id, cached);
+                continue;
+            }
+            CompletableFuture<VariantDetailDto> mine = new CompletableFuture<>();
+            CompletableFuture<VariantDetailDto> existing = inFlight.putIfAbsent(id, mine);
+            if (existing == null) {
+                owned.put(id, mine);
+            } else {
+                waiting.put(id, existing);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            fetchAndComplete(owned);
+        }
+
+        Map<Long, CompletableFuture<VariantDetailDto>> pending = new HashMap<>(owned);
+        pending.putAll(waiting);
+        for (Map.Entry<Long, CompletableFuture<VariantDetailDto>> entry : pending.entrySet()) {
+            try {
+                VariantDetailDto dto = entry.getValue().get(timeoutMs, TimeUnit.MILLISECONDS);
+                if (dto != null) {
+                    result.put(entry.getKey(), dto);
+                }
+            } catch (Exception e) {
+                log.error("Không lấy được variant {} từ vehicle-catalog: {}", entry.getKey(), e.getMessage());
+                throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
+            }
+        }
+        return result;
+    }
+
+    private void fetchAndComplete(Map<Long, CompletableFuture<VariantDetailDto>> owned) {
+        try {
+            ResponseEntity<ApiRespond<List<VariantDetailDto>>> response = restTemplate.exchange(
+                    vehicleCatalogUrl + "/vehicle-catalog/variants/details-by-ids",
+                    HttpMethod.POST,
+                    new HttpEntity<>(new ArrayList<>(owned.keySet())),
+                    new ParameterizedTypeReference<ApiRespond<List<VariantDetailDto>>>() {
+                    });
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
+                    || response.getBody().getData() == null) {
+                throw new IllegalStateException("Response không hợp lệ: " + response.getStatusCode());
+            }
+
+            Map<Long, VariantDetailDto> fetched = new HashMap<>();
+            for (VariantDetailDto dto : response.getBody().getData()) {
+                fetched.put(dto.getVariantId(), dto);
+            }
+            owned.forEach((id, future) -> {
+                VariantDetailDto dto = fetched.get(id);
+                // Chỉ cache nếu chưa bị product_events xóa trong lúc đang gọi
+                if (inFlight.remove(id, future) && dto != null) {
+                    variants.put(id, dto);
+                }
+                future.complete(dto);
+            });
+        } catch (Exception e) {
+            log.error("Lỗi khi gọi vehicle-catalog (details-by-ids {}): {}", owned.keySet(), e.getMessage());
+            owned.forEach((id, future) -> {
+                inFlight.remove(id, future);
+                future.completeExceptionally(e);
+            });
+        }
+    }
+
+    /**
+     * Lấy tên mẫu xe (null nếu không lấy được; lỗi không được cache).
+     */
+    public String getModelName(Long modelId) {
+        if (modelId == null) {
+            return null;
+        }
+        // Caffeine tự gộp các lần nạp đồng thời cho cùng một key
+        return modelNames.get(modelId, this::fetchModelName);
+    }
+
+    private String fetchModelName(Long modelId) {
+        try {
+            ApiRespond<Map<String, Object>> response = restTemplate.exchange(
+                    vehicleCatalogUrl + "/vehicle-catalog/models/" + modelId,
+                    HttpMethod.GET,
+                    null,
+                    new ParameterizedTypeReference<ApiRespond<Map<String, Object>>>() {
+                    }).getBody();
+            if (response != null && response.getData() != null) {
+                return (String) response.getData().get("modelName");
+            }
+        } catch (Exception e) {
+            log.warn("Failed to fetch model name for id {}: {}", modelId, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Xóa cache của variant (và tên model) khi vehicle-service báo có thay đổi.
+     */
+    public void invalidate(Long variantId, Long modelId) {
+        if (variantId != null) {
+            variants.invalidate(variantId);
+            inFlight.remove(variantId);
+        }
+        if (modelId != null) {
+            modelNames.invalidate(modelId);
+        }
+    }
+
+    public void invalidateAll() {
+        variants.invalidateAll();
+        modelNames.invalidateAll();
+        inFlight.clear();
+    }
+}
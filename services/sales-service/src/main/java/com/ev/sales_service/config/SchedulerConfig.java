@@ -15,7 +15,7 @@ public class SchedulerConfig {
     @Autowired
     private QuotationService quotationService;
 
-    @Scheduled(cron = "0 0 2 * * ?") // Chạy mỗi ngày lúc 2:00 AM
+    @Scheduled(cron = "${app.quotation.expiry.cron:0 0 2 * * ?}") // Mặc định chạy mỗi ngày lúc 2:00 AM
     public void expireOldQuotations() {
         log.info("Starting expired quotations cleanup...");
         quotationService.expireOldQuotations();
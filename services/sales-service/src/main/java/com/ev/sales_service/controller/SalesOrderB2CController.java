@@ -4,6 +4,7 @@ import com.ev.sales_service.dto.request.CreateOrderFromDepositRequest;
 import com.ev.sales_service.dto.request.OrderItemRequest;
 import com.ev.sales_service.dto.response.SalesContractResponse;
 import com.ev.sales_service.dto.response.SalesOrderB2CResponse;
+import com.ev.sales_service.dto.response.SalesReportingPage;
 import com.ev.sales_service.service.Interface.SalesOrderServiceB2C;
 import com.ev.common_lib.dto.respond.ApiRespond;
 import jakarta.validation.Valid;
@@ -50,6 +51,19 @@ public class SalesOrderB2CController {
         return ResponseEntity.ok(salesOrderServiceB2C.getAllSalesForReporting(since));
     }
 
+    /**
+     * Internal endpoint - reporting-service đồng bộ theo trang (keyset)
+     * GET /api/v1/sales-orders/internal/reporting-feed?since=...&afterDate=...&afterId=...&size=500
+     */
+    @GetMapping("/internal/reporting-feed")
+    public ResponseEntity<SalesReportingPage> getSalesReportingFeed(
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) java.time.LocalDateTime since,
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE_TIME) java.time.LocalDateTime afterDate,
+            @RequestParam(required = false) UUID afterId,
+            @RequestParam(defaultValue = "500") int size) {
+        return ResponseEntity.ok(salesOrderServiceB2C.getSalesForReporting(since, afterDate, afterId, size));
+    }
+
     @PostMapping("/b2c/from-quotation/{quotationId}")
     public ResponseEntity<ApiRespond<SalesOrderB2CResponse>> createSalesOrderFromQuotation(
             @PathVariable UUID quotationId) {
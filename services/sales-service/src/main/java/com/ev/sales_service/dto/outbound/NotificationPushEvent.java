@@ -0,0 +1,18 @@
+package com.ev.sales_service.dto.outbound;
+
+import com.ev.sales_service.dto.response.NotificationDto;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sự kiện đẩy thông báo qua WebSocket: mang sẵn nội dung thông báo và topic STOMP đích,
+ * nên listener không cần đọc lại từ DB.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPushEvent {
+    private String destination; // Ví dụ: /topic/staff-notifications, /topic/dealer/{dealerId}
+    private NotificationDto notification;
+}
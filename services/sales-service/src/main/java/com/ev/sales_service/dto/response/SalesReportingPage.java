@@ -0,0 +1,23 @@
+package com.ev.sales_service.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Một trang dữ liệu đồng bộ báo cáo. Gửi lại (afterDate, afterId) của trang trước
+ * để lấy trang tiếp theo; hasMore = false khi đã hết dữ liệu.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesReportingPage {
+    private List<SalesReportingRecord> items;
+    private LocalDateTime nextAfterDate;
+    private UUID nextAfterId;
+    private boolean hasMore;
+}
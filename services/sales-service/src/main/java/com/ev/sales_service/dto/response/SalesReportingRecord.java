@@ -0,0 +1,30 @@
+package com.ev.sales_service.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Bản ghi gọn cho reporting-service (khớp các field của SaleEventDTO bên reporting).
+ * orderDate + orderId là khóa phân trang (keyset).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesReportingRecord {
+    private String orderId;
+    private Long variantId;
+    private String variantName;
+    private String modelName;
+    private UUID dealershipId;
+    private Long quantitySold;
+    private Double salePrice;
+    private Timestamp saleTimestamp;
+    private LocalDateTime orderDate;
+}
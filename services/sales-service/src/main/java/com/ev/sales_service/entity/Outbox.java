@@ -3,12 +3,15 @@ package com.ev.sales_service.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "outbox")
+@Table(name = "outbox", indexes = {
+        @Index(name = "idx_outbox_status_created", columnList = "status, createdAt")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -31,6 +34,7 @@ public class Outbox {
     private int attempts;
 
     private LocalDateTime lastAttemptAt;
+    private LocalDateTime nextAttemptAt; // Chưa tới thời điểm này thì chưa gửi lại (backoff)
     private LocalDateTime createdAt;
     private LocalDateTime sentAt;
 }
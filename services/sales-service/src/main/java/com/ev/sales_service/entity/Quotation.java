@@ -11,7 +11,9 @@ import java.util.Set;
 import java.util.UUID;
 
 @Entity
-@Table(name = "quotations")
+@Table(name = "quotations", indexes = {
+        @Index(name = "idx_quotations_status_valid_until", columnList = "status, valid_until")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
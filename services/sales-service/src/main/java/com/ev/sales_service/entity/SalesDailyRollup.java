@@ -0,0 +1,59 @@
+package com.ev.sales_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Doanh số đã giao (DELIVERED) cộng dồn theo ngày đặt hàng / variant / đại lý.
+ * Được cập nhật tăng dần khi đơn chuyển sang DELIVERED (xem SalesRollupService).
+ */
+@Entity
+@Table(name = "sales_daily_rollup", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollup_day_variant_dealer", columnNames = { "sale_date", "variant_id", "dealer_id" })
+}, indexes = {
+        @Index(name = "idx_rollup_variant_date", columnList = "variant_id, sale_date"),
+        @Index(name = "idx_rollup_dealer_date", columnList = "dealer_id, sale_date")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SalesDailyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sale_date", nullable = false)
+    private LocalDate saleDate;
+
+    @Column(name = "variant_id", nullable = false)
+    private Long variantId;
+
+    @Column(name = "dealer_id", nullable = false, columnDefinition = "BINARY(16)")
+    private UUID dealerId;
+
+    @Column(name = "quantity", nullable = false)
+    private Long quantity;
+
+    @Column(name = "total_amount", precision = 19, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    @Column(name = "model_name", length = 200)
+    private String modelName;
+
+    @Column(name = "variant_name", length = 200)
+    private String variantName;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -13,7 +13,9 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "sales_orders")
+@Table(name = "sales_orders", indexes = {
+        @Index(name = "idx_sales_orders_date_id", columnList = "order_date, order_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
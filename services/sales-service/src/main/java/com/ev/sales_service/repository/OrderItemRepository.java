@@ -23,5 +23,12 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, UUID> {
     @Query("SELECT oi FROM OrderItem oi WHERE oi.salesOrder.orderId IN :orderIds")
     List<OrderItem> findByOrderIds(@Param("orderIds") List<UUID> orderIds);
 
+    /**
+     * Dòng hàng rút gọn cho đồng bộ báo cáo: [orderId, variantId, modelName, variantName, quantity].
+     */
+    @Query("SELECT oi.salesOrder.orderId, oi.variantId, oi.modelName, oi.variantName, oi.quantity "
+            + "FROM OrderItem oi WHERE oi.salesOrder.orderId IN :orderIds")
+    List<Object[]> findReportingLinesByOrderIds(@Param("orderIds") List<UUID> orderIds);
+
     boolean existsByVariantIdAndSalesOrder_OrderId(Long variantId, UUID orderId);
 }
\ No newline at end of file
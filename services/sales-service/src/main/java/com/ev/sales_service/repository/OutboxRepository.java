@@ -2,22 +2,33 @@ package com.ev.sales_service.repository;
 
 import com.ev.sales_service.entity.Outbox;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import jakarta.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OutboxRepository extends JpaRepository<Outbox, String> {
 
-    List<Outbox> findByStatusOrderByCreatedAtAsc(String status, Pageable pageable);
+    /**
+     * Lấy (và khóa) một lô sự kiện NEW đã tới hạn gửi; các instance khác bỏ qua các dòng đang bị khóa.
+     */
+    @Query(value = "SELECT * FROM outbox WHERE status = 'NEW' "
+            + "AND (next_attempt_at IS NULL OR next_attempt_at <= :now) "
+            + "ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Outbox> claimBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
 
-    // Optional: mark as SENDING atomically to avoid multiple workers picking same rows
     @Modifying
-    @Query("update Outbox o set o.status = ?2 where o.id = ?1 and o.status = ?3")
-    int markStatusIfCurrent(String id, String newStatus, String currentStatus);
+    @Query("update Outbox o set o.status = 'SENT', o.sentAt = :now, o.lastAttemptAt = :now, "
+            + "o.attempts = o.attempts + 1 where o.id in :ids")
+    int markSent(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    long countByStatus(String status);
+
+    Optional<Outbox> findFirstByStatusOrderByCreatedAtAsc(String status);
 }
@@ -3,6 +3,7 @@ package com.ev.sales_service.repository;
 import com.ev.sales_service.entity.Promotion;
 import com.ev.sales_service.enums.PromotionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -12,6 +13,23 @@ import java.util.UUID;
 
 public interface PromotionRepository extends JpaRepository<Promotion, UUID> {
     List<Promotion> findByStatus(PromotionStatus status);
+
+    // Chuyển sang EXPIRED các KM đã quá hạn (trừ KM đã xóa / đã hết hạn)
+    @Modifying
+    @Query("UPDATE Promotion p SET p.status = :expired WHERE p.endDate < :now "
+           + "AND p.status NOT IN (:expired, :deleted)")
+    int expirePromotions(@Param("now") LocalDateTime now,
+                         @Param("expired") PromotionStatus expired,
+                         @Param("deleted") PromotionStatus deleted);
+
+    // Chuyển trạng thái các KM đang trong thời gian hiệu lực (DRAFT -> INACTIVE, NEAR -> ACTIVE)
+    @Modifying
+    @Query("UPDATE Promotion p SET p.status = :to WHERE p.status = :from "
+           + "AND p.startDate < :now AND p.endDate > :now")
+    int transitionStarted(@Param("now") LocalDateTime now,
+                          @Param("from") PromotionStatus from,
+                          @Param("to") PromotionStatus to);
+
     @Query("SELECT p FROM Promotion p WHERE p.status = 'ACTIVE' AND " +
            "p.startDate <= :currentDate AND p.endDate >= :currentDate")
     List<Promotion> findActivePromotions(@Param("currentDate") LocalDateTime currentDate);
@@ -3,12 +3,14 @@ package com.ev.sales_service.repository;
 import com.ev.sales_service.entity.Quotation;
 import com.ev.sales_service.enums.QuotationStatus;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.UUID;
 import java.util.List;
 
@@ -42,6 +44,28 @@ public interface QuotationRepository extends JpaRepository<Quotation, UUID>, Jpa
     List<Quotation> findExpiringQuotations(@Param("now") LocalDateTime now,
                                          @Param("threshold") LocalDateTime threshold);
 
+    // Hết hạn 1 lô báo giá đã quá validUntil (PENDING/SENT), trả về số dòng đã cập nhật
+    @Modifying
+    @Query(value = "UPDATE quotations SET status = 'EXPIRED' " +
+            "WHERE status IN ('PENDING', 'SENT') AND valid_until < :now LIMIT :limit", nativeQuery = true)
+    int expireDueBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Hết hạn 1 báo giá nếu vẫn còn ở trạng thái chờ và đã tới validUntil
+    @Modifying
+    @Query("UPDATE Quotation q SET q.status = :expired WHERE q.quotationId = :id " +
+            "AND q.status IN :statuses AND q.validUntil <= :now")
+    int expireIfDue(@Param("id") UUID id,
+                    @Param("statuses") Collection<QuotationStatus> statuses,
+                    @Param("expired") QuotationStatus expired,
+                    @Param("now") LocalDateTime now);
+
+    // [quotationId, validUntil] của các báo giá sẽ hết hạn trong khoảng thời gian
+    @Query("SELECT q.quotationId, q.validUntil FROM Quotation q " +
+            "WHERE q.status IN :statuses AND q.validUntil BETWEEN :from AND :to")
+    List<Object[]> findExpiryCandidates(@Param("statuses") Collection<QuotationStatus> statuses,
+                                        @Param("from") LocalDateTime from,
+                                        @Param("to") LocalDateTime to);
+
     // Kiểm tra quotation đã accepted chưa
     boolean existsByQuotationIdAndStatus(UUID quotationId, QuotationStatus status);
 
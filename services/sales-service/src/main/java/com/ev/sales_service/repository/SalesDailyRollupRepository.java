@@ -0,0 +1,70 @@
+package com.ev.sales_service.repository;
+
+import com.ev.sales_service.entity.SalesDailyRollup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface SalesDailyRollupRepository extends JpaRepository<SalesDailyRollup, Long> {
+
+    /**
+     * Cộng dồn một dòng hàng đã giao vào rollup của ngày (tạo mới nếu chưa có).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO sales_daily_rollup "
+            + "(sale_date, variant_id, dealer_id, quantity, total_amount, order_count, model_name, variant_name, updated_at) "
+            + "VALUES (:saleDate, :variantId, :dealerId, :quantity, :amount, 1, :modelName, :variantName, NOW()) "
+            + "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), "
+            + "total_amount = total_amount + VALUES(total_amount), order_count = order_count + 1, "
+            + "model_name = COALESCE(VALUES(model_name), model_name), "
+            + "variant_name = COALESCE(VALUES(variant_name), variant_name), updated_at = NOW()", nativeQuery = true)
+    void addDelivered(@Param("saleDate") LocalDate saleDate,
+                      @Param("variantId") Long variantId,
+                      @Param("dealerId") byte[] dealerId,
+                      @Param("quantity") long quantity,
+                      @Param("amount") BigDecimal amount,
+                      @Param("modelName") String modelName,
+                      @Param("variantName") String variantName);
+
+    /**
+     * Dựng lại rollup từ các đơn đã DELIVERED (chạy 1 lần khi bảng còn trống).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO sales_daily_rollup "
+            + "(sale_date, variant_id, dealer_id, quantity, total_amount, order_count, model_name, variant_name, updated_at) "
+            + "SELECT DATE(so.order_date), oi.variant_id, so.dealer_id, SUM(COALESCE(oi.quantity, 0)), "
+            + "SUM(COALESCE(oi.final_price, 0)), COUNT(DISTINCT so.order_id), MAX(oi.model_name), MAX(oi.variant_name), NOW() "
+            + "FROM sales_orders so JOIN order_items oi ON oi.order_id = so.order_id "
+            + "WHERE so.order_status = 'DELIVERED' OR so.order_status_b2c = 'DELIVERED' "
+            + "GROUP BY DATE(so.order_date), oi.variant_id, so.dealer_id", nativeQuery = true)
+    int backfillFromOrders();
+
+    @Query("SELECT r FROM SalesDailyRollup r WHERE r.saleDate BETWEEN :startDate AND :endDate "
+            + "AND (:variantId IS NULL OR r.variantId = :variantId) "
+            + "AND (:dealerId IS NULL OR r.dealerId = :dealerId) "
+            + "ORDER BY r.saleDate DESC, r.variantId ASC")
+    List<SalesDailyRollup> findHistory(@Param("variantId") Long variantId,
+                                       @Param("dealerId") UUID dealerId,
+                                       @Param("startDate") LocalDate startDate,
+                                       @Param("endDate") LocalDate endDate,
+                                       Pageable pageable);
+
+    /**
+     * Tổng số lượng bán theo variant: [variantId, SUM(quantity)].
+     */
+    @Query("SELECT r.variantId, SUM(r.quantity) FROM SalesDailyRollup r "
+            + "WHERE r.saleDate BETWEEN :startDate AND :endDate GROUP BY r.variantId")
+    List<Object[]> sumQuantityByVariant(@Param("startDate") LocalDate startDate,
+                                        @Param("endDate") LocalDate endDate);
+}
@@ -21,6 +21,8 @@ public interface SalesOrderRepositoryB2C extends JpaRepository<SalesOrder, UUID>
 
     List<SalesOrder> findByCustomerIdAndTypeOder(Long customerId, SaleOderType typeOder);
 
+    List<SalesOrder> findByOrderDateAfter(LocalDateTime since);
+
     List<SalesOrder> findByOrderStatusAndTypeOder(String orderStatus, SaleOderType typeOder);
 
     @Query("SELECT so FROM SalesOrder so WHERE so.orderDate BETWEEN :startDate AND :endDate AND so.typeOder = :typeOder")
@@ -36,6 +38,17 @@ public interface SalesOrderRepositoryB2C extends JpaRepository<SalesOrder, UUID>
     // Phân trang cho Admin lấy tất cả đơn hàng B2C
     Page<SalesOrder> findByTypeOder(SaleOderType typeOder, Pageable pageable);
 
+    /**
+     * Keyset cho đồng bộ báo cáo: các đơn sau (afterDate, afterId), sắp theo (orderDate, orderId).
+     * Chỉ lấy cột cần thiết: [orderId, orderDate, dealerId, totalAmount].
+     */
+    @Query("SELECT so.orderId, so.orderDate, so.dealerId, so.totalAmount FROM SalesOrder so "
+            + "WHERE so.orderDate > :afterDate OR (so.orderDate = :afterDate AND so.orderId > :afterId) "
+            + "ORDER BY so.orderDate ASC, so.orderId ASC")
+    List<Object[]> findReportingSlice(@Param("afterDate") LocalDateTime afterDate,
+                                      @Param("afterId") UUID afterId,
+                                      Pageable pageable);
+
     // Phân trang với filter theo status
     Page<SalesOrder> findByTypeOderAndOrderStatusB2C(SaleOderType typeOder, OrderStatusB2C orderStatusB2C, Pageable pageable);
 }
\ No newline at end of file
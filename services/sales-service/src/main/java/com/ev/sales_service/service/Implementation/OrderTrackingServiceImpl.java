@@ -11,6 +11,7 @@ import com.ev.sales_service.enums.OrderTrackingStatus;
 import com.ev.sales_service.repository.OrderTrackingRepository;
 import com.ev.sales_service.repository.SalesOrderRepositoryB2C;
 import com.ev.sales_service.service.Interface.OrderTrackingService;
+import com.ev.sales_service.service.SalesRollupService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
@@ -30,6 +31,7 @@ public class OrderTrackingServiceImpl implements OrderTrackingService {
 
     private final OrderTrackingRepository orderTrackingRepository;
     private final SalesOrderRepositoryB2C salesOrderRepository;
+    private final SalesRollupService salesRollupService;
     private final ModelMapper modelMapper;
 
     @Override
@@ -55,6 +57,7 @@ public class OrderTrackingServiceImpl implements OrderTrackingService {
         if (request.getStatusB2C() == OrderTrackingStatus.DELIVERED) {
             salesOrder.setOrderStatusB2C(OrderStatusB2C.DELIVERED);
             salesOrderRepository.save(salesOrder);
+            salesRollupService.recordDelivered(salesOrder);
         }
 
         log.info("Tracking record created successfully: {}", savedTracking.getTrackId());
@@ -86,6 +89,7 @@ public class OrderTrackingServiceImpl implements OrderTrackingService {
         if (request.getStatusB2C() == OrderTrackingStatus.DELIVERED) {
             salesOrder.setOrderStatusB2C(OrderStatusB2C.DELIVERED);
             salesOrderRepository.save(salesOrder);
+            salesRollupService.recordDelivered(salesOrder);
         }
 
         OrderTracking updatedTracking = orderTrackingRepository.save(orderTracking);
@@ -18,6 +18,7 @@ import com.ev.sales_service.client.CustomerClient;
 import com.ev.sales_service.service.Interface.EmailService;
 import com.ev.sales_service.service.Interface.QuotationService;
 import com.ev.sales_service.service.Interface.SalesOrderServiceB2C;
+import com.ev.sales_service.service.QuotationExpiryService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
@@ -49,6 +50,7 @@ public class QuotationServiceImpl implements QuotationService {
     private final ModelMapper modelMapper;
 
     private final SalesOrderServiceB2C salesOrderServiceB2C;
+    private final QuotationExpiryService quotationExpiryService;
     @Autowired
     private final ObjectMapper objectMapper;
 
@@ -148,6 +150,7 @@ public class QuotationServiceImpl implements QuotationService {
         quotation.setStatus(QuotationStatus.PENDING); // PENDING = đã gửi cho quản lý duyệt
 
         Quotation updatedQuotation = quotationRepository.save(quotation);
+        quotationExpiryService.schedule(quotationId, updatedQuotation.getValidUntil());
 
         // Gửi email cho khách hàng
         try {
@@ -276,17 +279,9 @@ public class QuotationServiceImpl implements QuotationService {
 
 
     @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED) // Mỗi lô chạy trong transaction riêng
     public void expireOldQuotations() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Quotation> expiringQuotations = quotationRepository.findExpiringQuotations(now, now.plusDays(1));
-
-        for (Quotation quotation : expiringQuotations) {
-            if (quotation.getValidUntil().isBefore(now)) {
-                quotation.setStatus(QuotationStatus.EXPIRED);
-                quotationRepository.save(quotation);
-                log.info("Quotation {} expired", quotation.getQuotationId());
-            }
-        }
+        quotationExpiryService.expireDue();
     }
 
     // Helper methods
@@ -10,6 +10,7 @@ import com.ev.common_lib.event.OrderIssueReportedEvent;
 import com.ev.common_lib.event.B2BOrderPlacedEvent;
 import com.ev.common_lib.event.OrderCancelledEvent;
 import com.ev.common_lib.event.OrderDeliveredEvent;
+import com.ev.sales_service.client.VehicleCatalogClient;
 import com.ev.sales_service.dto.request.CreateB2BOrderRequest;
 import com.ev.sales_service.dto.request.ReportIssueRequest;
 import com.ev.sales_service.dto.request.ResolveDisputeRequest;
@@ -27,6 +28,8 @@ import com.ev.sales_service.repository.OutboxRepository;
 import com.ev.sales_service.repository.SalesOrderRepositoryB2B;
 import com.ev.sales_service.repository.NotificationRepository;
 import com.ev.sales_service.service.Interface.SalesOrderServiceB2B;
+import com.ev.sales_service.service.NotificationPublisher;
+import com.ev.sales_service.service.SalesRollupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
@@ -72,14 +75,14 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
     // private final QuotationRepository quotationRepository; // Bỏ comment nếu bạn
     // dùng logic báo giá
     private final RestTemplate restTemplate;
+    private final VehicleCatalogClient vehicleCatalogClient;
+    private final SalesRollupService salesRollupService;
 
     private final OutboxRepository outboxRepository;
     private final NotificationRepository notificationRepository;
+    private final NotificationPublisher notificationPublisher;
     private final ObjectMapper objectMapper;
 
-    @Value("${app.services.catalog.url}")
-    private String vehicleCatalogUrl;
-
     @Value("${app.services.inventory.url}")
     private String inventoryServiceUrl;
 
@@ -101,35 +104,20 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
         List<OrderItem> orderItems = new ArrayList<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
 
+        // Lấy giá cho tất cả các mục hàng trong 1 lần gọi vehicle-catalog
+        Map<Long, VariantDetailDto> variants = vehicleCatalogClient.getVariants(request.getItems().stream()
+                .map(CreateB2BOrderRequest.Item::getVariantId)
+                .collect(Collectors.toList()));
+
         // Lặp qua các mục hàng
         for (CreateB2BOrderRequest.Item itemRequest : request.getItems()) {
 
-            String url = vehicleCatalogUrl + "/vehicle-catalog/variants/" + itemRequest.getVariantId();
-            ResponseEntity<ApiRespond<VariantDetailDto>> response;
-            try {
-                // Dùng .exchange() để đọc được cấu trúc ApiRespond<T>
-                response = restTemplate.exchange(
-                        url,
-                        HttpMethod.GET,
-                        null, // Không có body
-                        new ParameterizedTypeReference<ApiRespond<VariantDetailDto>>() {
-                        });
-            } catch (Exception e) {
-                log.error("Error calling vehicle-catalog service for variant {}: {}", itemRequest.getVariantId(),
-                        e.getMessage());
-                throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
-            }
-
-            // Kiểm tra response
-            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
-                    || response.getBody().getData() == null) {
-                log.error("Invalid response from vehicle-catalog for variant {}: {}", itemRequest.getVariantId(),
-                        response.getStatusCode());
+            VariantDetailDto variantDetails = variants.get(itemRequest.getVariantId());
+            if (variantDetails == null) {
+                log.error("Variant {} not found in vehicle-catalog", itemRequest.getVariantId());
                 throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
             }
 
-            VariantDetailDto variantDetails = response.getBody().getData();
-
             // Logic lấy giá
             BigDecimal unitPrice = variantDetails.getWholesalePrice();
             if (unitPrice == null) {
@@ -207,6 +195,7 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
                     .build();
 
             notificationRepository.save(pendingNotification);
+            notificationPublisher.publish(pendingNotification);
             log.info("Đã tạo thông báo (UI) cho đơn hàng PENDING: {}", savedOrder.getOrderId());
 
         } catch (Exception e) {
@@ -306,32 +295,17 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
         shipmentRequest.setDealerId(order.getDealerId());
 
         log.info("Bắt đầu làm giàu DTO giao hàng cho Order ID: {}", orderId);
+        Map<Long, VariantDetailDto> variants = vehicleCatalogClient.getVariants(shipmentRequest.getItems().stream()
+                .map(ShipmentRequestDto.ShipmentItem::getVariantId)
+                .collect(Collectors.toList()));
         for (ShipmentRequestDto.ShipmentItem item : shipmentRequest.getItems()) {
 
-            String url = vehicleCatalogUrl + "/vehicle-catalog/variants/" + item.getVariantId();
-            ResponseEntity<ApiRespond<VariantDetailDto>> response;
-            try {
-                response = restTemplate.exchange(
-                        url,
-                        HttpMethod.GET,
-                        null,
-                        new ParameterizedTypeReference<ApiRespond<VariantDetailDto>>() {
-                        });
-            } catch (Exception e) {
-                log.error("Lỗi khi gọi vehicle-catalog service (cho variant {}): {}", item.getVariantId(),
-                        e.getMessage());
-                throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
-            }
-
-            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
-                    || response.getBody().getData() == null) {
-                log.error("Response không hợp lệ từ vehicle-catalog (cho variant {}): {}", item.getVariantId(),
-                        response.getStatusCode());
+            VariantDetailDto variantDetails = variants.get(item.getVariantId());
+            if (variantDetails == null) {
+                log.error("Không tìm thấy variant {} trong vehicle-catalog", item.getVariantId());
                 throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
             }
 
-            VariantDetailDto variantDetails = response.getBody().getData();
-
             // Gán dữ liệu làm giàu
             item.setModelId(variantDetails.getModelId());
             item.setModelName(variantDetails.getModelName());
@@ -418,6 +392,7 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
 
         order.setOrderStatus(OrderStatusB2B.DELIVERED);
         order.setDeliveryDate(LocalDateTime.now());
+        salesRollupService.recordDelivered(order);
 
         OrderTracking tracking = OrderTracking.builder()
                 .salesOrder(order)
@@ -515,6 +490,7 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
 
             if (existingDispute.isPresent()) {
                 log.warn("Thông báo khiếu nại cho đơn hàng {} đã tồn tại. Không tạo mới.", orderId);
+                notificationPublisher.publish(existingDispute.get());
             } else {
                 // 2. Chỉ tạo nếu chưa tồn tại
                 String message = String.format(
@@ -532,6 +508,7 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
                         .build();
 
                 notificationRepository.save(disputeNotification);
+                notificationPublisher.publish(disputeNotification);
                 log.info("Đã tạo thông báo (UI) cho đơn hàng DISPUTED: {}", orderId);
             }
 
@@ -718,6 +695,7 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
                     request.getNotes() != null ? request.getNotes() : "Không");
             order.setDeliveryDate(LocalDateTime.now());
             // (Bạn có thể cân nhắc phát ra sự kiện OrderDeliveredEvent ở đây)
+            salesRollupService.recordDelivered(order);
         } else { // IN_TRANSIT
             statusNote = "ĐÃ GIẢI QUYẾT (VẬN CHUYỂN LẠI)";
             notes = String.format(
@@ -891,18 +869,6 @@ public class SalesOrderServiceB2BImpl implements SalesOrderServiceB2B {
         }
     }
 
-    private VariantDetailDto callCatalogService(Long variantId) {
-        String url = vehicleCatalogUrl + "/vehicle-catalog/variants/" + variantId;
-        ResponseEntity<ApiRespond<VariantDetailDto>> response = restTemplate.exchange(
-                url, HttpMethod.GET, null, new ParameterizedTypeReference<ApiRespond<VariantDetailDto>>() {
-                });
-        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null
-                || response.getBody().getData() == null) {
-            throw new AppException(ErrorCode.DOWNSTREAM_SERVICE_UNAVAILABLE);
-        }
-        return response.getBody().getData();
-    }
-
     @Override
     @Transactional
     public void updatePaymentStatus(UUID orderId, PaymentStatus paymentStatus) {
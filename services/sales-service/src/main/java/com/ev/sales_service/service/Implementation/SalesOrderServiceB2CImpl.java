@@ -1,9 +1,11 @@
 package com.ev.sales_service.service.Implementation;
 
 import com.ev.common_lib.dto.respond.ApiRespond;
+import com.ev.common_lib.dto.vehicle.VariantDetailDto;
 import com.ev.common_lib.exception.AppException;
 import com.ev.common_lib.exception.ErrorCode;
 import com.ev.sales_service.client.CustomerClient;
+import com.ev.sales_service.client.VehicleCatalogClient;
 import com.ev.sales_service.dto.request.CreateOrderFromDepositRequest;
 import com.ev.sales_service.dto.request.SalesOrderB2CCreateRequest;
 import com.ev.sales_service.dto.response.*;
@@ -15,6 +17,8 @@ import com.ev.sales_service.repository.SalesOrderRepositoryB2C;
 import com.ev.sales_service.service.Interface.EmailService;
 import com.ev.sales_service.service.Interface.SalesContractService;
 import com.ev.sales_service.service.Interface.SalesOrderServiceB2C;
+import com.ev.sales_service.service.NotificationPublisher;
+import com.ev.sales_service.service.SalesRollupService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
@@ -29,8 +33,12 @@ import java.util.concurrent.CompletableFuture;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -53,21 +61,26 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
     private final EmailService emailService;
     private final CustomerClient customerClient;
     private final RestTemplate restTemplate;
+    private final VehicleCatalogClient vehicleCatalogClient;
+    private final SalesRollupService salesRollupService;
+    private final NotificationPublisher notificationPublisher;
     
     // Injected for Outbox/Notification
     private final com.ev.sales_service.repository.OutboxRepository outboxRepository;
     private final com.ev.sales_service.repository.NotificationRepository notificationRepository;
     private final ObjectMapper objectMapper;
 
+    private static final int REPORTING_MAX_PAGE_SIZE = 1000;
+    private static final LocalDateTime REPORTING_MIN_DATE = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final UUID REPORTING_MIN_ID = new UUID(0L, 0L);
+    private static final UUID REPORTING_MAX_ID = new UUID(-1L, -1L);
+
     @org.springframework.beans.factory.annotation.Value("${payment-service.url}")
     private String paymentServiceUrl;
 
     @org.springframework.beans.factory.annotation.Value("${dealer-service.url}")
     private String dealerServiceUrl;
 
-    @org.springframework.beans.factory.annotation.Value("${vehicle-service.uri}")
-    private String vehicleServiceUri;
-
     @org.springframework.beans.factory.annotation.Value("${reporting-service.url}")
     private String reportingServiceUrl;
 
@@ -142,6 +155,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
                     .build();
             
             notificationRepository.save(notification);
+            notificationPublisher.publish(notification);
             
             // 2. Publish B2COrderPlacedEvent to Outbox
             com.ev.common_lib.event.B2COrderPlacedEvent event = com.ev.common_lib.event.B2COrderPlacedEvent.builder()
@@ -355,21 +369,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
         String imageUrl = (String) metadata.get("imageUrl");
         if (imageUrl == null || imageUrl.isBlank() || "/placeholder-car.png".equals(imageUrl)) {
             // Try fetch from vehicle-service as fallback
-            try {
-                String variantUrl = vehicleServiceUri + "/vehicle-catalog/variants/" + variantId;
-                ApiRespond<Map<String, Object>> variantResponse = restTemplate.exchange(
-                        variantUrl,
-                        org.springframework.http.HttpMethod.GET,
-                        null,
-                        new org.springframework.core.ParameterizedTypeReference<ApiRespond<Map<String, Object>>>() {
-                        }).getBody();
-
-                if (variantResponse != null && variantResponse.getData() != null) {
-                    imageUrl = (String) variantResponse.getData().get("imageUrl");
-                }
-            } catch (Exception e) {
-                log.warn("Failed to fetch fallback image for variant {}: {}", variantId, e.getMessage());
-            }
+            imageUrl = fetchVariantImage(variantId);
         }
         orderItem.setImageUrl(imageUrl);
 
@@ -410,6 +410,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
                     .build();
             
             notificationRepository.save(notification);
+            notificationPublisher.publish(notification);
             
             // 2. Publish B2COrderPlacedEvent to Outbox
             com.ev.common_lib.event.B2COrderPlacedEvent event = com.ev.common_lib.event.B2COrderPlacedEvent.builder()
@@ -509,6 +510,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
     @Override
     public List<SalesOrderB2CResponse> getSalesOrdersByDealer(UUID dealerId) {
         List<SalesOrder> salesOrders = salesOrderRepository.findByDealerIdAndTypeOder(dealerId, SaleOderType.B2C);
+        prefetchVariantImages(salesOrders);
         return salesOrders.stream()
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
@@ -517,6 +519,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
     @Override
     public List<SalesOrderB2CResponse> getSalesOrdersByCustomer(Long customerId) {
         List<SalesOrder> salesOrders = salesOrderRepository.findByCustomerIdAndTypeOder(customerId, SaleOderType.B2C);
+        prefetchVariantImages(salesOrders);
         return salesOrders.stream()
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
@@ -925,17 +928,10 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
     
     // Add helper if missing
     private String fetchVariantName(Long variantId) {
-         try {
-            String url = vehicleServiceUri + "/vehicle-catalog/variants/" + variantId;
-            ApiRespond<Map<String, Object>> response = restTemplate.exchange(
-                    url,
-                    org.springframework.http.HttpMethod.GET,
-                    null,
-                    new org.springframework.core.ParameterizedTypeReference<ApiRespond<Map<String, Object>>>() {}
-            ).getBody();
-            if (response != null && response.getData() != null) {
-                return (String) response.getData().get("versionName");
-            }
+        try {
+            return vehicleCatalogClient.getVariant(variantId)
+                    .map(VariantDetailDto::getVersionName)
+                    .orElse("Unknown Variant");
         } catch (Exception e) {
             log.warn("Failed to fetch variant name: {}", e.getMessage());
         }
@@ -1023,6 +1019,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
 
         order.setOrderStatusB2C(OrderStatusB2C.DELIVERED);
         salesOrderRepository.save(order);
+        salesRollupService.recordDelivered(order);
 
         return mapToResponse(order);
     }
@@ -1085,6 +1082,7 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
             orderPage = salesOrderRepository.findByTypeOder(SaleOderType.B2C, pageable);
         }
 
+        prefetchVariantImages(orderPage.getContent());
         return orderPage.map(this::mapToResponse);
     }
 
@@ -1092,16 +1090,9 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
         if (variantId == null)
             return "/placeholder-car.png";
         try {
-            String variantUrl = vehicleServiceUri + "/vehicle-catalog/variants/" + variantId;
-            ApiRespond<Map<String, Object>> variantResponse = restTemplate.exchange(
-                    variantUrl,
-                    org.springframework.http.HttpMethod.GET,
-                    null,
-                    new org.springframework.core.ParameterizedTypeReference<ApiRespond<Map<String, Object>>>() {
-                    }).getBody();
-
-            if (variantResponse != null && variantResponse.getData() != null) {
-                return (String) ((Map<String, Object>) variantResponse.getData()).get("imageUrl");
+            Optional<String> imageUrl = vehicleCatalogClient.getVariant(variantId).map(VariantDetailDto::getImageUrl);
+            if (imageUrl.isPresent()) {
+                return imageUrl.get();
             }
         } catch (Exception e) {
             log.warn("Failed to fetch fallback image for variant {}: {}", variantId, e.getMessage());
@@ -1109,42 +1100,115 @@ public class SalesOrderServiceB2CImpl implements SalesOrderServiceB2C {
         return "/placeholder-car.png";
     }
 
+    /**
+     * Nạp trước (1 request) ảnh của các variant mà order item chưa có ảnh,
+     * để mapToResponse đọc từ cache thay vì gọi vehicle-service cho từng item.
+     */
+    private void prefetchVariantImages(Collection<SalesOrder> orders) {
+        Set<Long> variantIds = new HashSet<>();
+        for (SalesOrder order : orders) {
+            if (order.getOrderItems() == null) {
+                continue;
+            }
+            for (OrderItem item : order.getOrderItems()) {
+                String imageUrl = item.getImageUrl();
+                if (item.getVariantId() != null
+                        && (imageUrl == null || imageUrl.isBlank() || "/placeholder-car.png".equals(imageUrl))) {
+                    variantIds.add(item.getVariantId());
+                }
+            }
+        }
+        if (variantIds.isEmpty()) {
+            return;
+        }
+        try {
+            vehicleCatalogClient.getVariants(variantIds);
+        } catch (Exception e) {
+            log.warn("Failed to prefetch variant images {}: {}", variantIds, e.getMessage());
+        }
+    }
+
     @Override
     public List<SalesOrderB2CResponse> getAllSalesForReporting(java.time.LocalDateTime since) {
-        List<com.ev.sales_service.entity.SalesOrder> orders;
-        if (since != null) {
-            // Assuming orderDate is the main timestamp. ideally we use updatedAt if available.
-            // Using orderDate for now as per entity definition availability.
-            orders = salesOrderRepository.findAll().stream()
-                    .filter(o -> o.getOrderDate().isAfter(since))
-                    .collect(Collectors.toList());
-        } else {
-            orders = salesOrderRepository.findAll();
-        }
+        // Lọc "since" ngay trong DB; endpoint theo trang (getSalesForReporting) nên được ưu tiên
+        List<com.ev.sales_service.entity.SalesOrder> orders = (since != null)
+                ? salesOrderRepository.findByOrderDateAfter(since)
+                : salesOrderRepository.findAll();
         
+        prefetchVariantImages(orders);
         return orders.stream()
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
     }
 
-    private String fetchModelName(Long modelId) {
-        if (modelId == null) return "Unknown Model";
-        try {
-            String url = vehicleServiceUri + "/vehicle-catalog/models/" + modelId;
-            ApiRespond<Map<String, Object>> response = restTemplate.exchange(
-                    url,
-                    org.springframework.http.HttpMethod.GET,
-                    null,
-                    new org.springframework.core.ParameterizedTypeReference<ApiRespond<Map<String, Object>>>() {
-                    }).getBody();
+    @Override
+    @Transactional(readOnly = true)
+    public SalesReportingPage getSalesForReporting(LocalDateTime since, LocalDateTime afterDate, UUID afterId,
+            int size) {
+        int pageSize = Math.max(1, Math.min(size, REPORTING_MAX_PAGE_SIZE));
+
+        // Con trỏ của trang trước được ưu tiên; nếu chưa có thì bắt đầu ngay sau "since" (không bao gồm)
+        LocalDateTime cursorDate;
+        UUID cursorId;
+        if (afterDate != null) {
+            cursorDate = afterDate;
+            cursorId = afterId != null ? afterId : REPORTING_MIN_ID;
+        } else if (since != null) {
+            cursorDate = since;
+            cursorId = REPORTING_MAX_ID;
+        } else {
+            cursorDate = REPORTING_MIN_DATE;
+            cursorId = REPORTING_MIN_ID;
+        }
 
-            if (response != null && response.getData() != null) {
-                return (String) response.getData().get("modelName");
-            }
-        } catch (Exception e) {
-            log.warn("Failed to fetch model name for id {}: {}", modelId, e.getMessage());
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<Object[]> rows = salesOrderRepository.findReportingSlice(cursorDate, cursorId,
+                org.springframework.data.domain.PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (rows.isEmpty()) {
+            return new SalesReportingPage(List.of(), cursorDate, cursorId, false);
         }
-        return "Unknown Model";
+
+        List<UUID> orderIds = rows.stream().map(r -> (UUID) r[0]).collect(Collectors.toList());
+        Map<UUID, Object[]> firstLine = new java.util.HashMap<>();
+        Map<UUID, Long> quantities = new java.util.HashMap<>();
+        for (Object[] line : orderItemRepository.findReportingLinesByOrderIds(orderIds)) {
+            UUID orderId = (UUID) line[0];
+            firstLine.putIfAbsent(orderId, line);
+            long quantity = line[4] != null ? ((Integer) line[4]).longValue() : 0L;
+            quantities.merge(orderId, quantity, Long::sum);
+        }
+
+        List<SalesReportingRecord> items = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            UUID orderId = (UUID) row[0];
+            LocalDateTime orderDate = (LocalDateTime) row[1];
+            BigDecimal totalAmount = (BigDecimal) row[3];
+            Object[] line = firstLine.get(orderId);
+            items.add(SalesReportingRecord.builder()
+                    .orderId(orderId.toString())
+                    .orderDate(orderDate)
+                    .saleTimestamp(java.sql.Timestamp.valueOf(orderDate))
+                    .dealershipId((UUID) row[2])
+                    .salePrice(totalAmount != null ? totalAmount.doubleValue() : 0.0)
+                    .variantId(line != null ? (Long) line[1] : null)
+                    .modelName(line != null ? (String) line[2] : null)
+                    .variantName(line != null ? (String) line[3] : null)
+                    .quantitySold(quantities.getOrDefault(orderId, 1L))
+                    .build());
+        }
+
+        Object[] last = rows.get(rows.size() - 1);
+        return new SalesReportingPage(items, (LocalDateTime) last[1], (UUID) last[0], hasMore);
+    }
+
+    private String fetchModelName(Long modelId) {
+        if (modelId == null) return "Unknown Model";
+        String modelName = vehicleCatalogClient.getModelName(modelId);
+        return modelName != null ? modelName : "Unknown Model";
     }
 
     private void sendSalesReport(SalesOrder salesOrder, String modelName, Long variantId, String dealerName) {
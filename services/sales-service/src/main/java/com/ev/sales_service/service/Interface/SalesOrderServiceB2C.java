@@ -6,6 +6,7 @@ import com.ev.sales_service.dto.request.OrderItemRequest;
 import com.ev.sales_service.dto.request.SalesOrderB2CCreateRequest;
 import com.ev.sales_service.dto.response.SalesContractResponse;
 import com.ev.sales_service.dto.response.SalesOrderB2CResponse;
+import com.ev.sales_service.dto.response.SalesReportingPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -60,4 +61,11 @@ public interface SalesOrderServiceB2C {
      * @param since Optional: Fetch orders modified/created after this date
      */
     List<SalesOrderB2CResponse> getAllSalesForReporting(java.time.LocalDateTime since);
+
+    /**
+     * Đồng bộ báo cáo theo trang (keyset): các đơn có orderDate sau since,
+     * bắt đầu sau con trỏ (afterDate, afterId) của trang trước.
+     */
+    SalesReportingPage getSalesForReporting(java.time.LocalDateTime since, java.time.LocalDateTime afterDate,
+            UUID afterId, int size);
 }
\ No newline at end of file
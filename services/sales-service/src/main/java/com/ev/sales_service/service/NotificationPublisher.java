@@ -0,0 +1,71 @@
+package com.ev.sales_service.service;
+
+import com.ev.common_lib.exception.AppException;
+import com.ev.common_lib.exception.ErrorCode;
+import com.ev.sales_service.dto.outbound.NotificationPushEvent;
+import com.ev.sales_service.entity.Notification;
+import com.ev.sales_service.entity.Outbox;
+import com.ev.sales_service.enums.NotificationAudience;
+import com.ev.sales_service.mapper.NotificationMapper;
+import com.ev.sales_service.repository.OutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Ghi sự kiện NotificationCreated (kèm nội dung thông báo) vào outbox, trong cùng transaction
+ * với việc lưu Notification. NotificationPushListener nhận sự kiện và đẩy qua WebSocket.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationPublisher {
+
+    public static final String STAFF_TOPIC = "/topic/staff-notifications";
+    public static final String DEALER_TOPIC_PREFIX = "/topic/dealer/";
+
+    private final OutboxRepository outboxRepository;
+    private final NotificationMapper notificationMapper;
+    private final ObjectMapper objectMapper;
+
+    public void publish(Notification notification) {
+        String destination = destinationOf(notification);
+        if (destination == null) {
+            log.warn("Thông báo {} không có topic đích (audience {}), bỏ qua đẩy WebSocket.",
+                    notification.getId(), notification.getAudience());
+            return;
+        }
+
+        try {
+            NotificationPushEvent event = new NotificationPushEvent(destination, notificationMapper.toDto(notification));
+            String eventId = UUID.randomUUID().toString();
+            outboxRepository.save(Outbox.builder()
+                    .id(eventId)
+                    .aggregateType("Notification")
+                    .aggregateId(notification.getId().toString())
+                    .eventType("NotificationCreated")
+                    .payload(objectMapper.writeValueAsString(event))
+                    .status("NEW")
+                    .attempts(0)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (Exception e) {
+            log.error("CRITICAL: Failed to create outbox event for notification {}", notification.getId(), e);
+            throw new AppException(ErrorCode.DATABASE_ERROR);
+        }
+    }
+
+    private String destinationOf(Notification notification) {
+        if (notification.getAudience() == NotificationAudience.STAFF) {
+            return STAFF_TOPIC;
+        }
+        if (notification.getAudience() == NotificationAudience.DEALER && notification.getDealerId() != null) {
+            return DEALER_TOPIC_PREFIX + notification.getDealerId();
+        }
+        return null;
+    }
+}
@@ -2,24 +2,41 @@ package com.ev.sales_service.service;
 
 import com.ev.sales_service.entity.Outbox;
 import com.ev.sales_service.repository.OutboxRepository;
-import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay duy nhất gửi các sự kiện trong bảng outbox lên Kafka.
+ * - Mỗi vòng lấy một lô NEW đã tới hạn bằng SELECT ... FOR UPDATE SKIP LOCKED
+ * (nhiều instance chạy song song không lấy trùng dòng).
+ * - Gửi bất đồng bộ cả lô rồi mới chờ kết quả; các dòng gửi thành công được đánh dấu SENT bằng 1 câu UPDATE.
+ * - Dòng lỗi được hẹn gửi lại với backoff lũy thừa; quá số lần thử thì chuyển FAILED.
+ * - Metrics: outbox.pending, outbox.lag, outbox.publish.lag, outbox.sent, outbox.failed.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class OutboxProcessor {
 
     private final OutboxRepository outboxRepository;
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
     private static final String TOPIC = "promotion-events";
 
     private static final String TOPIC_ORDER_SHIPPED = "sales.orders.shipped";
@@ -30,41 +47,105 @@ public class OutboxProcessor {
     private static final String TOPIC_UNKNOWN = "sales.unknown_events";
     private static final String TOPIC_ORDER_ISSUE_REPORTED = "sales.orders.issue_reported";
     private static final String TOPIC_B2C_ORDER_PLACED = "sales.b2c.orders.placed";
+    private static final String TOPIC_PROMOTION_CHANGED = "sales.promotions.changed";
+    private static final String TOPIC_NOTIFICATION_PUSH = "sales.notifications.push";
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Timer publishLag;
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+
+    @Value("${outbox.dispatch.batch-size:200}")
+    private int batchSize;
+
+    @Value("${outbox.dispatch.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${outbox.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${outbox.retry.base-delay-ms:1000}")
+    private long baseDelayMs;
+
+    @Value("${outbox.retry.max-delay-ms:300000}")
+    private long maxDelayMs;
+
+    public OutboxProcessor(OutboxRepository outboxRepository, KafkaTemplate<String, String> kafkaTemplate,
+            TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+
+        this.sentCounter = Counter.builder("outbox.sent").register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.failed").register(meterRegistry);
+        this.publishLag = Timer.builder("outbox.publish.lag")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("outbox.pending", pendingCount, AtomicLong::get).register(meterRegistry);
+        TimeGauge.builder("outbox.lag", oldestPendingAgeMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .register(meterRegistry);
+    }
 
-    @Scheduled(fixedDelay = 10000)
-    public void pollOutbox() {
-        log.info(">>> OUTBOX-POLLER: Đang kiểm tra Outbox để tìm sự kiện mới...");
-        // Gọi hàm mà bạn đã viết
-        this.dispatchTransactional(); 
+    @Scheduled(fixedDelayString = "${outbox.dispatch.delay:500}")
+    public void dispatch() {
+        try {
+            Integer processed;
+            do {
+                processed = transactionTemplate.execute(status -> dispatchBatch());
+            } while (processed != null && processed == batchSize);
+        } catch (Exception e) {
+            log.error("🔥 [OutboxProcessor] Unexpected error during dispatch", e);
+        }
     }
 
-    @Transactional
-    public void dispatchTransactional() {
-        List<Outbox> items = outboxRepository.findByStatusOrderByCreatedAtAsc("NEW", PageRequest.of(0, 100));
-        if (items.isEmpty()) return;
+    /**
+     * Gửi một lô sự kiện (chạy trong transaction giữ khóa các dòng đã lấy).
+     *
+     * @return Số sự kiện đã xử lý
+     */
+    private int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Outbox> items = outboxRepository.claimBatch(now, batchSize);
+        if (items.isEmpty()) return 0;
 
+        // 1. Gửi cả lô (không chờ từng message)
+        List<CompletableFuture<?>> futures = new ArrayList<>(items.size());
         for (Outbox o : items) {
-            try {
-                int updated = outboxRepository.markStatusIfCurrent(o.getId(), "SENDING", "NEW");
-                if (updated == 0) continue;
-
-                // 1. Lấy topic động dựa trên eventType
-                String topicName = getTopicForEvent(o.getEventType());
-
-                // 2. Thêm log để bạn biết chuyện gì đang xảy ra
-                log.info(">>> OUTBOX-POLLER: Đang gửi sự kiện EventType '{}' (ID: {}) lên Topic '{}'", 
+            String topicName = getTopicForEvent(o.getEventType());
+            log.debug(">>> OUTBOX: Gửi sự kiện EventType '{}' (ID: {}) lên Topic '{}'",
                     o.getEventType(), o.getAggregateId(), topicName);
+            try {
+                futures.add(kafkaTemplate.send(topicName, o.getAggregateId(), o.getPayload()));
+            } catch (Exception ex) {
+                futures.add(CompletableFuture.failedFuture(ex));
+            }
+        }
 
-                // 3. Gửi đến topic động
-                kafkaTemplate.send(topicName, o.getAggregateId(), o.getPayload()).get(); 
-                
-                markSent(o.getId());
-
+        // 2. Chờ kết quả
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        LocalDateTime completedAt = LocalDateTime.now();
+        List<String> sentIds = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Outbox o = items.get(i);
+            try {
+                futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sentIds.add(o.getId());
+                if (o.getCreatedAt() != null) {
+                    publishLag.record(Duration.between(o.getCreatedAt(), completedAt));
+                }
             } catch (Exception ex) {
                 log.error("Lỗi khi gửi sự kiện ID {}: {}", o.getId(), ex.getMessage());
-                handleSendFailure(o);
+                handleSendFailure(o, completedAt);
             }
         }
+
+        // 3. Cập nhật trạng thái cả lô bằng 1 câu lệnh
+        if (!sentIds.isEmpty()) {
+            outboxRepository.markSent(sentIds, completedAt);
+            sentCounter.increment(sentIds.size());
+        }
+        return items.size();
     }
 
     /**
@@ -90,6 +171,10 @@ public class OutboxProcessor {
                 return TOPIC_ORDER_DELIVERED;
             case "OrderIssueReported": 
                 return TOPIC_ORDER_ISSUE_REPORTED;
+
+            // Thông báo cần đẩy qua WebSocket (xem NotificationPushListener)
+            case "NotificationCreated":
+                return TOPIC_NOTIFICATION_PUSH;
             
             // --- NGHIỆP VỤ PROMOTION  ---
             
@@ -99,6 +184,10 @@ public class OutboxProcessor {
             // PROMOTION EVENT
             case "PromotionCreated":      
                 return TOPIC;
+
+            // Thay đổi KM (cập nhật/duyệt/xóa/chuyển trạng thái) -> dựng lại PromotionIndex
+            case "PromotionChanged":
+                return TOPIC_PROMOTION_CHANGED;
             
             // --- MẶC ĐỊNH ---
             default:
@@ -107,25 +196,36 @@ public class OutboxProcessor {
         }
     }
 
-    @Transactional
-    protected void markSent(String id) {
-        Outbox o = outboxRepository.findById(id).orElseThrow();
-        o.setStatus("SENT");
-        o.setSentAt(LocalDateTime.now());
-        o.setLastAttemptAt(LocalDateTime.now());
-        outboxRepository.save(o);
+    /**
+     * Hẹn gửi lại với backoff lũy thừa (base * 2^(attempts-1), tối đa maxDelay);
+     * dòng đang được quản lý trong transaction nên thay đổi được ghi khi commit.
+     */
+    private void handleSendFailure(Outbox o, LocalDateTime now) {
+        int newAttempts = o.getAttempts() + 1;
+        o.setAttempts(newAttempts);
+        o.setLastAttemptAt(now);
+        failedCounter.increment();
+
+        if (newAttempts >= maxAttempts) {
+            o.setStatus("FAILED");
+            return;
+        }
+        long delayMs = Math.min(maxDelayMs, baseDelayMs << Math.min(newAttempts - 1, 20));
+        o.setNextAttemptAt(now.plus(Duration.ofMillis(delayMs)));
     }
 
-    @Transactional
-    protected void handleSendFailure(Outbox o) {
-        Outbox current = outboxRepository.findById(o.getId()).orElse(null);
-        if (current == null) return;
-
-        int newAttempts = current.getAttempts() + 1;
-        current.setAttempts(newAttempts);
-        current.setLastAttemptAt(LocalDateTime.now());
-        current.setStatus(newAttempts >= 5 ? "FAILED" : "NEW");
-        outboxRepository.save(current);
+    /**
+     * Cập nhật gauge độ sâu / độ trễ của outbox.
+     */
+    @Scheduled(fixedDelayString = "${outbox.metrics.delay:10000}")
+    public void refreshLagMetrics() {
+        try {
+            pendingCount.set(outboxRepository.countByStatus("NEW"));
+            oldestPendingAgeMs.set(outboxRepository.findFirstByStatusOrderByCreatedAtAsc("NEW")
+                    .map(o -> Duration.between(o.getCreatedAt(), LocalDateTime.now()).toMillis())
+                    .orElse(0L));
+        } catch (Exception e) {
+            log.warn("Không thể cập nhật metrics outbox: {}", e.getMessage());
+        }
     }
 }
-
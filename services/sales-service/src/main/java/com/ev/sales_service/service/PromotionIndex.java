@@ -0,0 +1,156 @@
+package com.ev.sales_service.service;
+
+import com.ev.sales_service.entity.Promotion;
+import com.ev.sales_service.enums.PromotionStatus;
+import com.ev.sales_service.repository.PromotionRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Chỉ mục trong bộ nhớ của các khuyến mãi ACTIVE, tra cứu theo dealerId / modelId.
+ * - JSON dealer/model chỉ được parse 1 lần khi dựng chỉ mục (không so chuỗi con mỗi lần đọc).
+ * - KM không giới hạn đại lý/model nằm ở danh sách "áp dụng chung".
+ * - Dựng lại khi khởi động, khi có sự kiện KM (xem PromotionEventListener) và sau job chuyển trạng thái.
+ * Bản chụp là bất biến, được thay nguyên khối nên luồng đọc không cần khóa.
+ */
+@Component
+@Slf4j
+public class PromotionIndex {
+
+    private final PromotionRepository promotionRepository;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    public PromotionIndex(PromotionRepository promotionRepository, ObjectMapper objectMapper) {
+        this.promotionRepository = promotionRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    private record Entry(Promotion promotion, Set<Long> modelIds) {
+        boolean isValidAt(LocalDateTime now) {
+            if (promotion.getStartDate() != null && promotion.getStartDate().isAfter(now)) return false;
+            return promotion.getEndDate() == null || !promotion.getEndDate().isBefore(now);
+        }
+
+        // Không chỉ định model = áp dụng cho mọi model
+        boolean appliesToModel(Long modelId) {
+            return modelId == null || modelIds.isEmpty() || modelIds.contains(modelId);
+        }
+    }
+
+    private record Snapshot(List<Entry> all, Map<UUID, List<Entry>> byDealer, List<Entry> allDealers,
+            Map<Long, List<Entry>> byModel, List<Entry> allModels) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of(), List.of(), Map.of(), List.of());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Promotion> active = promotionRepository.findByStatus(PromotionStatus.ACTIVE);
+            snapshot.set(build(active));
+            log.info("PromotionIndex: đã nạp {} khuyến mãi ACTIVE", active.size());
+        } catch (Exception e) {
+            log.error("PromotionIndex: không thể dựng chỉ mục, giữ bản cũ: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * KM đang hiệu lực cho đại lý (KM riêng của đại lý + KM chung), lọc theo model nếu có.
+     */
+    public List<Promotion> findForDealer(UUID dealerId, Long modelId) {
+        Snapshot current = snapshot.get();
+        List<Promotion> result = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        collect(current.byDealer().getOrDefault(dealerId, List.of()), modelId, now, result);
+        collect(current.allDealers(), modelId, now, result);
+        return result;
+    }
+
+    /**
+     * Tất cả KM đang hiệu lực, lọc theo model nếu có.
+     */
+    public List<Promotion> findActive(Long modelId) {
+        Snapshot current = snapshot.get();
+        List<Promotion> result = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        if (modelId == null) {
+            collect(current.all(), null, now, result);
+            return result;
+        }
+        collect(current.byModel().getOrDefault(modelId, List.of()), null, now, result);
+        collect(current.allModels(), null, now, result);
+        return result;
+    }
+
+    private static void collect(Collection<Entry> entries, Long modelId, LocalDateTime now, List<Promotion> out) {
+        for (Entry entry : entries) {
+            if (entry.isValidAt(now) && entry.appliesToModel(modelId)) {
+                out.add(entry.promotion());
+            }
+        }
+    }
+
+    private Snapshot build(List<Promotion> promotions) {
+        List<Entry> all = new ArrayList<>();
+        Map<UUID, List<Entry>> byDealer = new HashMap<>();
+        List<Entry> allDealers = new ArrayList<>();
+        Map<Long, List<Entry>> byModel = new HashMap<>();
+        List<Entry> allModels = new ArrayList<>();
+
+        for (Promotion promotion : promotions) {
+            Set<UUID> dealerIds;
+            Set<Long> modelIds;
+            try {
+                dealerIds = parse(promotion.getDealerIdJson(), new TypeReference<Set<UUID>>() {
+                });
+                modelIds = parse(promotion.getApplicableModelsJson(), new TypeReference<Set<Long>>() {
+                });
+            } catch (Exception e) {
+                log.warn("PromotionIndex: bỏ qua KM {} vì JSON dealer/model không hợp lệ: {}",
+                        promotion.getPromotionId(), e.getMessage());
+                continue;
+            }
+
+            Entry entry = new Entry(promotion, modelIds);
+            all.add(entry);
+            if (dealerIds.isEmpty()) {
+                allDealers.add(entry);
+            } else {
+                dealerIds.forEach(id -> byDealer.computeIfAbsent(id, k -> new ArrayList<>()).add(entry));
+            }
+            if (modelIds.isEmpty()) {
+                allModels.add(entry);
+            } else {
+                modelIds.forEach(id -> byModel.computeIfAbsent(id, k -> new ArrayList<>()).add(entry));
+            }
+        }
+
+        byDealer.replaceAll((k, v) -> List.copyOf(v));
+        byModel.replaceAll((k, v) -> List.copyOf(v));
+        return new Snapshot(List.copyOf(all), Map.copyOf(byDealer), List.copyOf(allDealers), Map.copyOf(byModel), List.copyOf(allModels));
+    }
+
+    private <T> Set<T> parse(String json, TypeReference<Set<T>> type) throws Exception {
+        if (json == null || json.isBlank()) {
+            return Collections.emptySet();
+        }
+        Set<T> values = objectMapper.readValue(json, type);
+        return values != null ? values : Collections.emptySet();
+    }
+}
@@ -12,18 +12,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-
-import java.util.stream.Collectors;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class PromotionService {
 
     @Value("${user-service.base-url}")
@@ -32,6 +37,7 @@ public class PromotionService {
     private final PromotionRepository promotionRepository;
     private final OutboxRepository outboxRepository;
     private final ObjectMapper objectMapper; // spring-boot auto-configures
+    private final PromotionIndex promotionIndex;
 
     @Transactional
     public Promotion createPromotion(Promotion promotion) {
@@ -74,6 +80,7 @@ public class PromotionService {
         return saved;
     }
 
+    @Transactional
     public Promotion updatePromotion(UUID id, Promotion promotion) {
         Promotion existing = promotionRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Promotion not found"));
@@ -84,7 +91,9 @@ public class PromotionService {
         existing.setEndDate(promotion.getEndDate());
         existing.setApplicableModelsJson(promotion.getApplicableModelsJson());
         existing.setStatus(promotion.getStatus());
-        return promotionRepository.save(existing);
+        Promotion saved = promotionRepository.save(existing);
+        publishPromotionChanged(saved.getPromotionId().toString());
+        return saved;
     }
 
     public Promotion getPromotionById(UUID id) {
@@ -93,57 +102,51 @@ public class PromotionService {
     }
 
     public List<Promotion> getAllPromotions() {
-        updatePromotionStatuses();
         return promotionRepository.findAll();
     }
 
-
-    private void updatePromotionStatuses() {
+    /**
+     * Chuyển trạng thái KM theo thời gian (trước đây chạy trong mỗi lần getAllPromotions):
+     * - Quá hạn -> EXPIRED
+     * - Tới ngày: DRAFT -> INACTIVE (chưa duyệt), NEAR -> ACTIVE (đã duyệt)
+     * Dùng UPDATE theo tập, chỉ phát sự kiện khi có dòng thay đổi.
+     */
+    @Scheduled(cron = "${promotion.status.cron:0 * * * * *}")
+    @Transactional
+    public void updatePromotionStatuses() {
         LocalDateTime now = LocalDateTime.now();
-        List<Promotion> promotions = promotionRepository.findAll();
-
-        for (Promotion promotion : promotions) {
-            if (promotion.getStartDate() == null || promotion.getEndDate() == null) continue;
-
-            // Bỏ qua nếu đã xóa
-            if (promotion.getStatus().equals(PromotionStatus.DELETED)) continue;
-
-            // Hết hạn
-            if (promotion.getEndDate().isBefore(now)) {
-                promotion.setStatus(PromotionStatus.EXPIRED);
-                continue;
-            }
-
-            // Đang trong thời gian hoạt động
-            if (promotion.getStartDate().isBefore(now) && promotion.getEndDate().isAfter(now)) {
-                if (promotion.getStatus().equals(PromotionStatus.DRAFT)) {
-                    promotion.setStatus(PromotionStatus.INACTIVE); // Đã tới ngày nhưng chưa kích hoạt
-                } else if (promotion.getStatus().equals(PromotionStatus.NEAR)) {
-                    promotion.setStatus(PromotionStatus.ACTIVE); // Đã duyệt và tới ngày
-                }
+        int expired = promotionRepository.expirePromotions(now, PromotionStatus.EXPIRED, PromotionStatus.DELETED);
+        int inactive = promotionRepository.transitionStarted(now, PromotionStatus.DRAFT, PromotionStatus.INACTIVE);
+        int activated = promotionRepository.transitionStarted(now, PromotionStatus.NEAR, PromotionStatus.ACTIVE);
 
-            }
+        if (expired + inactive + activated > 0) {
+            log.info("Promotion statuses updated: {} expired, {} inactive, {} activated", expired, inactive, activated);
+            publishPromotionChanged("ALL");
         }
-        promotionRepository.saveAll(promotions);
     }
 
 
+    @Transactional
     public void deletePromotion(UUID id) {
         Promotion promotion = promotionRepository.findById(id)
                 .orElseThrow(() -> new AppException(ErrorCode.DATA_NOT_FOUND));
         promotion.setStatus(PromotionStatus.DELETED);
         promotionRepository.save(promotion);
+        publishPromotionChanged(id.toString());
     }
 
     public List<Promotion> getPromotionsByStatus(PromotionStatus status) {
         return promotionRepository.findByStatus(status);
     }
 
+    @Transactional
     public Promotion authenticPromotion(UUID id) {
         Promotion existing = promotionRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Promotion not found"));
         existing.setStatus(PromotionStatus.NEAR);
-        return promotionRepository.save(existing);
+        Promotion saved = promotionRepository.save(existing);
+        publishPromotionChanged(id.toString());
+        return saved;
     }
 
     /**
@@ -154,73 +157,52 @@ public class PromotionService {
      * @return List<Promotion>
      */
     public List<Promotion> getActivePromotionsForDealer(UUID dealerId, Optional<Long> modelId) {
-        // 1. Lấy tất cả KM đang ACTIVE
-        List<Promotion> allActivePromotions = promotionRepository.findByStatus(PromotionStatus.ACTIVE);
-
-        // 2. Lọc danh sách
-        return allActivePromotions.stream()
-                .filter(promo -> {
-                    String dealerJson = promo.getDealerIdJson();
-                    String modelJson = promo.getApplicableModelsJson();
-                    LocalDateTime now = LocalDateTime.now();
-
-                    // 2.1. Kiểm tra ngày (phòng trường hợp cron job chưa chạy)
-                    if (promo.getStartDate() != null && promo.getStartDate().isAfter(now)) return false;
-                    if (promo.getEndDate() != null && promo.getEndDate().isBefore(now)) return false;
-
-                    // 2.2. Lọc theo Đại lý
-                    boolean dealerMatch = false;
-                    if (dealerJson == null || dealerJson.isEmpty() || dealerJson.equals("[]")) {
-                        dealerMatch = true; // KM chung
-                    } else {
-                        dealerMatch = dealerJson.contains(dealerId.toString()); // KM riêng
-                    }
-
-                    if (!dealerMatch) return false; // Nếu không khớp đại lý -> loại
-
-                    // 2.3. Lọc theo Model (NẾU modelId được cung cấp)
-                    if (modelId.isPresent()) {
-                        Long mId = modelId.get();
-                        // Nếu KM này có áp dụng cho model cụ thể (không rỗng)
-                        if (modelJson != null && !modelJson.isEmpty() && !modelJson.equals("[]")) {
-                            // Và nếu JSON model *không* chứa modelId -> loại
-                            if (!modelJson.contains(mId.toString())) {
-                                return false;
-                            }
-                        }
-                        // (Nếu KM không chỉ định model, nó được coi là áp dụng cho mọi model)
-                    }
-
-                    return true; // Vượt qua mọi kiểm tra
-                })
-                .collect(Collectors.toList());
+        return promotionIndex.findForDealer(dealerId, modelId.orElse(null));
     }
 
     /**
      * Lấy tất cả khuyến mãi đang ACTIVE (tùy chọn lọc theo modelId)
      */
     public List<Promotion> getActivePromotions(Optional<Long> modelId) {
-        List<Promotion> allActivePromotions = promotionRepository.findByStatus(PromotionStatus.ACTIVE);
-        LocalDateTime now = LocalDateTime.now();
+        return promotionIndex.findActive(modelId.orElse(null));
+    }
 
-        return allActivePromotions.stream()
-                .filter(promo -> {
-                    // Kiểm tra thời gian hợp lệ
-                    if (promo.getStartDate() != null && promo.getStartDate().isAfter(now)) return false;
-                    if (promo.getEndDate() != null && promo.getEndDate().isBefore(now)) return false;
-
-                    // Nếu có modelId, lọc theo model
-                    if (modelId.isPresent()) {
-                        String modelJson = promo.getApplicableModelsJson();
-                        Long mId = modelId.get();
-                        if (modelJson != null && !modelJson.isEmpty() && !modelJson.equals("[]")) {
-                            return modelJson.contains(mId.toString());
-                        }
-                    }
-                    return true;
-                })
-                .collect(Collectors.toList());
+    /**
+     * Ghi sự kiện PromotionChanged vào outbox (topic sales.promotions.changed) để mọi instance
+     * dựng lại PromotionIndex; instance hiện tại dựng lại ngay sau khi commit.
+     */
+    private void publishPromotionChanged(String promotionId) {
+        String eventId = UUID.randomUUID().toString();
+        try {
+            Map<String, Object> event = new HashMap<>();
+            event.put("eventId", eventId);
+            event.put("promotionId", promotionId);
+            event.put("occurredAt", LocalDateTime.now());
+
+            outboxRepository.save(Outbox.builder()
+                    .id(eventId)
+                    .aggregateType("Promotion")
+                    .aggregateId(promotionId)
+                    .eventType("PromotionChanged")
+                    .payload(objectMapper.writeValueAsString(event))
+                    .status("NEW")
+                    .attempts(0)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (Exception e) {
+            throw new AppException(ErrorCode.DATABASE_ERROR);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    promotionIndex.rebuild();
+                }
+            });
+        } else {
+            promotionIndex.rebuild();
+        }
     }
 
 }
-
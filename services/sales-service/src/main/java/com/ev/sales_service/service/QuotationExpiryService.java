@@ -0,0 +1,189 @@
+package com.ev.sales_service.service;
+
+import com.ev.sales_service.enums.QuotationStatus;
+import com.ev.sales_service.repository.QuotationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hết hạn báo giá (PENDING/SENT đã quá validUntil).
+ * - expireDue(): UPDATE theo tập, chia lô (LIMIT) để không khóa bảng lâu; mỗi lô 1 transaction.
+ * - Tùy chọn (app.quotation.expiry.delay-queue.enabled=true): hẹn hết hạn đúng thời điểm validUntil
+ * bằng DelayQueue trong bộ nhớ, không quét bảng. Chỉ nạp các báo giá sắp hết hạn trong cửa sổ
+ * horizon (truy vấn theo index); job hàng loạt vẫn chạy làm lưới an toàn.
+ * Metric: quotation.expired{mode=batch|delay}.
+ */
+@Service
+@Slf4j
+public class QuotationExpiryService {
+
+    private static final List<QuotationStatus> EXPIRABLE = List.of(QuotationStatus.PENDING, QuotationStatus.SENT);
+
+    private final QuotationRepository quotationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter batchExpired;
+    private final Counter delayExpired;
+
+    private final DelayQueue<ExpiryTask> queue = new DelayQueue<>();
+    private final Map<UUID, ExpiryTask> scheduled = new ConcurrentHashMap<>();
+    private volatile Thread worker;
+
+    @Value("${app.quotation.expiry.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.quotation.expiry.delay-queue.enabled:false}")
+    private boolean delayQueueEnabled;
+
+    @Value("${app.quotation.expiry.delay-queue.horizon-hours:24}")
+    private long horizonHours;
+
+    public QuotationExpiryService(QuotationRepository quotationRepository, TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry) {
+        this.quotationRepository = quotationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchExpired = Counter.builder("quotation.expired").tag("mode", "batch").register(meterRegistry);
+        this.delayExpired = Counter.builder("quotation.expired").tag("mode", "delay").register(meterRegistry);
+    }
+
+    /**
+     * Chuyển tất cả báo giá đã quá hạn sang EXPIRED, từng lô chunkSize dòng.
+     *
+     * @return Tổng số báo giá đã hết hạn
+     */
+    public int expireDue() {
+        LocalDateTime now = LocalDateTime.now();
+        int total = 0;
+        while (true) {
+            Integer updated = transactionTemplate.execute(status -> quotationRepository.expireDueBatch(now, chunkSize));
+            int count = updated != null ? updated : 0;
+            total += count;
+            if (count < chunkSize) {
+                break;
+            }
+        }
+        batchExpired.increment(total);
+        log.info("Expired {} quotations (validUntil < {})", total, now);
+        return total;
+    }
+
+    /**
+     * Hẹn hết hạn báo giá tại validUntil (chỉ khi bật chế độ delay-queue và nằm trong horizon).
+     * Được đưa vào hàng đợi sau khi transaction hiện tại commit.
+     */
+    public void schedule(UUID quotationId, LocalDateTime validUntil) {
+        if (!delayQueueEnabled || quotationId == null || validUntil == null
+                || validUntil.isAfter(LocalDateTime.now().plusHours(horizonHours))) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(quotationId, validUntil);
+                }
+            });
+        } else {
+            enqueue(quotationId, validUntil);
+        }
+    }
+
+    private void enqueue(UUID quotationId, LocalDateTime validUntil) {
+        ExpiryTask task = new ExpiryTask(quotationId, validUntil.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        ExpiryTask previous = scheduled.put(quotationId, task);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.put(task);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!delayQueueEnabled) {
+            return;
+        }
+        loadHorizon();
+        worker = new Thread(this::runWorker, "quotation-expiry");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Quotation expiry delay queue started (horizon {}h)", horizonHours);
+    }
+
+    /**
+     * Nạp các báo giá sẽ hết hạn trong horizon tới (truy vấn theo index status + valid_until).
+     */
+    @Scheduled(fixedDelayString = "${app.quotation.expiry.delay-queue.reload-ms:3600000}",
+            initialDelayString = "${app.quotation.expiry.delay-queue.reload-ms:3600000}")
+    public void loadHorizon() {
+        if (!delayQueueEnabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> candidates = quotationRepository.findExpiryCandidates(EXPIRABLE, now.minusMinutes(1),
+                now.plusHours(horizonHours));
+        for (Object[] row : candidates) {
+            enqueue((UUID) row[0], (LocalDateTime) row[1]);
+        }
+        log.debug("Loaded {} quotations into expiry queue", candidates.size());
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                ExpiryTask task = queue.take();
+                if (!scheduled.remove(task.quotationId(), task)) {
+                    continue; // Đã được hẹn lại với validUntil khác
+                }
+                // Điều kiện status/validUntil được kiểm tra lại trong câu UPDATE
+                Integer updated = transactionTemplate.execute(status -> quotationRepository.expireIfDue(
+                        task.quotationId(), EXPIRABLE, QuotationStatus.EXPIRED, LocalDateTime.now()));
+                if (updated != null && updated > 0) {
+                    delayExpired.increment();
+                    log.info("Quotation {} expired", task.quotationId());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Failed to expire quotation from delay queue: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private record ExpiryTask(UUID quotationId, long expiresAtMs) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAtMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -1,31 +1,36 @@
 package com.ev.sales_service.service;
 
 import com.ev.sales_service.dto.SalesHistoryDto;
-import com.ev.sales_service.entity.OrderItem;
-import com.ev.sales_service.entity.SalesOrder;
-import com.ev.sales_service.enums.OrderStatusB2B;
-import com.ev.sales_service.enums.OrderStatusB2C;
-import com.ev.sales_service.repository.SalesOrderRepositoryB2B;
+import com.ev.sales_service.entity.SalesDailyRollup;
+import com.ev.sales_service.repository.SalesDailyRollupRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+/**
+ * Dữ liệu bán hàng cho AI forecasting, đọc từ bảng tổng hợp sales_daily_rollup
+ * (mỗi dòng = doanh số DELIVERED của 1 variant tại 1 đại lý trong 1 ngày).
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SalesAnalyticsService {
     
-    private final SalesOrderRepositoryB2B salesOrderRepository;
+    private final SalesDailyRollupRepository rollupRepository;
     
     /**
-     * Lấy sales history cho AI forecasting
+     * Lấy sales history cho AI forecasting (theo ngày, mới nhất trước)
      */
+    @Transactional(readOnly = true)
     public List<SalesHistoryDto> getSalesHistory(
         Long variantId,
         UUID dealerId,
@@ -34,104 +39,47 @@ public class SalesAnalyticsService {
         LocalDateTime endDate,
         int limit
     ) {
-        List<SalesOrder> orders;
+        List<SalesDailyRollup> rows = rollupRepository.findHistory(
+            variantId, dealerId, startDate.toLocalDate(), endDate.toLocalDate(),
+            PageRequest.of(0, Math.max(1, limit)));
         
-        // Query orders theo filters
-        if (variantId != null) {
-            orders = salesOrderRepository.findByVariantIdAndDateRange(variantId, startDate, endDate);
-        } else if (dealerId != null) {
-            orders = salesOrderRepository.findByDealerIdAndOrderDateBetween(dealerId, startDate, endDate);
-        } else {
-            orders = salesOrderRepository.findByOrderDateBetween(startDate, endDate);
-        }
-        
-        // Convert to DTOs
-        List<SalesHistoryDto> history = new ArrayList<>();
-        
-        for (SalesOrder order : orders) {
-            // Chỉ lấy orders đã COMPLETED
-            if (!isOrderCompleted(order)) {
-                continue;
-            }
-            
-            if (order.getOrderItems() != null) {
-                for (OrderItem item : order.getOrderItems()) {
-                    // Filter by variantId if specified
-                    if (variantId != null && !item.getVariantId().equals(variantId)) {
-                        continue;
-                    }
-                    
-                    SalesHistoryDto dto = SalesHistoryDto.builder()
-                        .orderId(order.getOrderId())
-                        .variantId(item.getVariantId())
-                        .dealerId(order.getDealerId())
-                        .region(region) // TODO: Get from dealer service
-                        .quantity(item.getQuantity())
-                        .totalAmount(item.getFinalPrice())
-                        .unitPrice(item.getUnitPrice())
-                        .orderDate(order.getOrderDate())
-                        .orderStatus(getOrderStatus(order))
-                        .modelName("Unknown") // TODO: Get from vehicle service
-                        .variantName("Variant " + item.getVariantId())
-                        .build();
-                    
-                    history.add(dto);
-                    
-                    if (history.size() >= limit) {
-                        break;
-                    }
-                }
-            }
-            
-            if (history.size() >= limit) {
-                break;
-            }
-        }
+        List<SalesHistoryDto> history = rows.stream()
+            .map(row -> SalesHistoryDto.builder()
+                .variantId(row.getVariantId())
+                .dealerId(row.getDealerId())
+                .region(region) // TODO: Get from dealer service
+                .quantity(row.getQuantity().intValue())
+                .totalAmount(row.getTotalAmount())
+                .unitPrice(averagePrice(row))
+                .orderDate(row.getSaleDate().atStartOfDay())
+                .orderStatus("DELIVERED")
+                .modelName(row.getModelName() != null ? row.getModelName() : "Unknown")
+                .variantName(row.getVariantName() != null ? row.getVariantName() : "Variant " + row.getVariantId())
+                .build())
+            .collect(Collectors.toList());
         
-        log.info("Found {} sales records", history.size());
+        log.info("Found {} daily sales records", history.size());
         return history;
     }
     
     /**
      * Lấy sales summary group by variant
      */
+    @Transactional(readOnly = true)
     public List<SalesHistoryDto> getSalesSummaryByVariant(LocalDateTime startDate, LocalDateTime endDate) {
-        List<SalesOrder> orders = salesOrderRepository.findByOrderDateBetween(startDate, endDate);
-        
-        // Group by variant and sum quantities
-        return orders.stream()
-            .filter(this::isOrderCompleted)
-            .flatMap(order -> order.getOrderItems().stream())
-            .collect(Collectors.groupingBy(
-                OrderItem::getVariantId,
-                Collectors.summingInt(OrderItem::getQuantity)
-            ))
-            .entrySet().stream()
-            .map(entry -> SalesHistoryDto.builder()
-                .variantId(entry.getKey())
-                .quantity(entry.getValue())
+        return rollupRepository.sumQuantityByVariant(startDate.toLocalDate(), endDate.toLocalDate()).stream()
+            .map(row -> SalesHistoryDto.builder()
+                .variantId((Long) row[0])
+                .quantity(((Number) row[1]).intValue())
                 .orderDate(LocalDateTime.now())
                 .build())
             .collect(Collectors.toList());
     }
     
-    private boolean isOrderCompleted(SalesOrder order) {
-        if (order.getOrderStatus() != null) {
-            return order.getOrderStatus() == OrderStatusB2B.DELIVERED;
-        }
-        if (order.getOrderStatusB2C() != null) {
-            return order.getOrderStatusB2C() == OrderStatusB2C.DELIVERED;
-        }
-        return false;
-    }
-    
-    private String getOrderStatus(SalesOrder order) {
-        if (order.getOrderStatus() != null) {
-            return order.getOrderStatus().toString();
-        }
-        if (order.getOrderStatusB2C() != null) {
-            return order.getOrderStatusB2C().toString();
+    private BigDecimal averagePrice(SalesDailyRollup row) {
+        if (row.getTotalAmount() == null || row.getQuantity() == null || row.getQuantity() == 0) {
+            return null;
         }
-        return "UNKNOWN";
+        return row.getTotalAmount().divide(BigDecimal.valueOf(row.getQuantity()), 2, RoundingMode.HALF_UP);
     }
 }
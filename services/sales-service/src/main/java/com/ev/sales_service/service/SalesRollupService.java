@@ -0,0 +1,96 @@
+package com.ev.sales_service.service;
+
+import com.ev.sales_service.entity.OrderItem;
+import com.ev.sales_service.entity.SalesOrder;
+import com.ev.sales_service.repository.SalesDailyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Duy trì bảng sales_daily_rollup (doanh số DELIVERED theo ngày / variant / đại lý).
+ * - recordDelivered: gọi trong cùng transaction với lúc đơn chuyển sang DELIVERED.
+ * - Khi khởi động, nếu bảng còn trống thì dựng lại từ các đơn đã giao.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SalesRollupService {
+
+    private final SalesDailyRollupRepository rollupRepository;
+
+    /**
+     * Cộng dồn các dòng hàng của đơn vừa chuyển sang DELIVERED.
+     * Chỉ gọi đúng 1 lần cho mỗi lần chuyển trạng thái (nơi gọi đã kiểm tra trạng thái trước đó).
+     */
+    @Transactional
+    public void recordDelivered(SalesOrder order) {
+        if (order.getOrderItems() == null || order.getOrderItems().isEmpty() || order.getOrderDate() == null) {
+            return;
+        }
+
+        // Gộp theo variant để mỗi đơn chỉ tính 1 lần vào order_count
+        Map<Long, Line> lines = new LinkedHashMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            if (item.getVariantId() == null) {
+                continue;
+            }
+            lines.computeIfAbsent(item.getVariantId(), id -> new Line()).add(item);
+        }
+
+        LocalDate saleDate = order.getOrderDate().toLocalDate();
+        byte[] dealerId = toBytes(order.getDealerId());
+        lines.forEach((variantId, line) -> rollupRepository.addDelivered(saleDate, variantId, dealerId,
+                line.quantity, line.amount, line.modelName, line.variantName));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (rollupRepository.count() > 0) {
+                return;
+            }
+            int rows = rollupRepository.backfillFromOrders();
+            log.info("Đã dựng sales_daily_rollup từ đơn hàng đã giao: {} dòng", rows);
+        } catch (Exception e) {
+            log.error("Không thể dựng sales_daily_rollup: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        return buffer.array();
+    }
+
+    private static final class Line {
+        private long quantity;
+        private BigDecimal amount = BigDecimal.ZERO;
+        private String modelName;
+        private String variantName;
+
+        private void add(OrderItem item) {
+            quantity += item.getQuantity() != null ? item.getQuantity() : 0;
+            if (item.getFinalPrice() != null) {
+                amount = amount.add(item.getFinalPrice());
+            }
+            if (item.getModelName() != null) {
+                modelName = item.getModelName();
+            }
+            if (item.getVariantName() != null) {
+                variantName = item.getVariantName();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ev.vehicle_service.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializer cho cache chứa Page<T>: PageImpl không có constructor mặc định nên không đọc lại được
+ * bằng Jackson thông thường. Lưu dạng snapshot gọn (content + số trang + tổng + sort) với kiểu phần tử
+ * cố định, đọc ra dựng lại PageImpl.
+ */
+public class PageRedisSerializer<T> implements RedisSerializer<Page<T>> {
+
+    /**
+     * Dạng lưu trong Redis của một trang dữ liệu.
+     */
+    public record PageSnapshot<T>(List<T> content, int page, int size, long total, List<String> sort) {
+    }
+
+    private final ObjectMapper mapper;
+    private final JavaType snapshotType;
+
+    public PageRedisSerializer(ObjectMapper mapper, Class<T> elementType) {
+        this.mapper = mapper;
+        this.snapshotType = mapper.getTypeFactory().constructParametricType(PageSnapshot.class, elementType);
+    }
+
+    @Override
+    public byte[] serialize(Page<T> page) throws SerializationException {
+        if (page == null) {
+            return null;
+        }
+        List<String> sort = new ArrayList<>();
+        page.getSort().forEach(order -> sort.add(order.getProperty() + "," + order.getDirection().name()));
+        Pageable pageable = page.getPageable();
+        int size = pageable.isPaged() ? pageable.getPageSize() : page.getNumberOfElements();
+        try {
+            return mapper.writeValueAsBytes(new PageSnapshot<>(page.getContent(), page.getNumber(), size,
+                    page.getTotalElements(), sort));
+        } catch (Exception e) {
+            throw new SerializationException("Không thể serialize Page vào cache", e);
+        }
+    }
+
+    @Override
+    public Page<T> deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            PageSnapshot<T> snapshot = mapper.readValue(bytes, snapshotType);
+            List<Sort.Order> orders = new ArrayList<>();
+            for (String s : snapshot.sort()) {
+                int comma = s.lastIndexOf(',');
+                orders.add(new Sort.Order(Sort.Direction.valueOf(s.substring(comma + 1)), s.substring(0, comma)));
+            }
+            Pageable pageable = snapshot.size() > 0
+                    ? PageRequest.of(snapshot.page(), snapshot.size(), Sort.by(orders))
+                    : Pageable.unpaged();
+            return new PageImpl<>(snapshot.content(), pageable, snapshot.total());
+        } catch (Exception e) {
+            throw new SerializationException("Không thể đọc Page từ cache", e);
+        }
+    }
+}
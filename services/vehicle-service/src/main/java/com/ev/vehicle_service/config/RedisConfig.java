@@ -1,9 +1,21 @@
 package com.ev.vehicle_service.config;
 
+import com.ev.common_lib.cache.NearCache;
+import com.ev.common_lib.dto.vehicle.VariantDetailDto;
+import com.ev.vehicle_service.dto.response.ModelDetailDto;
+import com.ev.vehicle_service.dto.response.ModelSummaryDto;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.support.AbstractCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
@@ -11,10 +23,16 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Redis Cache Configuration for Vehicle Service
@@ -52,8 +70,20 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Cache 2 tầng (Caffeine local + Redis). Mỗi cache có serializer gắn với kiểu DTO cụ thể,
+     * nên đọc lại đúng kiểu (không bị LinkedHashMap / lỗi với PageImpl).
+     * - models / variants: chi tiết model / variant (xóa ở updateModel, updateVariant...)
+     * - all-models: danh sách model
+     * - models-page / models-search: các trang danh sách / tìm kiếm (TTL ngắn hơn)
+     */
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+            @Value("${app.cache.near.ttl-seconds:30}") long nearTtlSeconds,
+            @Value("${app.cache.near.max-size:5000}") long nearMaxSize) {
+        ObjectMapper cacheMapper = redisObjectMapper().copy()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1)) // TTL = 1 hour
                 .serializeKeysWith(
@@ -62,8 +92,49 @@ public class RedisConfig {
                         new GenericJackson2JsonRedisSerializer(redisObjectMapper())))
                 .disableCachingNullValues(); // Don't cache null values
 
-        return RedisCacheManager.builder(connectionFactory)
+        Map<String, RedisCacheConfiguration> perCache = new HashMap<>();
+        perCache.put("models", config.serializeValuesWith(typed(cacheMapper,
+                cacheMapper.constructType(ModelDetailDto.class))));
+        perCache.put("variants", config.serializeValuesWith(typed(cacheMapper,
+                cacheMapper.constructType(VariantDetailDto.class))));
+        perCache.put("all-models", config.serializeValuesWith(typed(cacheMapper,
+                cacheMapper.getTypeFactory().constructCollectionType(List.class, ModelSummaryDto.class))));
+        perCache.put("models-page", config.entryTtl(Duration.ofMinutes(10)).serializeValuesWith(
+                RedisSerializationContext.SerializationPair.fromSerializer(
+                        new PageRedisSerializer<>(cacheMapper, ModelSummaryDto.class))));
+        perCache.put("models-search", config.entryTtl(Duration.ofMinutes(5)).serializeValuesWith(
+                RedisSerializationContext.SerializationPair.fromSerializer(
+                        new PageRedisSerializer<>(cacheMapper, ModelSummaryDto.class))));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
+                .withInitialCacheConfigurations(perCache)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        // Bọc mỗi Redis cache bằng một near-cache local
+        return new AbstractCacheManager() {
+            @Override
+            protected Collection<? extends Cache> loadCaches() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            protected Cache getMissingCache(String name) {
+                Cache remote = redisCacheManager.getCache(name);
+                if (remote == null) {
+                    return null;
+                }
+                return new NearCache(remote, Caffeine.newBuilder()
+                        .expireAfterWrite(Duration.ofSeconds(nearTtlSeconds))
+                        .maximumSize(nearMaxSize)
+                        .build(), meterRegistry);
+            }
+        };
+    }
+
+    private static RedisSerializationContext.SerializationPair<Object> typed(ObjectMapper mapper, JavaType type) {
+        return RedisSerializationContext.SerializationPair.fromSerializer(
+                new Jackson2JsonRedisSerializer<>(mapper, type));
     }
 }
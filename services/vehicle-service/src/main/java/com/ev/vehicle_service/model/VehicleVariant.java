@@ -12,7 +12,11 @@ import org.hibernate.annotations.CreationTimestamp;
 // import org.hibernate.annotations.UpdateTimestamp;
 
 @Entity
-@Table(name = "vehicle_variants")
+@Table(name = "vehicle_variants", indexes = {
+        // Phục vụ lọc mẫu xe theo giá / quãng đường (EXISTS theo model_id)
+        @Index(name = "idx_variant_model_price", columnList = "model_id, price"),
+        @Index(name = "idx_variant_model_range", columnList = "model_id, range_km")
+})
 @Getter
 @Setter
 public class VehicleVariant {
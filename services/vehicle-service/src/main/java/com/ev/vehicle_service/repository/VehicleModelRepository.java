@@ -1,18 +1,19 @@
 package com.ev.vehicle_service.repository;
 
 import com.ev.vehicle_service.model.VehicleModel;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface VehicleModelRepository extends JpaRepository<VehicleModel, Long> {
+public interface VehicleModelRepository extends JpaRepository<VehicleModel, Long>, JpaSpecificationExecutor<VehicleModel> {
     /**
      * Lấy tất cả các Model và tải sẵn (eagerly fetch) danh sách các Variant của
      * chúng
@@ -34,15 +35,11 @@ public interface VehicleModelRepository extends JpaRepository<VehicleModel, Long
     Optional<VehicleModel> findModelWithDetailsById(@Param("modelId") Long modelId);
 
     /**
-     * Search models with pagination - Optimized query
+     * Tải các Model theo danh sách ID kèm variants trong 1 query
+     * (dùng sau khi phân trang để tránh N+1 khi map DTO).
      */
-    @Query("SELECT DISTINCT m FROM VehicleModel m " +
-            "WHERE (:keyword IS NULL OR m.modelName LIKE %:keyword% OR m.brand LIKE %:keyword%) " +
-            "AND (:status IS NULL OR m.status = :status)")
-    Page<VehicleModel> searchModels(
-            @Param("keyword") String keyword,
-            @Param("status") com.ev.common_lib.model.enums.VehicleStatus status,
-            Pageable pageable);
+    @EntityGraph(attributePaths = "variants")
+    List<VehicleModel> findWithVariantsByModelIdIn(Collection<Long> modelIds);
 
     /**
      * Find models by price range - Optimized with index on variants.price
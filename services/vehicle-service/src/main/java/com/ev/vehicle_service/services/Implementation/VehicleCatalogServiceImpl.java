@@ -38,6 +38,7 @@ import com.ev.vehicle_service.repository.PriceHistoryRepository;
 import com.ev.vehicle_service.repository.VehicleVariantHistoryRepository;
 
 import com.ev.vehicle_service.services.Interface.VehicleCatalogService;
+import com.ev.vehicle_service.specification.VehicleModelSpecification;
 import com.ev.vehicle_service.specification.VehicleVariantSpecification;
 // import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -111,14 +112,16 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
     }
 
     @Override
-    // Removed @Cacheable - Page objects don't serialize/deserialize well in Redis
+    @Cacheable(value = "models-page", key = "#pageable.toString()")
     public Page<ModelSummaryDto> getAllModelsPaginated(Pageable pageable) {
         Page<VehicleModel> modelsPage = modelRepository.findAll(pageable);
         return modelsPage.map(this::mapToModelSummaryDto);
     }
 
     @Override
-    // Removed @Cacheable - Page objects don't serialize/deserialize well in Redis
+    @Transactional(readOnly = true)
+    @Cacheable(value = "models-search", key = "#keyword + '|' + #status + '|' + #minPrice + '|' + #maxPrice + '|' "
+            + "+ #minRange + '|' + #maxRange + '|' + #pageable.toString()")
     public Page<ModelSummaryDto> searchModels(
             String keyword,
             String status,
@@ -145,62 +148,26 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
             }
         }
 
-        // Use repository search method
-        Page<VehicleModel> modelsPage = modelRepository.searchModels(keyword, statusEnum, pageable);
-
-        // Apply additional filters if needed
-        List<VehicleModel> filteredModels = modelsPage.getContent().stream()
-                .filter(model -> {
-                    // Filter by price range if specified
-                    if (minPrice != null || maxPrice != null) {
-                        boolean matchesPrice = model.getVariants().stream()
-                                .anyMatch(v -> {
-                                    if (v.getPrice() == null)
-                                        return false;
-                                    if (minPrice != null && v.getPrice().compareTo(minPrice) < 0)
-                                        return false;
-                                    if (maxPrice != null && v.getPrice().compareTo(maxPrice) > 0)
-                                        return false;
-                                    return true;
-                                });
-                        if (!matchesPrice)
-                            return false;
-                    }
-
-                    // Filter by range if specified
-                    if (minRange != null || maxRange != null) {
-                        Integer modelRange = model.getBaseRangeKm();
-                        if (modelRange == null) {
-                            // Check variants
-                            modelRange = model.getVariants().stream()
-                                    .map(VehicleVariant::getRangeKm)
-                                    .filter(java.util.Objects::nonNull)
-                                    .findFirst()
-                                    .orElse(null);
-                        }
-                        if (modelRange == null)
-                            return false;
-                        if (minRange != null && modelRange < minRange)
-                            return false;
-                        if (maxRange != null && modelRange > maxRange)
-                            return false;
-                    }
-
-                    return true;
-                })
-                .collect(Collectors.toList());
-
-        // Create new page with filtered content
-        Page<VehicleModel> filteredPage = new org.springframework.data.domain.PageImpl<>(
-                filteredModels,
-                pageable,
-                filteredModels.size());
+        // Lọc, đếm và phân trang trong cùng một truy vấn SQL
+        Specification<VehicleModel> spec = Specification.allOf(
+                VehicleModelSpecification.hasKeyword(keyword),
+                VehicleModelSpecification.hasStatus(statusEnum),
+                VehicleModelSpecification.hasVariantPriceBetween(minPrice, maxPrice),
+                VehicleModelSpecification.hasRangeBetween(minRange, maxRange));
+        Page<VehicleModel> modelsPage = modelRepository.findAll(spec, pageable);
+
+        // Nạp variants cho cả trang bằng 1 query (các entity trong trang được khởi tạo collection luôn)
+        if (modelsPage.hasContent()) {
+            modelRepository.findWithVariantsByModelIdIn(modelsPage.getContent().stream()
+                    .map(VehicleModel::getModelId)
+                    .collect(Collectors.toList()));
+        }
 
-        return filteredPage.map(this::mapToModelSummaryDto);
+        return modelsPage.map(this::mapToModelSummaryDto);
     }
 
     @Override
-    // Removed @Cacheable - Complex DTOs don't serialize/deserialize well in Redis
+    @Cacheable(value = "models", key = "#modelId")
     public ModelDetailDto getModelDetails(Long modelId) {
         VehicleModel model = modelRepository.findModelWithDetailsById(modelId)
                 .orElseThrow(() -> new AppException(ErrorCode.VEHICLE_MODEL_NOT_FOUND));
@@ -208,7 +175,7 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
     }
 
     @Override
-    // Removed @Cacheable - Complex DTOs don't serialize/deserialize well in Redis
+    @Cacheable(value = "variants", key = "#variantId")
     public VariantDetailDto getVariantDetails(Long variantId) {
         VehicleVariant variant = findVariantById(variantId);
         return mapToVariantDetailDto(variant);
@@ -216,6 +183,11 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
+    })
     public VehicleModel createModelWithVariants(CreateModelRequest request) {
         VehicleModel newModel = new VehicleModel();
         newModel.setModelName(request.getModelName());
@@ -256,6 +228,7 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
                     : VehicleStatus.IN_PRODUCTION;
             newVariant.setStatus(status);
             VehicleVariant savedVariant = variantRepository.save(newVariant);
+            publishProductUpdate(savedVariant);
 
             if (variantRequest.getFeatures() != null && !variantRequest.getFeatures().isEmpty()) {
                 variantRequest.getFeatures().forEach(featureRequest -> {
@@ -279,6 +252,12 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "models", key = "#modelId"),
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
+    })
     public VehicleVariant createVariant(Long modelId, CreateVariantRequest request, String createdByEmail) {
         // Tìm mẫu xe cha (parent model)
         VehicleModel parentModel = findModelById(modelId);
@@ -317,14 +296,19 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
         newVariant.setStatus(status);
         newVariant.setCreatedBy(createdByEmail);
 
-        return variantRepository.save(newVariant);
+        VehicleVariant savedVariant = variantRepository.save(newVariant);
+        publishProductUpdate(savedVariant);
+        return savedVariant;
     }
 
     @Override
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "models", key = "#modelId"), // Xóa cache model cụ thể
-            @CacheEvict(value = "all-models", allEntries = true) // Xóa toàn bộ cache danh sách
+            @CacheEvict(value = "variants", allEntries = true), // Variant chứa tên/hãng của model
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
     })
     public VehicleModel updateModel(Long modelId, UpdateModelRequest request, String updatedByEmail) {
         VehicleModel model = findModelById(modelId);
@@ -352,7 +336,12 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
             throw new AppException(ErrorCode.INVALID_JSON_FORMAT);
         }
 
-        return modelRepository.save(model);
+        VehicleModel savedModel = modelRepository.save(model);
+
+        // Tên/trạng thái model nằm trong từng sự kiện variant -> gửi lại cho mọi variant của model
+        savedModel.getVariants().forEach(this::publishProductUpdate);
+
+        return savedModel;
     }
 
     @Override
@@ -360,7 +349,9 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
     @Caching(evict = {
             @CacheEvict(value = "variants", key = "#variantId"), // Xóa cache variant
             @CacheEvict(value = "models", key = "#result.vehicleModel.modelId"), // Xóa cache model cha
-            @CacheEvict(value = "all-models", allEntries = true) // Xóa cache danh sách
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
     })
     public VehicleVariant updateVariant(Long variantId, UpdateVariantRequest request, String updatedByEmail) {
         // Tìm variant hiện có
@@ -432,27 +423,44 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
         VehicleVariant savedVariant = variantRepository.save(variant);
 
         // Gửi message lên kafka
+        publishProductUpdate(savedVariant);
+
+        return savedVariant;
+    }
+
+    /**
+     * Gửi sự kiện "product_events" (giá, trạng thái, tên, SKU...) cho các service khác
+     * (inventory-service dùng để cập nhật chỉ mục variant cục bộ).
+     */
+    private void publishProductUpdate(VehicleVariant variant) {
         try {
             ProductUpdateEvent event = new ProductUpdateEvent();
-            event.setVariantId(savedVariant.getVariantId());
-            event.setModelName(savedVariant.getVehicleModel().getModelName());
-            event.setVersionName(savedVariant.getVersionName());
-            event.setColor(savedVariant.getColor());
-            event.setNewPrice(savedVariant.getPrice());
-            event.setStatus(savedVariant.getStatus().name());
-            event.setImageUrl(savedVariant.getImageUrl());
+            event.setVariantId(variant.getVariantId());
+            event.setModelId(variant.getVehicleModel().getModelId());
+            event.setModelName(variant.getVehicleModel().getModelName());
+            event.setVersionName(variant.getVersionName());
+            event.setColor(variant.getColor());
+            event.setSkuCode(variant.getSkuCode());
+            event.setNewPrice(variant.getPrice());
+            event.setStatus(variant.getStatus().name());
+            event.setImageUrl(variant.getImageUrl());
 
             kafkaTemplate.send("product_events", event);
 
         } catch (Exception e) {
             System.err.println("WARN: Failed to send product update event to Kafka. " + e.getMessage());
         }
-
-        return savedVariant;
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "models", key = "#modelId"),
+            @CacheEvict(value = "variants", allEntries = true),
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
+    })
     public void deactivateModel(Long modelId, String updatedByEmail) {
         VehicleModel model = findModelById(modelId);
 
@@ -463,16 +471,23 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
         model.getVariants().forEach(variant -> {
             saveVariantHistory(variant, EVMAction.DELETE, updatedByEmail); // Cập nhật lại lịch sử chỉnh sửa
             variant.setStatus(VehicleStatus.DISCONTINUED); // Cập nhật lại trạng thái
-            variantRepository.save(variant);
+            publishProductUpdate(variantRepository.save(variant));
         });
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "variants", key = "#variantId"),
+            @CacheEvict(value = "models", allEntries = true),
+            @CacheEvict(value = "all-models", allEntries = true), // Xóa cache danh sách
+            @CacheEvict(value = "models-page", allEntries = true),
+            @CacheEvict(value = "models-search", allEntries = true)
+    })
     public void deactivateVariant(Long variantId, String updatedByEmail) {
         VehicleVariant variant = findVariantById(variantId);
         variant.setStatus(VehicleStatus.DISCONTINUED);
-        variantRepository.save(variant);
+        publishProductUpdate(variantRepository.save(variant));
     }
 
     @Override
@@ -638,6 +653,10 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "variants", key = "#variantId"),
+            @CacheEvict(value = "models", allEntries = true)
+    })
     public VehicleVariant assignFeatureToVariant(Long variantId, FeatureRequest request, String updatedByEmail) {
         // Tìm variant và feature
         VehicleVariant variant = findVariantById(variantId);
@@ -661,6 +680,10 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "variants", key = "#variantId"),
+            @CacheEvict(value = "models", allEntries = true)
+    })
     public void unassignFeatureFromVariant(Long variantId, Long featureId, String updatedByEmail) {
         // Tìm variant để ghi lịch sử
         VehicleVariant variant = findVariantById(variantId);
@@ -695,6 +718,10 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "variants", allEntries = true),
+            @CacheEvict(value = "models", allEntries = true)
+    })
     public VehicleFeature updateFeature(Long featureId, UpdateFeatureRequest request, String updatedByEmail) {
         VehicleFeature feature = featureRepository.findById(featureId)
                 .orElseThrow(() -> new AppException(ErrorCode.FEATURE_NOT_FOUND));
@@ -709,6 +736,10 @@ public class VehicleCatalogServiceImpl implements VehicleCatalogService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(value = "variants", allEntries = true),
+            @CacheEvict(value = "models", allEntries = true)
+    })
     public void deleteFeature(Long featureId, String deletedByEmail) {
         VehicleFeature feature = featureRepository.findById(featureId)
                 .orElseThrow(() -> new AppException(ErrorCode.FEATURE_NOT_FOUND));
@@ -0,0 +1,97 @@
+package com.ev.vehicle_service.specification;
+
+import com.ev.common_lib.model.enums.VehicleStatus;
+import com.ev.vehicle_service.model.VehicleModel;
+import com.ev.vehicle_service.model.VehicleVariant;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Các điều kiện lọc mẫu xe cho trang tìm kiếm. Điều kiện trên variant dùng EXISTS
+ * (không JOIN) nên không nhân bản dòng: phân trang và đếm tổng đều chính xác.
+ */
+public class VehicleModelSpecification {
+
+    public static Specification<VehicleModel> hasKeyword(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            String likePattern = "%" + keyword + "%";
+            return cb.or(
+                    cb.like(root.get("modelName"), likePattern),
+                    cb.like(root.get("brand"), likePattern));
+        };
+    }
+
+    public static Specification<VehicleModel> hasStatus(VehicleStatus status) {
+        if (status == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    /**
+     * Có ít nhất một variant với giá nằm trong khoảng [minPrice, maxPrice].
+     */
+    public static Specification<VehicleModel> hasVariantPriceBetween(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Subquery<Long> sub = query.subquery(Long.class);
+            var variant = sub.from(VehicleVariant.class);
+
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(variant.get("vehicleModel"), root));
+            predicates.add(cb.isNotNull(variant.get("price")));
+            if (minPrice != null) {
+                predicates.add(cb.greaterThanOrEqualTo(variant.get("price"), minPrice));
+            }
+            if (maxPrice != null) {
+                predicates.add(cb.lessThanOrEqualTo(variant.get("price"), maxPrice));
+            }
+
+            sub.select(variant.get("variantId")).where(predicates.toArray(new Predicate[0]));
+            return cb.exists(sub);
+        };
+    }
+
+    /**
+     * Quãng đường (km) nằm trong khoảng: dùng baseRangeKm của model,
+     * nếu model chưa khai báo thì xét rangeKm của các variant.
+     */
+    public static Specification<VehicleModel> hasRangeBetween(Integer minRange, Integer maxRange) {
+        if (minRange == null && maxRange == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Subquery<Long> sub = query.subquery(Long.class);
+            var variant = sub.from(VehicleVariant.class);
+
+            List<Predicate> variantPredicates = new ArrayList<>();
+            variantPredicates.add(cb.equal(variant.get("vehicleModel"), root));
+            variantPredicates.add(cb.isNotNull(variant.get("rangeKm")));
+            List<Predicate> modelPredicates = new ArrayList<>();
+            modelPredicates.add(cb.isNotNull(root.get("baseRangeKm")));
+            if (minRange != null) {
+                variantPredicates.add(cb.greaterThanOrEqualTo(variant.get("rangeKm"), minRange));
+                modelPredicates.add(cb.greaterThanOrEqualTo(root.get("baseRangeKm"), minRange));
+            }
+            if (maxRange != null) {
+                variantPredicates.add(cb.lessThanOrEqualTo(variant.get("rangeKm"), maxRange));
+                modelPredicates.add(cb.lessThanOrEqualTo(root.get("baseRangeKm"), maxRange));
+            }
+            sub.select(variant.get("variantId")).where(variantPredicates.toArray(new Predicate[0]));
+
+            return cb.or(
+                    cb.and(modelPredicates.toArray(new Predicate[0])),
+                    cb.and(cb.isNull(root.get("baseRangeKm")), cb.exists(sub)));
+        };
+    }
+}